@@ -0,0 +1,254 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * End-to-end throughput of whole epochs: builds a {@link UtxoTestSet} for every combination of the
+ * swept settings and times {@code handleTxs} on all of its candidates, for each handler, on a
+ * fresh copy of the pool each epoch. Epochs this large do not fit JMH's model of short repeated
+ * operations, so timing is done here, with warm-up epochs run first and thrown away.
+ *
+ * Each combination and handler gives one JSON object per line, on standard output and appended to
+ * the {@code --out} file, tagged with {@code --label} (by default the current git commit) so that
+ * runs of different commits can be compared with any JSON tool. Latencies are in milliseconds.
+ *
+ * Usage: {@code java -cp benchmarks/target/benchmarks.jar EpochThroughputBenchmark [options]},
+ * where every option but the last six takes a comma-separated list of values to sweep:
+ * <pre>
+ * --people N          addresses                                 (default 20)
+ * --utxo-txs N        transactions creating the pool            (default 20000)
+ * --utxo-outputs N    outputs per pool transaction              (default 20)
+ * --txs N             candidates per epoch                      (default 100000)
+ * --max-inputs N      inputs per candidate, at most             (default 4)
+ * --max-outputs N     outputs per candidate, at most            (default 4)
+ * --corrupted P       share of corrupted candidates, 0 to 1     (default 0)
+ * --double-spend B    claim some UTXOs several times            (default false)
+ * --not-in-pool B     claim some outputs missing from the pool  (default false)
+ * --handlers NAMES    TxHandler and/or MaxFeeTxHandler          (default both)
+ * --epochs N          measured epochs per handler               (default 5)
+ * --warmup N          discarded epochs per handler              (default 2)
+ * --seed N            seed of the test sets                     (default 1)
+ * --key-bits N        size of the RSA keys                      (default 2048)
+ * --label TEXT        tag of the results                        (default git commit)
+ * --out FILE          file the results are appended to          (default none)
+ * </pre>
+ */
+public class EpochThroughputBenchmark {
+
+    private static final Map<String, Function<UTXOPool, EpochHandler>> HANDLERS =
+            new LinkedHashMap<>();
+
+    static {
+        HANDLERS.put("TxHandler", TxHandler::new);
+        HANDLERS.put("MaxFeeTxHandler", MaxFeeTxHandler::new);
+    }
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("people", "20");
+        DEFAULTS.put("utxo-txs", "20000");
+        DEFAULTS.put("utxo-outputs", "20");
+        DEFAULTS.put("txs", "100000");
+        DEFAULTS.put("max-inputs", "4");
+        DEFAULTS.put("max-outputs", "4");
+        DEFAULTS.put("corrupted", "0");
+        DEFAULTS.put("double-spend", "false");
+        DEFAULTS.put("not-in-pool", "false");
+        DEFAULTS.put("handlers", String.join(",", HANDLERS.keySet()));
+        DEFAULTS.put("epochs", "5");
+        DEFAULTS.put("warmup", "2");
+        DEFAULTS.put("seed", "1");
+        DEFAULTS.put("key-bits", "2048");
+        DEFAULTS.put("label", "");
+        DEFAULTS.put("out", "");
+    }
+
+    /** The settings swept, in the order of the nested loops */
+    private static final List<String> SWEPT = Arrays.asList("people", "utxo-txs", "utxo-outputs",
+            "txs", "max-inputs", "max-outputs", "corrupted", "double-spend", "not-in-pool");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(DEFAULTS);
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i].startsWith("--") ? args[i].substring(2) : null;
+            if (name == null || !DEFAULTS.containsKey(name) || i + 1 == args.length) {
+                System.err.println("usage: java EpochThroughputBenchmark [--option value]...,"
+                        + " options " + DEFAULTS.keySet());
+                System.exit(2);
+            }
+            options.put(name, args[++i]);
+        }
+        String label = options.get("label").isEmpty() ? gitCommit() : options.get("label");
+        int epochs = Integer.parseInt(options.get("epochs"));
+        int warmup = Integer.parseInt(options.get("warmup"));
+        List<String> handlers = Arrays.asList(options.get("handlers").split(","));
+        for (String handler : handlers) {
+            if (!HANDLERS.containsKey(handler)) {
+                throw new IllegalArgumentException("unknown handler " + handler);
+            }
+        }
+
+        Writer out = options.get("out").isEmpty() ? null : Files.newBufferedWriter(
+                Paths.get(options.get("out")), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        try {
+            for (Map<String, String> setting : sweep(options)) {
+                UtxoTestSet testSet = build(setting, Long.parseLong(options.get("seed")),
+                        Integer.parseInt(options.get("key-bits")));
+                setting.put("seed", options.get("seed"));
+                setting.put("key-bits", options.get("key-bits"));
+                Transaction[] candidates = testSet.getValidationLists().allElements()
+                        .toArray(new Transaction[0]);
+                for (String handler : handlers) {
+                    String line = measure(label, setting, handler, testSet, candidates, warmup,
+                            epochs);
+                    System.out.println(line);
+                    if (out != null) {
+                        out.write(line);
+                        out.write('\n');
+                        out.flush();
+                    }
+                }
+            }
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+    /** @return every combination of the swept settings */
+    private static List<Map<String, String>> sweep(Map<String, String> options) {
+        List<Map<String, String>> settings = new ArrayList<>();
+        settings.add(new LinkedHashMap<>());
+        for (String name : SWEPT) {
+            List<Map<String, String>> next = new ArrayList<>();
+            for (Map<String, String> setting : settings) {
+                for (String value : options.get(name).split(",")) {
+                    Map<String, String> extended = new LinkedHashMap<>(setting);
+                    extended.put(name, value.trim());
+                    next.add(extended);
+                }
+            }
+            settings = next;
+        }
+        return settings;
+    }
+
+    private static UtxoTestSet build(Map<String, String> setting, long seed, int keyBits)
+            throws Exception {
+        return UtxoTestSet.builder()
+                .setSeed(seed)
+                .setKeyBits(keyBits)
+                .setPeopleSize(Integer.parseInt(setting.get("people")))
+                .setUtxoTxNumber(Integer.parseInt(setting.get("utxo-txs")))
+                .setMaxUtxoTxOutput(Integer.parseInt(setting.get("utxo-outputs")))
+                .setMaxValue(200)
+                .setTxPerTest(Integer.parseInt(setting.get("txs")))
+                .setMaxInput(Integer.parseInt(setting.get("max-inputs")))
+                .setMaxOutput(Integer.parseInt(setting.get("max-outputs")))
+                .setCorruptedPercentage(Double.parseDouble(setting.get("corrupted")))
+                .setClaimingUtxoSeveralTimes(Boolean.parseBoolean(setting.get("double-spend")))
+                .setClaimingOutputsNotInPool(Boolean.parseBoolean(setting.get("not-in-pool")))
+                .build();
+    }
+
+    /** @return the JSON line of {@code handler} over {@code epochs} epochs of {@code candidates} */
+    private static String measure(String label, Map<String, String> setting, String handler,
+                                  UtxoTestSet testSet, Transaction[] candidates, int warmup,
+                                  int epochs) {
+        LatencyHistogram latency = new LatencyHistogram();
+        long inputs = 0;
+        for (Transaction tx : candidates) {
+            inputs += tx.numInputs();
+        }
+        int accepted = 0;
+        long totalNanos = 0;
+        for (int epoch = -warmup; epoch < epochs; epoch++) {
+            EpochHandler ledger = HANDLERS.get(handler).apply(testSet.getUtxoPool());
+            Transaction[] batch = candidates.clone();
+            long start = System.nanoTime();
+            Transaction[] result = ledger.handleTxs(batch);
+            long elapsed = System.nanoTime() - start;
+            if (epoch >= 0) {
+                latency.record(elapsed);
+                totalNanos += elapsed;
+                accepted = result.length;
+            }
+        }
+
+        StringBuilder json = new StringBuilder("{");
+        field(json, "label", label);
+        field(json, "handler", handler);
+        for (Map.Entry<String, String> entry : setting.entrySet()) {
+            field(json, entry.getKey(), entry.getValue(), true);
+        }
+        field(json, "epochs", String.valueOf(epochs), true);
+        field(json, "candidates", String.valueOf(candidates.length), true);
+        field(json, "inputs", String.valueOf(inputs), true);
+        field(json, "accepted", String.valueOf(accepted), true);
+        double seconds = totalNanos / 1e9;
+        field(json, "txs_per_sec", format(epochs * candidates.length / seconds), true);
+        field(json, "inputs_per_sec", format(epochs * inputs / seconds), true);
+        field(json, "mean_ms", format(latency.getMean() / 1e6), true);
+        field(json, "p50_ms", format(latency.getValueAtPercentile(50) / 1e6), true);
+        field(json, "p90_ms", format(latency.getValueAtPercentile(90) / 1e6), true);
+        field(json, "p99_ms", format(latency.getValueAtPercentile(99) / 1e6), true);
+        field(json, "max_ms", format(latency.getMax() / 1e6), true);
+        json.setLength(json.length() - 1);
+        return json.append('}').toString();
+    }
+
+    private static void field(StringBuilder json, String name, String value) {
+        field(json, name, value, false);
+    }
+
+    /** Appends {@code name: value} and a comma; {@code value} is quoted unless {@code bare} */
+    private static void field(StringBuilder json, String name, String value, boolean bare) {
+        boolean number = bare && (value.equals("true") || value.equals("false")
+                || value.matches("-?[0-9.]+(E-?[0-9]+)?"));
+        json.append('"').append(name.replace('-', '_')).append("\":");
+        if (number) {
+            json.append(value);
+        } else {
+            json.append('"').append(value.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        json.append(',');
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /** @return the commit checked out, or "unknown" outside a git work tree */
+    private static String gitCommit() {
+        try {
+            Process git = new ProcessBuilder("git", "rev-parse", "--short", "HEAD")
+                    .redirectErrorStream(true).start();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(git.getInputStream(), StandardCharsets.UTF_8))) {
+                String commit = reader.readLine();
+                return git.waitFor() == 0 && commit != null ? commit.trim() : "unknown";
+            }
+        } catch (IOException e) {
+            return "unknown";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,150 @@
+import bench.Primitives;
+
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+
+/**
+ * {@link Primitives} over the ledger classes; kept in the default package so that it can use
+ * them.
+ */
+public class LedgerPrimitives implements Primitives {
+
+    private static final long SEED = 42L;
+
+    private final KeyPair keys;
+
+    public LedgerPrimitives() throws Exception {
+        keys = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+    }
+
+    @Override
+    public BooleanSupplier verifySignature(int messageBytes) throws Exception {
+        byte[] message = new byte[messageBytes];
+        new Random(SEED).nextBytes(message);
+        byte[] signature = sign(message);
+        return () -> Crypto.verifySignature(keys.getPublic(), message, signature);
+    }
+
+    @Override
+    public TransactionOps transaction(int size) throws Exception {
+        Random random = new Random(SEED);
+        Transaction tx = new Transaction();
+        for (int i = 0; i < size; i++) {
+            tx.addInput(hash(random), i);
+            tx.addOutput(random.nextDouble() * 100, keys.getPublic());
+        }
+        for (int i = 0; i < size; i++) {
+            tx.addSignature(sign(tx.getRawDataToSign(i)), i);
+        }
+        tx.finalize();
+        return new TransactionOps() {
+            @Override
+            public byte[] rawDataToSign() {
+                return tx.getRawDataToSign(size - 1);
+            }
+
+            @Override
+            public byte[] rawTx() {
+                return tx.getRawTx();
+            }
+
+            @Override
+            public void rehash() {
+                tx.finalize();
+            }
+        };
+    }
+
+    @Override
+    public UtxoOps utxos(int count) {
+        Random random = new Random(SEED);
+        UTXO[] utxos = new UTXO[count];
+        UTXO[] copies = new UTXO[count];
+        for (int i = 0; i < count; i++) {
+            utxos[i] = new UTXO(hash(random), random.nextInt(16));
+            copies[i] = new UTXO(utxos[i].getTxHash(), utxos[i].getIndex());
+        }
+        return new UtxoOps() {
+            private int next;
+
+            @Override
+            public int hashCodeOfNext() {
+                return utxos[advance()].hashCode();
+            }
+
+            @Override
+            public boolean equalsNext() {
+                int i = advance();
+                return utxos[i].equals(copies[i]);
+            }
+
+            @Override
+            public int compareNext() {
+                int i = advance();
+                return utxos[i].compareTo(utxos[i + 1 == count ? 0 : i + 1]);
+            }
+
+            private int advance() {
+                int i = next;
+                next = i + 1 == count ? 0 : i + 1;
+                return i;
+            }
+        };
+    }
+
+    @Override
+    public PoolOps pool(int size) {
+        Random random = new Random(SEED);
+        Transaction.Output output = new Transaction().new Output(1, keys.getPublic());
+        UTXOPool pool = new UTXOPool();
+        UTXO[] utxos = new UTXO[size];
+        for (int i = 0; i < size; i++) {
+            utxos[i] = new UTXO(hash(random), i & 0xff);
+            pool.addUTXO(utxos[i], output);
+        }
+        UTXO missing = new UTXO(hash(random), 0);
+        return new PoolOps() {
+            private int next;
+
+            @Override
+            public Object getNext() {
+                int i = next;
+                next = i + 1 == size ? 0 : i + 1;
+                return pool.getTxOutput(utxos[i]);
+            }
+
+            @Override
+            public Object getMissing() {
+                return pool.getTxOutput(missing);
+            }
+
+            @Override
+            public void addThenRemove() {
+                pool.addUTXO(missing, output);
+                pool.removeUTXO(missing);
+            }
+
+            @Override
+            public Object copy() {
+                return new UTXOPool(pool);
+            }
+        };
+    }
+
+    private byte[] sign(byte[] message) throws Exception {
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keys.getPrivate());
+        signature.update(message);
+        return signature.sign();
+    }
+
+    /** @return 32 random bytes, the size of a transaction hash */
+    private static byte[] hash(Random random) {
+        return ByteBuffer.allocate(32).putLong(random.nextLong()).putLong(random.nextLong())
+                .putLong(random.nextLong()).putLong(random.nextLong()).array();
+    }
+}
@@ -0,0 +1,40 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+/**
+ * Runs the benchmarks like {@code org.openjdk.jmh.Main}, taking the same options, with the GC
+ * profiler always on: besides the time per operation, each result reports the bytes allocated
+ * per operation ({@code gc.alloc.rate.norm}) and the collections it caused. Allocation sites can
+ * be sampled as well with {@code -prof jfr}.
+ *
+ * Usage: {@code java -jar benchmarks/target/benchmarks.jar [JMH options] [benchmark regexp]}
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        if (cli.shouldHelp() || cli.shouldList() || cli.shouldListWithParams()
+                || cli.shouldListProfilers() || cli.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(cli);
+        boolean gc = false;
+        for (ProfilerConfig profiler : cli.getProfilers()) {
+            gc |= profiler.getKlass().equals("gc")
+                    || profiler.getKlass().equals(GCProfiler.class.getName());
+        }
+        if (!gc) {
+            options.addProfiler(GCProfiler.class);
+        }
+        Options built = options.build();
+        new Runner(built).run();
+    }
+}
@@ -0,0 +1,42 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/** {@code Crypto.verifySignature} on a 2048-bit RSA key */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CryptoBenchmark {
+
+    /** Bytes signed; a transaction signs its raw data, about 300 bytes per output */
+    @Param({"64", "1024", "16384"})
+    public int messageBytes;
+
+    private BooleanSupplier verify;
+
+    @Setup
+    public void setUp() throws Exception {
+        verify = Primitives.load().verifySignature(messageBytes);
+    }
+
+    @Benchmark
+    public boolean verifySignature() {
+        return verify.getAsBoolean();
+    }
+}
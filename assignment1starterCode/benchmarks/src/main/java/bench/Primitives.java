@@ -0,0 +1,67 @@
+package bench;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * The ledger operations the benchmarks measure. The ledger classes live in the default package,
+ * which JMH does not accept for benchmarks and which a named package cannot import, so they are
+ * reached through this interface, implemented by {@code LedgerPrimitives} in the default package.
+ * Each benchmark calls a single implementation, so the JIT inlines the calls and they cost nothing
+ * in the measurement.
+ */
+public interface Primitives {
+
+    /** @return a check of a valid signature of a {@code messageBytes} message */
+    BooleanSupplier verifySignature(int messageBytes) throws Exception;
+
+    /** @return operations on a signed transaction with {@code size} inputs and outputs */
+    TransactionOps transaction(int size) throws Exception;
+
+    /** @return operations on UTXOs, cycling through {@code count} of them */
+    UtxoOps utxos(int count);
+
+    /** @return operations on a pool holding {@code size} UTXOs */
+    PoolOps pool(int size);
+
+    interface TransactionOps {
+        byte[] rawDataToSign();
+
+        byte[] rawTx();
+
+        /** Computes the hash again */
+        void rehash();
+    }
+
+    interface UtxoOps {
+        int hashCodeOfNext();
+
+        /** Compares the next UTXO to an equal copy */
+        boolean equalsNext();
+
+        /** Compares the next UTXO to the one after it */
+        int compareNext();
+    }
+
+    interface PoolOps {
+        /** Looks up the next UTXO of the pool */
+        Object getNext();
+
+        /** Looks up a UTXO missing from the pool */
+        Object getMissing();
+
+        /** Adds a UTXO missing from the pool, then removes it */
+        void addThenRemove();
+
+        /** @return a copy of the pool */
+        Object copy();
+    }
+
+    /** @return the implementation over the ledger classes */
+    static Primitives load() {
+        try {
+            return (Primitives) Class.forName("LedgerPrimitives").getConstructor().newInstance();
+        } catch (ReflectiveOperationException x) {
+            throw new IllegalStateException("LedgerPrimitives is not on the class path", x);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code Transaction.getRawDataToSign}, {@code getRawTx} and {@code finalize} on a signed
+ * transaction with {@code inputs} inputs and as many outputs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBenchmark {
+
+    @Param({"1", "16", "128"})
+    public int inputs;
+
+    private Primitives.TransactionOps tx;
+
+    @Setup
+    public void setUp() throws Exception {
+        tx = Primitives.load().transaction(inputs);
+    }
+
+    @Benchmark
+    public byte[] getRawDataToSign() {
+        return tx.rawDataToSign();
+    }
+
+    @Benchmark
+    public byte[] getRawTx() {
+        return tx.rawTx();
+    }
+
+    @Benchmark
+    public void finalizeHash() {
+        tx.rehash();
+    }
+}
@@ -0,0 +1,51 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code UTXO.hashCode}, {@code equals} and {@code compareTo}, cycling through enough UTXOs that
+ * the results cannot be folded into constants.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UTXOBenchmark {
+
+    private static final int UTXOS = 1024;
+
+    private Primitives.UtxoOps utxos;
+
+    @Setup
+    public void setUp() {
+        utxos = Primitives.load().utxos(UTXOS);
+    }
+
+    @Benchmark
+    public int hashCodeOf() {
+        return utxos.hashCodeOfNext();
+    }
+
+    @Benchmark
+    public boolean equalsCopy() {
+        return utxos.equalsNext();
+    }
+
+    @Benchmark
+    public int compareTo() {
+        return utxos.compareNext();
+    }
+}
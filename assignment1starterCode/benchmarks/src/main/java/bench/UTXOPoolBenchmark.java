@@ -0,0 +1,59 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code UTXOPool} lookups, updates and copies at pool sizes from a thousand to ten million UTXOs.
+ * Lookups cycle through every UTXO of the pool so that large pools pay their cache misses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class UTXOPoolBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int poolSize;
+
+    private Primitives.PoolOps pool;
+
+    @Setup
+    public void setUp() {
+        pool = Primitives.load().pool(poolSize);
+    }
+
+    @Benchmark
+    public Object getTxOutput() {
+        return pool.getNext();
+    }
+
+    @Benchmark
+    public Object getTxOutputMissing() {
+        return pool.getMissing();
+    }
+
+    @Benchmark
+    public void addThenRemoveUTXO() {
+        pool.addThenRemove();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object copy() {
+        return pool.copy();
+    }
+}
@@ -0,0 +1,362 @@
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Bounded ingress stage in front of an {@link EpochHandler}, so that a burst of traffic cannot
+ * make an epoch arbitrarily large or slow.
+ *
+ * Offered transactions get only the cheap checks (structure, output values, duplicate inputs and
+ * value balance against the outputs already known) and wait in a queue of fixed depth ordered by
+ * fee rate (fee per byte of {@link Transaction#getRawTx()}). When the queue is full the lowest
+ * priority transaction is shed, along with its queued descendants: first those whose claimed
+ * outputs are unknown, which the handler would reject cheaply anyway, then those with the lowest
+ * fee rate. Each epoch hands the handler
+ * the highest fee-rate transactions whose signature checks fit in a CPU budget, estimated from the
+ * measured cost per input of the previous epochs, so an epoch takes about the budget whatever the
+ * backlog. Callers read the backpressure signals ({@link #getPressure()},
+ * {@link #isSaturated()}) to slow down before transactions get shed.
+ *
+ * All methods are synchronized; an offer made during an epoch waits for it, which the CPU budget
+ * bounds.
+ */
+public class AdmissionController {
+
+    /** Outcome of {@link #offer(Transaction)} */
+    public enum Admission {
+        /** the transaction is queued for a coming epoch */
+        QUEUED,
+        /** the transaction is already queued */
+        DUPLICATE,
+        /** the transaction failed a cheap check, see {@link #getValidator()} */
+        REJECTED,
+        /** the queue is full of transactions with a higher priority */
+        SHED
+    }
+
+    public static final int DEFAULT_MAX_DEPTH = 10000;
+    public static final Duration DEFAULT_EPOCH_BUDGET = Duration.ofMillis(200);
+    public static final Duration DEFAULT_COST_PER_INPUT = Duration.ofNanos(100000);
+
+    /** Weight of the last epoch in the estimated cost per input */
+    private static final double COST_SMOOTHING = 0.2;
+
+    /** Lowest priority first: unknown fee, then by fee rate, then the latest arrival */
+    private static final Comparator<Entry> BY_PRIORITY = (a, b) -> {
+        if (a.resolved != b.resolved) {
+            return a.resolved ? 1 : -1;
+        }
+        int cmp = Double.compare(a.feeRate, b.feeRate);
+        return cmp != 0 ? cmp : Long.compare(b.sequence, a.sequence);
+    };
+
+    private final EpochHandler handler;
+    private final int maxDepth;
+    private final long epochBudgetNanos;
+    private final TxValidator validator = new TxValidator();
+
+    private final Map<ByteBuffer, Entry> byHash = new HashMap<>();
+    private final TreeSet<Entry> byPriority = new TreeSet<>(BY_PRIORITY);
+    /** Queued transactions spending outputs of each transaction, queued or not, by its hash */
+    private final Map<ByteBuffer, List<Entry>> spenders = new HashMap<>();
+    private double nanosPerInput;
+    private long sequence;
+    private long shed;
+
+    /** Creates a stage in front of {@code handler} with the default limits */
+    public AdmissionController(EpochHandler handler) {
+        this(handler, DEFAULT_MAX_DEPTH, DEFAULT_EPOCH_BUDGET, DEFAULT_COST_PER_INPUT);
+    }
+
+    /**
+     * @param handler            ledger the queued transactions are proposed to
+     * @param maxDepth           number of queued transactions above which the lowest priority one
+     *                           is shed
+     * @param epochBudget        validation time one epoch should take
+     * @param initialCostPerInput cost of validating one input assumed until an epoch is measured
+     */
+    public AdmissionController(EpochHandler handler, int maxDepth, Duration epochBudget,
+                               Duration initialCostPerInput) {
+        this.handler = handler;
+        this.maxDepth = maxDepth;
+        this.epochBudgetNanos = epochBudget.toNanos();
+        this.nanosPerInput = Math.max(1L, initialCostPerInput.toNanos());
+    }
+
+    /** Offers {@code tx} for a coming epoch */
+    public synchronized Admission offer(Transaction tx) {
+        if (tx == null || tx.getHash() == null) {
+            validator.record(ValidationResult.reject(ValidationRule.STRUCTURE));
+            return Admission.REJECTED;
+        }
+        ByteBuffer hash = ByteBuffer.wrap(tx.getHash());
+        if (byHash.containsKey(hash)) {
+            return Admission.DUPLICATE;
+        }
+        UTXOPool ledger = handler.getUTXOPool();
+        if (!validator.validate(tx, ledger, TxValidator.STATELESS_RULES).isValid()) {
+            return Admission.REJECTED;
+        }
+
+        Entry entry = new Entry(tx, sequence++);
+        score(entry, ledger);
+        if (entry.resolved && entry.feeRate < 0) {
+            validator.record(ValidationResult.reject(ValidationRule.INSUFFICIENT_VALUE));
+            return Admission.REJECTED;
+        }
+        if (byHash.size() >= maxDepth) {
+            Entry lowest = byPriority.isEmpty() ? null : byPriority.first();
+            if (lowest == null || BY_PRIORITY.compare(entry, lowest) <= 0) {
+                shed++;
+                return Admission.SHED;
+            }
+            Set<ByteBuffer> gone = shedWithDescendants(lowest);
+            for (Transaction.Input in : tx.getInputs()) {
+                if (gone.contains(ByteBuffer.wrap(in.prevTxHash))) {
+                    shed++;
+                    return Admission.SHED;
+                }
+            }
+        }
+        byHash.put(hash, entry);
+        byPriority.add(entry);
+        for (ByteBuffer parent : parentsOf(tx)) {
+            List<Entry> children = spenders.get(parent);
+            if (children == null) {
+                children = new ArrayList<>(1);
+                spenders.put(parent, children);
+            }
+            children.add(entry);
+        }
+        return Admission.QUEUED;
+    }
+
+    /**
+     * Proposes to the handler the highest priority queued transactions whose inputs fit in the
+     * epoch budget, each with its queued ancestors so that it is not proposed before its parents.
+     * Every proposed transaction leaves the queue, accepted or not.
+     *
+     * @return the transactions the handler accepted
+     */
+    public synchronized Transaction[] runEpoch() {
+        rescoreUnresolved();
+        long budget = getEpochInputBudget();
+        Set<Entry> batch = new LinkedHashSet<>();
+        long inputs = 0;
+        for (Iterator<Entry> it = byPriority.descendingIterator();
+             it.hasNext() && inputs < budget; ) {
+            Entry entry = it.next();
+            if (batch.contains(entry)) {
+                continue;
+            }
+            List<Entry> pkg = queuedAncestry(entry, batch);
+            int cost = 0;
+            for (Entry member : pkg) {
+                cost += Math.max(1, member.tx.numInputs());
+            }
+            if (inputs + cost > budget && !batch.isEmpty()) {
+                continue;
+            }
+            batch.addAll(pkg);
+            inputs += cost;
+        }
+
+        Transaction[] proposed = new Transaction[batch.size()];
+        int i = 0;
+        inputs = 0;
+        for (Entry entry : batch) {
+            remove(entry);
+            proposed[i++] = entry.tx;
+            inputs += entry.tx.numInputs();
+        }
+        if (proposed.length == 0) {
+            return proposed;
+        }
+
+        long start = System.nanoTime();
+        Transaction[] accepted = handler.handleTxs(proposed);
+        long elapsed = System.nanoTime() - start;
+        if (inputs > 0) {
+            nanosPerInput = Math.max(1d, (1 - COST_SMOOTHING) * nanosPerInput
+                    + COST_SMOOTHING * elapsed / inputs);
+        }
+        return accepted;
+    }
+
+    /** @return the number of queued transactions */
+    public synchronized int getQueueDepth() {
+        return byHash.size();
+    }
+
+    /** @return the fraction of the queue in use, from 0 to 1 */
+    public synchronized double getPressure() {
+        return maxDepth == 0 ? 1d : Math.min(1d, (double) byHash.size() / maxDepth);
+    }
+
+    /** @return true if the queue is full, so that the next offer sheds a transaction */
+    public synchronized boolean isSaturated() {
+        return byHash.size() >= maxDepth;
+    }
+
+    /** @return the number of transactions shed since creation, offered or queued */
+    public synchronized long getShedCount() {
+        return shed;
+    }
+
+    /** @return the number of inputs the next epoch may validate within its budget */
+    public synchronized long getEpochInputBudget() {
+        return Math.max(1L, (long) (epochBudgetNanos / nanosPerInput));
+    }
+
+    /** @return the measured validation cost of one input, in nanoseconds */
+    public synchronized double getEstimatedNanosPerInput() {
+        return nanosPerInput;
+    }
+
+    /** @return the validator used by the cheap checks, which counts rejections per rule */
+    public TxValidator getValidator() {
+        return validator;
+    }
+
+    /**
+     * Sets the fee rate of {@code entry} from the outputs it claims, in the ledger or among queued
+     * transactions, or marks it unresolved if one of them is unknown.
+     */
+    private void score(Entry entry, UTXOPool ledger) {
+        Transaction tx = entry.tx;
+        double inputValue = 0d;
+        entry.resolved = true;
+        for (Transaction.Input in : tx.getInputs()) {
+            Transaction.Output claimed = ledger.getTxOutput(new UTXO(in.prevTxHash, in.outputIndex));
+            if (claimed == null) {
+                Entry parent = byHash.get(ByteBuffer.wrap(in.prevTxHash));
+                if (parent != null && in.outputIndex >= 0
+                        && in.outputIndex < parent.tx.numOutputs()) {
+                    claimed = parent.tx.getOutput(in.outputIndex);
+                }
+            }
+            if (claimed == null) {
+                entry.resolved = false;
+                entry.feeRate = 0d;
+                return;
+            }
+            inputValue += claimed.value;
+        }
+        double outputValue = 0d;
+        for (Transaction.Output out : tx.getOutputs()) {
+            outputValue += out.value;
+        }
+        entry.feeRate = (inputValue - outputValue) / Math.max(1, tx.getRawTx().length);
+    }
+
+    /** Scores again the queued transactions whose parent was unknown when they were offered */
+    private void rescoreUnresolved() {
+        UTXOPool ledger = handler.getUTXOPool();
+        List<Entry> unresolved = new ArrayList<>();
+        for (Entry entry : byPriority) {
+            if (entry.resolved) {
+                break;
+            }
+            unresolved.add(entry);
+        }
+        for (Entry entry : unresolved) {
+            byPriority.remove(entry);
+            score(entry, ledger);
+            byPriority.add(entry);
+        }
+    }
+
+    /** @return {@code entry} and its queued ancestors not in {@code batch}, ancestors first */
+    private List<Entry> queuedAncestry(Entry entry, Set<Entry> batch) {
+        List<Entry> found = new ArrayList<>();
+        Set<Entry> seen = new HashSet<>();
+        ArrayDeque<Entry> stack = new ArrayDeque<>();
+        stack.push(entry);
+        seen.add(entry);
+        while (!stack.isEmpty()) {
+            Entry next = stack.peek();
+            boolean expanded = false;
+            for (Transaction.Input in : next.tx.getInputs()) {
+                Entry parent = byHash.get(ByteBuffer.wrap(in.prevTxHash));
+                if (parent != null && !batch.contains(parent) && seen.add(parent)) {
+                    stack.push(parent);
+                    expanded = true;
+                    break;
+                }
+            }
+            if (!expanded) {
+                found.add(stack.pop());
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Sheds {@code entry} and the queued transactions spending its outputs, then theirs.
+     *
+     * @return the hashes of the transactions shed
+     */
+    private Set<ByteBuffer> shedWithDescendants(Entry entry) {
+        Set<ByteBuffer> gone = new HashSet<>();
+        ArrayDeque<Entry> doomed = new ArrayDeque<>();
+        doomed.add(entry);
+        while (!doomed.isEmpty()) {
+            Entry e = doomed.poll();
+            ByteBuffer hash = ByteBuffer.wrap(e.tx.getHash());
+            if (byHash.get(hash) != e) {
+                continue;
+            }
+            remove(e);
+            shed++;
+            gone.add(hash);
+            List<Entry> children = spenders.get(hash);
+            if (children != null) {
+                doomed.addAll(children);
+            }
+        }
+        return gone;
+    }
+
+    private void remove(Entry entry) {
+        byPriority.remove(entry);
+        byHash.remove(ByteBuffer.wrap(entry.tx.getHash()));
+        for (ByteBuffer parent : parentsOf(entry.tx)) {
+            List<Entry> children = spenders.get(parent);
+            children.remove(entry);
+            if (children.isEmpty()) {
+                spenders.remove(parent);
+            }
+        }
+    }
+
+    /** @return the hashes of the transactions whose outputs {@code tx} spends */
+    private static Set<ByteBuffer> parentsOf(Transaction tx) {
+        Set<ByteBuffer> parents = new HashSet<>();
+        for (Transaction.Input in : tx.getInputs()) {
+            parents.add(ByteBuffer.wrap(in.prevTxHash));
+        }
+        return parents;
+    }
+
+    private static final class Entry {
+        final Transaction tx;
+        final long sequence;
+        boolean resolved;
+        double feeRate;
+
+        Entry(Transaction tx, long sequence) {
+            this.tx = tx;
+            this.sequence = sequence;
+        }
+    }
+}
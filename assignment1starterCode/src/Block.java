@@ -0,0 +1,111 @@
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A block of a {@link BlockTree}: the transactions it accepted on top of its parent and the change
+ * they make to the parent's UTXO pool, rather than the whole pool.
+ */
+public class Block {
+
+    private final byte[] hash;
+    private final byte[] parentHash;
+    private final int height;
+    private final Transaction[] transactions;
+    private final Map<UTXO, Transaction.Output> added;
+    private final Set<UTXO> removed;
+
+    /** The parent block, or null once the tree has pruned it */
+    Block parent;
+
+    Block(Block parent, Transaction[] transactions, Map<UTXO, Transaction.Output> added,
+          Set<UTXO> removed) {
+        this.parent = parent;
+        this.parentHash = parent == null ? null : parent.hash;
+        this.height = parent == null ? 0 : parent.height + 1;
+        this.transactions = transactions;
+        this.added = added;
+        this.removed = removed;
+        this.hash = computeHash(parentHash, transactions);
+    }
+
+    /** @return the hash of the parent hash and of the transaction hashes */
+    public byte[] getHash() {
+        return hash;
+    }
+
+    /** @return the hash of the parent block, null for the genesis block */
+    public byte[] getParentHash() {
+        return parentHash;
+    }
+
+    /** @return the number of blocks between this one and the genesis block */
+    public int getHeight() {
+        return height;
+    }
+
+    /** @return the transactions of the block, parents before children */
+    public Transaction[] getTransactions() {
+        return transactions.clone();
+    }
+
+    /** @return the outputs created by the block and still unspent at its end */
+    public Map<UTXO, Transaction.Output> getAdded() {
+        return Collections.unmodifiableMap(added);
+    }
+
+    /** @return the outputs of earlier blocks spent by the block */
+    public Set<UTXO> getRemoved() {
+        return Collections.unmodifiableSet(removed);
+    }
+
+    /** @return true if the block spends the output at {@code utxo} of an earlier block */
+    boolean spends(UTXO utxo) {
+        return removed.contains(utxo);
+    }
+
+    /** @return the unspent output the block creates at {@code utxo}, or null */
+    Transaction.Output creates(UTXO utxo) {
+        return added.get(utxo);
+    }
+
+    /** Applies the change made by this block to {@code pool} */
+    void applyTo(UTXOPool pool) {
+        for (UTXO utxo : removed) {
+            pool.removeUTXO(utxo);
+        }
+        for (Map.Entry<UTXO, Transaction.Output> entry : added.entrySet()) {
+            pool.addUTXO(entry.getKey(), entry.getValue());
+        }
+    }
+
+    ByteBuffer key() {
+        return ByteBuffer.wrap(hash);
+    }
+
+    private static byte[] computeHash(byte[] parentHash, Transaction[] transactions) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            if (parentHash != null) {
+                md.update(parentHash);
+            }
+            for (Transaction tx : transactions) {
+                md.update(tx.getHash());
+            }
+            return md.digest();
+        } catch (NoSuchAlgorithmException x) {
+            throw new IllegalStateException(x);
+        }
+    }
+
+    public String toString() {
+        return "Block{height=" + height
+                + ", transactions=" + transactions.length
+                + ", added=" + added.size()
+                + ", removed=" + removed.size()
+                + "}";
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * A block proposed by {@link MaxFeeTxHandler#buildBlockTemplate}: mutually valid transactions,
+ * parents before children, within a size limit.
+ */
+public class BlockTemplate {
+
+    private final Transaction[] transactions;
+    private final double fee;
+    private final long bytes;
+
+    BlockTemplate(Transaction[] transactions, double fee, long bytes) {
+        this.transactions = transactions;
+        this.fee = fee;
+        this.bytes = bytes;
+    }
+
+    /** @return the transactions of the block, parents before the children spending them */
+    public Transaction[] getTransactions() {
+        return transactions.clone();
+    }
+
+    /** @return the total fee paid by the block's transactions */
+    public double getFee() {
+        return fee;
+    }
+
+    /** @return the total raw size of the block's transactions, in bytes */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public String toString() {
+        return "BlockTemplate{transactions=" + transactions.length + ", fee=" + fee
+                + ", bytes=" + bytes + "}";
+    }
+}
@@ -0,0 +1,291 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Fills a block of limited size with candidates in order of ancestor-package fee rate: a candidate
+ * is scored by the fee of itself and its not yet included ancestors over their total size, and is
+ * included together with those ancestors. A low-fee parent therefore gets in when a child spending
+ * it pays enough (child pays for parent).
+ *
+ * Package totals are computed once, then updated incrementally: including a package rescores only
+ * the descendants it leaves with a smaller package, and requeues them with their new score, rather
+ * than rescoring every candidate after each pick.
+ *
+ * As in Bitcoin Core, a package holds at most {@link #MAX_ANCESTORS} candidates: one with more
+ * ancestors not yet included waits, unscored, until enough of them are. Scoring a package and
+ * finding the descendants to rescore, which are never further than that from an included
+ * candidate, are then bounded, so the time to fill a block stays linear even on long chains.
+ */
+public class BlockTemplateBuilder {
+
+    /** Most candidates in a package, the candidate included; Bitcoin Core's default ancestor limit */
+    static final int MAX_ANCESTORS = 25;
+
+    private final long maxBytes;
+
+    /** @param maxBytes size limit of the block, in bytes */
+    public BlockTemplateBuilder(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param fees      the fee paid by each candidate
+     * @param sizes     the raw size of each candidate, in bytes
+     * @param parents   for each candidate, the candidates whose outputs it spends
+     * @param outpoints for each candidate, the ids (from 0) of the outpoints it spends; candidates
+     *                  sharing an id conflict and at most one of them is included
+     * @return the included candidates, parents before children
+     */
+    public int[] build(double[] fees, int[] sizes, int[][] parents, int[][] outpoints) {
+        int n = fees.length;
+        int[][] children = invert(parents);
+        int[] rank = topologicalRank(parents, children);
+
+        int numOutpoints = 0;
+        for (int[] spent : outpoints) {
+            for (int o : spent) {
+                numOutpoints = Math.max(numOutpoints, o + 1);
+            }
+        }
+
+        int[] mark = new int[n];
+        int[] found = new int[MAX_ANCESTORS];
+        int stamp = 0;
+        double[] packageFee = new double[n];
+        long[] packageSize = new long[n];
+        int[] version = new int[n];
+        boolean[] included = new boolean[n];
+        boolean[] scored = new boolean[n];
+        PriorityQueue<Entry> queue = new PriorityQueue<>(Math.max(1, n), BY_SCORE);
+        for (int t = 0; t < n; t++) {
+            if (rank[t] >= 0 && scorePackage(t, fees, sizes, parents, included, mark, ++stamp,
+                    found, packageFee, packageSize)) {
+                scored[t] = true;
+                queue.add(new Entry(t, score(packageFee[t], packageSize[t]), 0));
+            }
+        }
+
+        boolean[] blocked = new boolean[n];
+        boolean[] spent = new boolean[numOutpoints];
+        int[] claimed = new int[numOutpoints];
+        int[] order = new int[n];
+        int size = 0;
+        long remaining = maxBytes;
+
+        while (!queue.isEmpty()) {
+            Entry entry = queue.poll();
+            int t = entry.tx;
+            if (included[t] || blocked[t] || entry.version != version[t]
+                    || packageSize[t] > remaining) {
+                continue;
+            }
+            stamp++;
+            int count = ancestry(t, parents, included, mark, stamp, found);
+            List<Integer> pkg = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                pkg.add(found[i]);
+            }
+            if (!fits(pkg, outpoints, spent, claimed, stamp, blocked)) {
+                blocked[t] = true;
+                continue;
+            }
+
+            pkg.sort(Comparator.comparingInt(a -> rank[a]));
+            for (int a : pkg) {
+                included[a] = true;
+                order[size++] = a;
+                remaining -= sizes[a];
+                for (int o : outpoints[a]) {
+                    spent[o] = true;
+                }
+            }
+
+            for (int d : descendants(pkg, children, included, mark, ++stamp)) {
+                scored[d] = scorePackage(d, fees, sizes, parents, included, mark, ++stamp,
+                        found, packageFee, packageSize);
+                if (scored[d]) {
+                    queue.add(new Entry(d, score(packageFee[d], packageSize[d]), ++version[d]));
+                }
+            }
+        }
+        return Arrays.copyOf(order, size);
+    }
+
+    /**
+     * @return false if a member of {@code pkg} is blocked, spends an outpoint already spent by the
+     *         block, which blocks that member for good, or spends an outpoint another member
+     *         spends, which only rules out this package; outpoints claimed by the package are
+     *         marked with {@code stamp} in {@code claimed}
+     */
+    private static boolean fits(List<Integer> pkg, int[][] outpoints, boolean[] spent,
+                                int[] claimed, int stamp, boolean[] blocked) {
+        for (int a : pkg) {
+            if (blocked[a]) {
+                return false;
+            }
+            for (int o : outpoints[a]) {
+                if (spent[o]) {
+                    blocked[a] = true;
+                    return false;
+                }
+                if (claimed[o] == stamp) {
+                    return false;
+                }
+                claimed[o] = stamp;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets the package totals of {@code t} if its package is within {@link #MAX_ANCESTORS}
+     *
+     * @return false if the package is larger
+     */
+    private static boolean scorePackage(int t, double[] fees, int[] sizes, int[][] parents,
+                                        boolean[] included, int[] mark, int stamp, int[] found,
+                                        double[] packageFee, long[] packageSize) {
+        int count = ancestry(t, parents, included, mark, stamp, found);
+        if (count < 0) {
+            return false;
+        }
+        packageFee[t] = 0;
+        packageSize[t] = 0;
+        for (int i = 0; i < count; i++) {
+            packageFee[t] += fees[found[i]];
+            packageSize[t] += sizes[found[i]];
+        }
+        return true;
+    }
+
+    /**
+     * Puts {@code t} and its ancestors that are not {@code included} in {@code found}, marked
+     * with {@code stamp}
+     *
+     * @return their number, or -1 if they are more than {@link #MAX_ANCESTORS}
+     */
+    private static int ancestry(int t, int[][] parents, boolean[] included, int[] mark, int stamp,
+                                int[] found) {
+        int count = 0;
+        found[count++] = t;
+        mark[t] = stamp;
+        for (int i = 0; i < count; i++) {
+            for (int p : parents[found[i]]) {
+                if (mark[p] != stamp && !included[p]) {
+                    if (count == MAX_ANCESTORS) {
+                        return -1;
+                    }
+                    mark[p] = stamp;
+                    found[count++] = p;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the descendants of the just included {@code pkg} that are not {@code included}, each
+     *         once, reached through candidates not included either and at most
+     *         {@link #MAX_ANCESTORS} away, since any further has a package too large to score;
+     *         marks them with {@code stamp}
+     */
+    private static List<Integer> descendants(List<Integer> pkg, int[][] children,
+                                             boolean[] included, int[] mark, int stamp) {
+        List<Integer> found = new ArrayList<>();
+        for (int a : pkg) {
+            for (int c : children[a]) {
+                if (mark[c] != stamp && !included[c]) {
+                    mark[c] = stamp;
+                    found.add(c);
+                }
+            }
+        }
+        int depth = 1;
+        int depthEnd = found.size();
+        for (int i = 0; i < found.size(); i++) {
+            if (i == depthEnd) {
+                depth++;
+                depthEnd = found.size();
+            }
+            if (depth == MAX_ANCESTORS) {
+                break;
+            }
+            for (int c : children[found.get(i)]) {
+                if (mark[c] != stamp) {
+                    mark[c] = stamp;
+                    found.add(c);
+                }
+            }
+        }
+        return found;
+    }
+
+    /** @return each candidate's position in a topological order, or -1 inside a dependency cycle */
+    private static int[] topologicalRank(int[][] parents, int[][] children) {
+        int n = parents.length;
+        int[] pending = new int[n];
+        int[] rank = new int[n];
+        Arrays.fill(rank, -1);
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        for (int t = 0; t < n; t++) {
+            pending[t] = parents[t].length;
+            if (pending[t] == 0) {
+                queue[tail++] = t;
+            }
+        }
+        while (head < tail) {
+            int t = queue[head];
+            rank[t] = head++;
+            for (int c : children[t]) {
+                if (--pending[c] == 0) {
+                    queue[tail++] = c;
+                }
+            }
+        }
+        return rank;
+    }
+
+    private static int[][] invert(int[][] parents) {
+        int[] count = new int[parents.length];
+        for (int[] ps : parents) {
+            for (int p : ps) {
+                count[p]++;
+            }
+        }
+        int[][] children = new int[parents.length][];
+        for (int t = 0; t < parents.length; t++) {
+            children[t] = new int[count[t]];
+        }
+        for (int t = 0; t < parents.length; t++) {
+            for (int p : parents[t]) {
+                children[p][--count[p]] = t;
+            }
+        }
+        return children;
+    }
+
+    private static double score(double fee, long size) {
+        return size <= 0 ? fee : fee / size;
+    }
+
+    private static final Comparator<Entry> BY_SCORE = (a, b) -> {
+        int cmp = Double.compare(b.score, a.score);
+        return cmp != 0 ? cmp : Integer.compare(a.tx, b.tx);
+    };
+
+    private static final class Entry {
+        final int tx;
+        final double score;
+        final int version;
+
+        Entry(int tx, double score, int version) {
+            this.tx = tx;
+            this.score = score;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tree of blocks on top of a genesis UTXO pool, with any number of competing tips.
+ *
+ * Each block is built by a {@link TxHandler} over its parent's pool but keeps only the change it
+ * makes to that pool. The pools of the most recently used blocks are cached, up to a fixed number;
+ * the pool of any other block is rebuilt from its nearest cached ancestor by applying the changes
+ * of the blocks in between, and a single lookup walks those changes without building the pool.
+ * Switching tips therefore costs nothing until the new tip's pool is read.
+ *
+ * Once the best chain grows more than the prune depth above the root, the block at that depth
+ * becomes the new root: its pool is kept whole and the forks that do not descend from it are
+ * dropped. Memory thus stays bounded by the prune depth and the cache size, however deep the
+ * forks grow.
+ *
+ * All methods are synchronized.
+ */
+public class BlockTree {
+
+    public static final int DEFAULT_CACHED_VIEWS = 8;
+    public static final int DEFAULT_PRUNE_DEPTH = 100;
+
+    private final int pruneDepth;
+    private final Map<ByteBuffer, Block> blocks = new HashMap<>();
+    private final Map<ByteBuffer, List<Block>> children = new HashMap<>();
+    private final Map<ByteBuffer, UTXOPool> views;
+
+    private Block root;
+    private UTXOPool rootPool;
+    private Block tip;
+
+    /** Creates a tree whose genesis block leaves a copy of {@code genesisPool} */
+    public BlockTree(UTXOPool genesisPool) {
+        this(genesisPool, DEFAULT_CACHED_VIEWS, DEFAULT_PRUNE_DEPTH);
+    }
+
+    /**
+     * Creates a tree like {@link #BlockTree(UTXOPool)} caching the pools of at most
+     * {@code cachedViews} blocks and dropping forks more than {@code pruneDepth} blocks below the
+     * best tip.
+     */
+    public BlockTree(UTXOPool genesisPool, final int cachedViews, int pruneDepth) {
+        this.pruneDepth = pruneDepth;
+        this.views = new LinkedHashMap<ByteBuffer, UTXOPool>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, UTXOPool> eldest) {
+                return size() > cachedViews;
+            }
+        };
+        this.rootPool = genesisPool == null ? new UTXOPool() : new UTXOPool(genesisPool);
+        this.root = new Block(null, new Transaction[0],
+                new HashMap<UTXO, Transaction.Output>(), new HashSet<UTXO>());
+        this.tip = root;
+        blocks.put(root.key(), root);
+    }
+
+    /**
+     * Builds a block on top of {@code parentHash}, or of the current tip if it is null, from the
+     * transactions of {@code possibleTxs} that {@link TxHandler#handleTxs} accepts over the
+     * parent's pool. The block becomes the tip if it is higher than the current one.
+     *
+     * @return the block, or null if {@code parentHash} is unknown or was pruned
+     */
+    public synchronized Block addBlock(byte[] parentHash, Transaction[] possibleTxs) {
+        Block parent = parentHash == null ? tip : blocks.get(ByteBuffer.wrap(parentHash));
+        if (parent == null) {
+            return null;
+        }
+        TxHandler handler = new TxHandler(view(parent));
+        Transaction[] accepted = handler.handleTxs(possibleTxs);
+
+        Map<UTXO, Transaction.Output> added = new HashMap<>();
+        Set<UTXO> removed = new HashSet<>();
+        for (Transaction tx : accepted) {
+            for (Transaction.Input in : tx.getInputs()) {
+                UTXO utxo = new UTXO(in.prevTxHash, in.outputIndex);
+                if (added.remove(utxo) == null) {
+                    removed.add(utxo);
+                }
+            }
+            for (int i = 0; i < tx.numOutputs(); i++) {
+                added.put(new UTXO(tx.getHash(), i), tx.getOutput(i));
+            }
+        }
+
+        Block block = new Block(parent, accepted, added, removed);
+        Block existing = blocks.get(block.key());
+        if (existing != null) {
+            return existing;
+        }
+        blocks.put(block.key(), block);
+        List<Block> siblings = children.get(parent.key());
+        if (siblings == null) {
+            siblings = new ArrayList<>();
+            children.put(parent.key(), siblings);
+        }
+        siblings.add(block);
+        views.put(block.key(), handler.getUTXOPool());
+
+        if (block.getHeight() > tip.getHeight()) {
+            tip = block;
+        }
+        if (block.getHeight() - root.getHeight() > pruneDepth) {
+            prune(block);
+        }
+        return block;
+    }
+
+    /** @return the current tip */
+    public synchronized Block getTip() {
+        return tip;
+    }
+
+    /**
+     * Makes the block with hash {@code blockHash} the tip; its pool is only built when read.
+     *
+     * @return false if no such block is in the tree
+     */
+    public synchronized boolean setTip(byte[] blockHash) {
+        Block block = blocks.get(ByteBuffer.wrap(blockHash));
+        if (block == null) {
+            return false;
+        }
+        tip = block;
+        return true;
+    }
+
+    /** @return the blocks nothing was built on yet */
+    public synchronized List<Block> getTips() {
+        List<Block> tips = new ArrayList<>();
+        for (Block block : blocks.values()) {
+            if (!children.containsKey(block.key())) {
+                tips.add(block);
+            }
+        }
+        return tips;
+    }
+
+    /** @return the block with hash {@code blockHash}, or null if it is not in the tree */
+    public synchronized Block getBlock(byte[] blockHash) {
+        return blocks.get(ByteBuffer.wrap(blockHash));
+    }
+
+    /** @return the oldest block kept, whose pool is held whole */
+    public synchronized Block getRoot() {
+        return root;
+    }
+
+    /** @return the pool left by the tip; callers must not modify it */
+    public synchronized UTXOPool getUTXOPool() {
+        return view(tip);
+    }
+
+    /**
+     * @return the pool left by the block with hash {@code blockHash}, or null if it is not in the
+     *         tree; callers must not modify it
+     */
+    public synchronized UTXOPool getUTXOPool(byte[] blockHash) {
+        Block block = blocks.get(ByteBuffer.wrap(blockHash));
+        return block == null ? null : view(block);
+    }
+
+    /** @return the unspent output at {@code utxo} as the tip leaves it, or null */
+    public synchronized Transaction.Output getTxOutput(UTXO utxo) {
+        return resolve(tip, utxo);
+    }
+
+    /**
+     * @return the unspent output at {@code utxo} as the block with hash {@code blockHash} leaves
+     *         it, or null
+     */
+    public synchronized Transaction.Output getTxOutput(byte[] blockHash, UTXO utxo) {
+        Block block = blocks.get(ByteBuffer.wrap(blockHash));
+        return block == null ? null : resolve(block, utxo);
+    }
+
+    /** @return the number of blocks kept, the root included */
+    public synchronized int size() {
+        return blocks.size();
+    }
+
+    /** @return the number of block pools cached besides the root's */
+    public synchronized int getCachedViewCount() {
+        return views.size();
+    }
+
+    /** Looks {@code utxo} up through the changes of {@code block} and its ancestors */
+    private Transaction.Output resolve(Block block, UTXO utxo) {
+        for (Block at = block; at != null; at = at.parent) {
+            UTXOPool cached = at == root ? rootPool : views.get(at.key());
+            if (cached != null) {
+                return cached.getTxOutput(utxo);
+            }
+            if (at.spends(utxo)) {
+                return null;
+            }
+            Transaction.Output output = at.creates(utxo);
+            if (output != null) {
+                return output;
+            }
+        }
+        return null;
+    }
+
+    /** @return the pool left by {@code block}, rebuilt from its nearest cached ancestor if needed */
+    private UTXOPool view(Block block) {
+        if (block == root) {
+            return rootPool;
+        }
+        UTXOPool pool = views.get(block.key());
+        if (pool != null) {
+            return pool;
+        }
+        ArrayDeque<Block> path = new ArrayDeque<>();
+        UTXOPool base = null;
+        for (Block at = block; base == null; at = at.parent) {
+            path.push(at);
+            base = at.parent == root ? rootPool : views.get(at.parent.key());
+        }
+        pool = new UTXOPool(base);
+        while (!path.isEmpty()) {
+            path.pop().applyTo(pool);
+        }
+        views.put(block.key(), pool);
+        return pool;
+    }
+
+    /** Makes the ancestor of {@code best} {@link #pruneDepth} blocks below it the new root */
+    private void prune(Block best) {
+        Block newRoot = best;
+        while (newRoot.getHeight() > best.getHeight() - pruneDepth) {
+            newRoot = newRoot.parent;
+        }
+        rootPool = view(newRoot);
+        newRoot.parent = null;
+        root = newRoot;
+
+        Set<ByteBuffer> kept = new HashSet<>();
+        ArrayDeque<Block> queue = new ArrayDeque<>();
+        queue.add(newRoot);
+        while (!queue.isEmpty()) {
+            Block block = queue.poll();
+            kept.add(block.key());
+            List<Block> next = children.get(block.key());
+            if (next != null) {
+                queue.addAll(next);
+            }
+        }
+        blocks.keySet().retainAll(kept);
+        children.keySet().retainAll(kept);
+        views.keySet().retainAll(kept);
+        views.remove(newRoot.key());
+        if (!kept.contains(tip.key())) {
+            tip = best;
+        }
+    }
+}
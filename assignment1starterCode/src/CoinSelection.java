@@ -0,0 +1,68 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of {@link CoinSelector#select}: the outputs to spend for a target amount and the change
+ * left over.
+ */
+public class CoinSelection {
+
+    /** How the inputs were chosen */
+    public enum Strategy {
+        /** the inputs add up to the target, within the tolerance, so no change is needed */
+        EXACT_MATCH,
+        /** the largest outputs, taken until the target is reached */
+        LARGEST_FIRST,
+        /** the largest-first inputs with some replaced by smaller outputs to reduce the change */
+        KNAPSACK
+    }
+
+    private final List<UTXO> inputs;
+    private final double total;
+    private final double target;
+    private final Strategy strategy;
+    private final int tries;
+
+    CoinSelection(List<UTXO> inputs, double total, double target, Strategy strategy, int tries) {
+        this.inputs = Collections.unmodifiableList(inputs);
+        this.total = total;
+        this.target = target;
+        this.strategy = strategy;
+        this.tries = tries;
+    }
+
+    /** @return the outputs to spend, largest first */
+    public List<UTXO> getInputs() {
+        return inputs;
+    }
+
+    /** @return the total value of the inputs */
+    public double getTotal() {
+        return total;
+    }
+
+    /** @return the amount the selection was made for */
+    public double getTarget() {
+        return target;
+    }
+
+    /** @return the value left over for a change output */
+    public double getChange() {
+        return total - target;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /** @return the number of nodes the branch and bound search visited */
+    public int getTries() {
+        return tries;
+    }
+
+    @Override
+    public String toString() {
+        return strategy + ": " + inputs.size() + " inputs, total " + total + ", change "
+                + getChange();
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * A ledger that processes proposed transactions one epoch at a time, such as {@link TxHandler} and
+ * {@link MaxFeeTxHandler}.
+ */
+public interface EpochHandler {
+
+    /**
+     * Handles each epoch by receiving an unordered array of proposed transactions, checking each
+     * transaction for correctness, returning a mutually valid array of accepted transactions, and
+     * updating the current UTXO pool as appropriate.
+     */
+    Transaction[] handleTxs(Transaction[] possibleTxs);
+
+    /** @return the current UTXO pool of the ledger; callers must not modify it */
+    UTXOPool getUTXOPool();
+}
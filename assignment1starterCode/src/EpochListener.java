@@ -0,0 +1,17 @@
+/**
+ * Receives the outcome of every transaction a {@link TxHandler} validates during an epoch, as soon
+ * as it is known.
+ */
+public interface EpochListener {
+
+    /** Called when {@code tx} is accepted and its outputs have been added to the pool */
+    default void onAccepted(Transaction tx) {
+    }
+
+    /**
+     * Called when {@code tx} is rejected; {@code result} names the rule it failed. {@code tx} may
+     * be null if a null candidate was proposed.
+     */
+    default void onRejected(Transaction tx, ValidationResult result) {
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Metrics of the epochs of one handler in the {@link MetricsRegistry#getDefault() default
+ * registry}, labelled with the handler's name: epochs, candidates and accepted transactions
+ * counted, the duration of each epoch, and the time spent validating each candidate, summed over
+ * the stages it went through.
+ */
+final class EpochMetrics {
+
+    private final MetricsRegistry.Counter epochs;
+    private final MetricsRegistry.Counter candidates;
+    private final MetricsRegistry.Counter accepted;
+    private final MetricsRegistry.Histogram duration;
+    private final MetricsRegistry.Histogram validation;
+
+    EpochMetrics(String handler) {
+        MetricsRegistry registry = MetricsRegistry.getDefault();
+        String label = "{handler=\"" + handler + "\"}";
+        epochs = registry.counter("ledger_epochs_total" + label);
+        candidates = registry.counter("ledger_candidates_total" + label);
+        accepted = registry.counter("ledger_accepted_total" + label);
+        duration = registry.histogram("ledger_epoch_nanos" + label);
+        validation = registry.histogram("ledger_tx_validation_nanos" + label);
+    }
+
+    /** Counts an epoch of {@code candidates} started at {@code startNanos} */
+    void record(long startNanos, Transaction[] candidates, int accepted) {
+        duration.recordSince(startNanos);
+        epochs.increment();
+        this.candidates.add(candidates.length);
+        this.accepted.add(accepted);
+    }
+
+    /** Counts a candidate whose checks, every stage included, took {@code nanos} */
+    void recordValidation(long nanos) {
+        validation.record(nanos);
+    }
+}
@@ -0,0 +1,87 @@
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs consecutive epochs through a {@link TxHandler} with their stages overlapped: while epoch N
+ * is applied, the signatures of epoch N+1 are already being verified on the handler's verifier
+ * pool, against the outputs they claim before N is applied. Signatures are stateless given the
+ * claimed output, so the only inputs checked again at apply time are those whose claimed output
+ * epoch N spent or created; every epoch gets the result serial {@code handleTxs} calls would give.
+ *
+ * Epochs are applied one at a time, in submission order, on a single applier thread.
+ */
+public class EpochPipeline implements AutoCloseable {
+
+    private final TxHandler handler;
+    private final ExecutorService applier = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "epoch-applier");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ArrayDeque<Stage> stages = new ArrayDeque<>();
+
+    public EpochPipeline(TxHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Queues {@code possibleTxs} as the next epoch.
+     *
+     * @return the transactions the epoch accepted, once it is applied
+     */
+    public CompletableFuture<Transaction[]> submit(Transaction[] possibleTxs) {
+        Stage stage = new Stage(possibleTxs);
+        synchronized (stages) {
+            stages.add(stage);
+        }
+        applier.execute(() -> run(stage));
+        return stage.result;
+    }
+
+    /** @return the handler the epochs are applied to */
+    public TxHandler getHandler() {
+        return handler;
+    }
+
+    /** Stops accepting epochs; the queued ones are still applied */
+    @Override
+    public void close() {
+        applier.shutdown();
+    }
+
+    private void run(Stage stage) {
+        try {
+            if (stage.prepared == null) {
+                stage.prepared = handler.prepareEpoch(stage.txs, null);
+            }
+            Stage next;
+            synchronized (stages) {
+                stages.remove(stage);
+                next = stages.peek();
+            }
+            if (next != null && next.prepared == null) {
+                try {
+                    next.prepared = handler.prepareEpoch(next.txs, stage.prepared.candidates);
+                } catch (RuntimeException e) {
+                    // left unprepared, so that the failure is reported by its own epoch
+                }
+            }
+            stage.result.complete(handler.applyPrepared(stage.prepared));
+        } catch (RuntimeException | Error e) {
+            stage.result.completeExceptionally(e);
+        }
+    }
+
+    private static final class Stage {
+        final Transaction[] txs;
+        final CompletableFuture<Transaction[]> result = new CompletableFuture<>();
+        /** Only read and written on the applier thread */
+        TxHandler.PreparedEpoch prepared;
+
+        Stage(Transaction[] txs) {
+            this.txs = txs;
+        }
+    }
+}
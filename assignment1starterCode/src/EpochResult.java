@@ -0,0 +1,35 @@
+/**
+ * Result of {@link TxHandler#handleTxs(Transaction[], java.time.Duration)}: the transactions
+ * accepted before the deadline and those left for a later epoch.
+ */
+public class EpochResult {
+
+    private final Transaction[] accepted;
+    private final Transaction[] unprocessed;
+
+    EpochResult(Transaction[] accepted, Transaction[] unprocessed) {
+        this.accepted = accepted;
+        this.unprocessed = unprocessed;
+    }
+
+    /** @return the accepted transactions, parents before children */
+    public Transaction[] getAccepted() {
+        return accepted.clone();
+    }
+
+    /** @return the candidates neither accepted nor rejected, in their original order */
+    public Transaction[] getUnprocessed() {
+        return unprocessed.clone();
+    }
+
+    /** @return true if every candidate was accepted or rejected before the deadline */
+    public boolean isComplete() {
+        return unprocessed.length == 0;
+    }
+
+    public String toString() {
+        return "EpochResult{accepted=" + accepted.length
+                + ", unprocessed=" + unprocessed.length
+                + "}";
+    }
+}
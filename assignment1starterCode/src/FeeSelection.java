@@ -0,0 +1,93 @@
+/**
+ * Result of {@link FeeSelector#select}: the chosen candidates, the fee they pay and how close that
+ * fee is known to be to the optimum.
+ */
+public class FeeSelection {
+
+    private final boolean[] selected;
+    private final int[] order;
+    private final double fee;
+    private final double upperBound;
+    private final int exactComponents;
+    private final int heuristicComponents;
+    private final boolean budgetExhausted;
+    private final long elapsedNanos;
+
+    FeeSelection(boolean[] selected, int[] order, double fee, double upperBound,
+                 int exactComponents, int heuristicComponents, boolean budgetExhausted,
+                 long elapsedNanos) {
+        this.selected = selected;
+        this.order = order;
+        this.fee = fee;
+        this.upperBound = upperBound;
+        this.exactComponents = exactComponents;
+        this.heuristicComponents = heuristicComponents;
+        this.budgetExhausted = budgetExhausted;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /** @return true if candidate {@code i} is part of the selection */
+    public boolean isSelected(int i) {
+        return selected[i];
+    }
+
+    /** @return the selected candidates, parents before the children spending their outputs */
+    public int[] getOrder() {
+        return order.clone();
+    }
+
+    /** @return the number of selected candidates */
+    public int size() {
+        return order.length;
+    }
+
+    /** @return the total fee paid by the selected candidates */
+    public double getFee() {
+        return fee;
+    }
+
+    /**
+     * @return an upper bound on the fee of any valid selection; equal to {@link #getFee()} when
+     *         every component was solved exactly
+     */
+    public double getUpperBound() {
+        return upperBound;
+    }
+
+    /** @return {@code fee / upperBound}, 1 when the selection is known to be optimal */
+    public double getOptimalityRatio() {
+        return upperBound <= 0d ? 1d : Math.min(1d, fee / upperBound);
+    }
+
+    /** @return the number of conflicting components solved exactly by branch and bound */
+    public int getExactComponents() {
+        return exactComponents;
+    }
+
+    /** @return the number of conflicting components solved by the fee-ordered heuristic */
+    public int getHeuristicComponents() {
+        return heuristicComponents;
+    }
+
+    /** @return true if the heuristic stopped improving because the time budget ran out */
+    public boolean isBudgetExhausted() {
+        return budgetExhausted;
+    }
+
+    /** @return the time spent selecting, in nanoseconds */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public String toString() {
+        return "FeeSelection{size=" + order.length
+                + ", fee=" + fee
+                + ", upperBound=" + upperBound
+                + ", optimalityRatio=" + String.format("%.4f", getOptimalityRatio())
+                + ", exactComponents=" + exactComponents
+                + ", heuristicComponents=" + heuristicComponents
+                + ", budgetExhausted=" + budgetExhausted
+                + ", elapsedMicros=" + elapsedNanos / 1000
+                + "}";
+    }
+}
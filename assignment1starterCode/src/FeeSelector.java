@@ -0,0 +1,563 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Chooses a subset of an epoch's candidates that pays the maximum total fee while staying mutually
+ * valid: no two selected candidates spend the same outpoint, and a candidate is only selected with
+ * every candidate whose outputs it spends.
+ *
+ * Candidates are split into components connected by conflicts and dependencies, which are solved
+ * independently. A component without conflicts is selected whole; a conflicting component of at
+ * most {@code exactLimit} candidates is solved exactly by branch and bound; larger ones are solved
+ * greedily by fee and then improved by replacing selected packages with better ones until no
+ * replacement helps or the time budget runs out. The returned {@link FeeSelection} carries an upper
+ * bound on the optimum so the quality of the heuristic can be reported.
+ */
+public class FeeSelector {
+
+    /** Largest conflicting component solved exactly by default */
+    public static final int DEFAULT_EXACT_LIMIT = 20;
+
+    private final int exactLimit;
+    private final long budgetNanos;
+
+    private double[] fees;
+    private int[][] parents;
+    private int[][] children;
+    private int[][] outpoints;
+    private int[] spenderCount;
+    private boolean[] selected;
+    /** Selected spender of each outpoint, or -1 */
+    private int[] taker;
+    /** Index of each candidate in the component being solved exactly */
+    private int[] position;
+    /** {@link System#nanoTime()} when the current selection started */
+    private long start;
+
+    /**
+     * @param exactLimit  largest conflicting component solved exactly
+     * @param budgetNanos time allowed for improving heuristic solutions, in nanoseconds; {@link
+     *                    Long#MAX_VALUE} for no limit
+     * @throws IllegalArgumentException if {@code budgetNanos} is negative
+     */
+    public FeeSelector(int exactLimit, long budgetNanos) {
+        if (budgetNanos < 0) {
+            throw new IllegalArgumentException("budget " + budgetNanos + " ns");
+        }
+        this.exactLimit = exactLimit;
+        this.budgetNanos = budgetNanos;
+    }
+
+    /**
+     * @param fees      the fee paid by each candidate, non-negative
+     * @param parents   for each candidate, the candidates whose outputs it spends
+     * @param outpoints for each candidate, the ids (from 0) of the outpoints it spends; candidates
+     *                  sharing an id conflict
+     * @return the selected candidates. A candidate paying no fee is only selected when a selected
+     *         candidate spends its outputs; candidates in a dependency cycle are never selected.
+     */
+    public FeeSelection select(double[] fees, int[][] parents, int[][] outpoints) {
+        long start = System.nanoTime();
+        int n = fees.length;
+        this.fees = fees;
+        this.parents = parents;
+        this.outpoints = outpoints;
+        this.children = invert(parents);
+        this.selected = new boolean[n];
+        this.position = new int[n];
+        this.start = start;
+
+        int numOutpoints = 0;
+        for (int[] spent : outpoints) {
+            for (int o : spent) {
+                numOutpoints = Math.max(numOutpoints, o + 1);
+            }
+        }
+        spenderCount = new int[numOutpoints];
+        taker = new int[numOutpoints];
+        Arrays.fill(taker, -1);
+        for (int[] spent : outpoints) {
+            for (int o : spent) {
+                spenderCount[o]++;
+            }
+        }
+
+        int[] topo = topologicalOrder();
+        List<int[]> components = components(topo);
+
+        double upperBound = 0d;
+        int exactComponents = 0;
+        List<int[]> heuristic = new ArrayList<>();
+        for (int[] component : components) {
+            if (!isContested(component)) {
+                for (int t : component) {
+                    take(t);
+                    upperBound += fees[t];
+                }
+            } else if (component.length <= exactLimit) {
+                upperBound += solveExactly(component);
+                exactComponents++;
+            } else {
+                upperBound += boundOf(component);
+                heuristic.add(component);
+            }
+        }
+
+        for (int[] component : heuristic) {
+            solveGreedily(component);
+        }
+        boolean improved = true;
+        boolean budgetExhausted = false;
+        while (improved && !budgetExhausted) {
+            improved = false;
+            for (int[] component : heuristic) {
+                improved |= improve(component);
+                if (overBudget()) {
+                    budgetExhausted = true;
+                    break;
+                }
+            }
+        }
+
+        // drop fee-less candidates nothing selected depends on, children first
+        for (int i = topo.length - 1; i >= 0; i--) {
+            int t = topo[i];
+            if (selected[t] && fees[t] <= 0d && !hasSelectedChild(t)) {
+                release(t);
+            }
+        }
+
+        double fee = 0d;
+        int count = 0;
+        for (int t : topo) {
+            if (selected[t]) {
+                fee += fees[t];
+                count++;
+            }
+        }
+        int[] order = new int[count];
+        count = 0;
+        for (int t : topo) {
+            if (selected[t]) {
+                order[count++] = t;
+            }
+        }
+        return new FeeSelection(selected, order, fee, Math.max(fee, upperBound),
+                exactComponents, heuristic.size(), budgetExhausted, System.nanoTime() - start);
+    }
+
+    /**
+     * @return the candidates outside dependency cycles, parents first and, among candidates whose
+     *         parents are all placed, higher fee first
+     */
+    private int[] topologicalOrder() {
+        int n = fees.length;
+        int[] pending = new int[n];
+        PriorityQueue<Integer> ready = new PriorityQueue<>(Math.max(1, n), byFeeDescending());
+        for (int t = 0; t < n; t++) {
+            pending[t] = parents[t].length;
+            if (pending[t] == 0) {
+                ready.add(t);
+            }
+        }
+        int[] order = new int[n];
+        int size = 0;
+        while (!ready.isEmpty()) {
+            int t = ready.poll();
+            order[size++] = t;
+            for (int c : children[t]) {
+                if (--pending[c] == 0) {
+                    ready.add(c);
+                }
+            }
+        }
+        return Arrays.copyOf(order, size);
+    }
+
+    /** @return the components connected by dependencies and conflicts, each in {@code topo} order */
+    private List<int[]> components(int[] topo) {
+        int[] root = new int[fees.length];
+        for (int t = 0; t < root.length; t++) {
+            root[t] = t;
+        }
+        int[] firstSpender = new int[spenderCount.length];
+        Arrays.fill(firstSpender, -1);
+        for (int t : topo) {
+            for (int p : parents[t]) {
+                union(root, t, p);
+            }
+            for (int o : outpoints[t]) {
+                if (firstSpender[o] < 0) {
+                    firstSpender[o] = t;
+                } else {
+                    union(root, t, firstSpender[o]);
+                }
+            }
+        }
+
+        Map<Integer, List<Integer>> members = new HashMap<>();
+        List<List<Integer>> ordered = new ArrayList<>();
+        for (int t : topo) {
+            int r = find(root, t);
+            List<Integer> list = members.get(r);
+            if (list == null) {
+                list = new ArrayList<>();
+                members.put(r, list);
+                ordered.add(list);
+            }
+            list.add(t);
+        }
+        List<int[]> components = new ArrayList<>(ordered.size());
+        for (List<Integer> list : ordered) {
+            int[] component = new int[list.size()];
+            for (int i = 0; i < component.length; i++) {
+                component[i] = list.get(i);
+            }
+            components.add(component);
+        }
+        return components;
+    }
+
+    private boolean isContested(int[] component) {
+        for (int t : component) {
+            for (int o : outpoints[t]) {
+                if (spenderCount[o] > 1) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * An upper bound on the fee of {@code component}: a candidate with {@code c} contested
+     * outpoints spreads its fee evenly over them, and each outpoint is worth at most its best
+     * spender's share since only one spender can be selected.
+     */
+    private double boundOf(int[] component) {
+        double bound = 0d;
+        Map<Integer, Double> best = new HashMap<>();
+        for (int t : component) {
+            int contested = 0;
+            for (int o : outpoints[t]) {
+                if (spenderCount[o] > 1) {
+                    contested++;
+                }
+            }
+            if (contested == 0) {
+                bound += fees[t];
+                continue;
+            }
+            double share = fees[t] / contested;
+            for (int o : outpoints[t]) {
+                if (spenderCount[o] > 1) {
+                    Double current = best.get(o);
+                    if (current == null || current < share) {
+                        best.put(o, share);
+                    }
+                }
+            }
+        }
+        for (double share : best.values()) {
+            bound += share;
+        }
+        return bound;
+    }
+
+    /** Branch and bound over {@code component}, in topological order; returns the optimum */
+    private double solveExactly(int[] component) {
+        for (int i = 0; i < component.length; i++) {
+            position[component[i]] = i;
+        }
+        boolean[] best = new boolean[component.length];
+        double[] bestFee = {-1d};
+        branch(component, 0, 0d, best, bestFee);
+        for (int i = 0; i < component.length; i++) {
+            if (best[i]) {
+                take(component[i]);
+            }
+        }
+        return bestFee[0];
+    }
+
+    private void branch(int[] component, int depth, double fee, boolean[] best, double[] bestFee) {
+        if (depth == component.length) {
+            if (fee > bestFee[0]) {
+                bestFee[0] = fee;
+                for (int i = 0; i < component.length; i++) {
+                    best[i] = selected[component[i]];
+                }
+            }
+            return;
+        }
+        if (fee + optimistic(component, depth) <= bestFee[0]) {
+            return;
+        }
+        int t = component[depth];
+        if (canTake(t)) {
+            take(t);
+            branch(component, depth + 1, fee + fees[t], best, bestFee);
+            release(t);
+        }
+        branch(component, depth + 1, fee, best, bestFee);
+    }
+
+    /**
+     * @return the fee of the undecided candidates that could still be selected: none of their
+     *         outpoints is taken and none of their parents has been left out
+     */
+    private double optimistic(int[] component, int depth) {
+        double bound = 0d;
+        for (int i = depth; i < component.length; i++) {
+            int t = component[i];
+            if (isOpen(t, depth)) {
+                bound += fees[t];
+            }
+        }
+        return bound;
+    }
+
+    private boolean isOpen(int t, int depth) {
+        for (int o : outpoints[t]) {
+            if (taker[o] >= 0) {
+                return false;
+            }
+        }
+        for (int p : parents[t]) {
+            if (!selected[p] && position[p] < depth) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Selects candidates by decreasing fee, each with its unselected ancestors, when they fit */
+    private void solveGreedily(int[] component) {
+        for (int t : byFeeDescending(component)) {
+            if (selected[t]) {
+                continue;
+            }
+            List<Integer> closure = closure(t);
+            if (closure != null && conflicting(closure).isEmpty()) {
+                for (int c : closure) {
+                    take(c);
+                }
+            }
+        }
+    }
+
+    /** Compares elapsed time, as a deadline of {@code start + budgetNanos} may overflow */
+    private boolean overBudget() {
+        return System.nanoTime() - start > budgetNanos;
+    }
+
+    /**
+     * One pass over the unselected candidates of {@code component}, replacing the selected
+     * candidates that conflict with one (and their descendants) by it and its ancestors whenever
+     * that pays strictly more fee.
+     *
+     * @return true if the selection improved
+     */
+    private boolean improve(int[] component) {
+        boolean improved = false;
+        for (int t : byFeeDescending(component)) {
+            if (selected[t]) {
+                continue;
+            }
+            if (overBudget()) {
+                break;
+            }
+            List<Integer> closure = closure(t);
+            if (closure == null) {
+                continue;
+            }
+            List<Integer> evicted = conflicting(closure);
+            if (!keepsParents(closure, evicted)) {
+                continue;
+            }
+            double gain = 0d;
+            for (int c : closure) {
+                gain += fees[c];
+            }
+            for (int e : evicted) {
+                gain -= fees[e];
+            }
+            if (gain > 1e-9) {
+                for (int e : evicted) {
+                    release(e);
+                }
+                for (int c : closure) {
+                    take(c);
+                }
+                improved = true;
+            }
+        }
+        return improved;
+    }
+
+    /**
+     * @return {@code t} and its unselected ancestors, ancestors first, or null if they spend an
+     *         outpoint twice
+     */
+    private List<Integer> closure(int t) {
+        List<Integer> closure = new ArrayList<>();
+        Map<Integer, Boolean> seen = new HashMap<>();
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        stack.push(t);
+        seen.put(t, Boolean.TRUE);
+        while (!stack.isEmpty()) {
+            int c = stack.pop();
+            closure.add(c);
+            for (int p : parents[c]) {
+                if (!selected[p] && seen.put(p, Boolean.TRUE) == null) {
+                    stack.push(p);
+                }
+            }
+        }
+        Map<Integer, Integer> spentBy = new HashMap<>();
+        for (int c : closure) {
+            for (int o : outpoints[c]) {
+                if (spentBy.put(o, c) != null) {
+                    return null;
+                }
+            }
+        }
+        return closure;
+    }
+
+    /**
+     * @return the selected candidates spending an outpoint of {@code closure}, with their selected
+     *         descendants; an empty list if there are none
+     */
+    private List<Integer> conflicting(List<Integer> closure) {
+        List<Integer> evicted = new ArrayList<>();
+        Map<Integer, Boolean> seen = new HashMap<>();
+        for (int c : closure) {
+            for (int o : outpoints[c]) {
+                if (taker[o] >= 0 && seen.put(taker[o], Boolean.TRUE) == null) {
+                    evicted.add(taker[o]);
+                }
+            }
+        }
+        for (int i = 0; i < evicted.size(); i++) {
+            for (int child : children[evicted.get(i)]) {
+                if (selected[child] && seen.put(child, Boolean.TRUE) == null) {
+                    evicted.add(child);
+                }
+            }
+        }
+        return evicted;
+    }
+
+    /** @return true if every parent of {@code closure} is in it or stays selected */
+    private boolean keepsParents(List<Integer> closure, List<Integer> evicted) {
+        Set<Integer> added = new HashSet<>(closure);
+        Set<Integer> removed = new HashSet<>(evicted);
+        for (int c : closure) {
+            for (int p : parents[c]) {
+                if (!added.contains(p) && (!selected[p] || removed.contains(p))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean canTake(int t) {
+        for (int p : parents[t]) {
+            if (!selected[p]) {
+                return false;
+            }
+        }
+        for (int o : outpoints[t]) {
+            if (taker[o] >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void take(int t) {
+        selected[t] = true;
+        for (int o : outpoints[t]) {
+            taker[o] = t;
+        }
+    }
+
+    private void release(int t) {
+        selected[t] = false;
+        for (int o : outpoints[t]) {
+            if (taker[o] == t) {
+                taker[o] = -1;
+            }
+        }
+    }
+
+    private boolean hasSelectedChild(int t) {
+        for (int c : children[t]) {
+            if (selected[c]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Integer[] byFeeDescending(int[] component) {
+        Integer[] sorted = new Integer[component.length];
+        for (int i = 0; i < component.length; i++) {
+            sorted[i] = component[i];
+        }
+        Arrays.sort(sorted, byFeeDescending());
+        return sorted;
+    }
+
+    private Comparator<Integer> byFeeDescending() {
+        return (a, b) -> {
+            int cmp = Double.compare(fees[b], fees[a]);
+            return cmp != 0 ? cmp : Integer.compare(a, b);
+        };
+    }
+
+    private static int[][] invert(int[][] parents) {
+        int[] count = new int[parents.length];
+        for (int[] ps : parents) {
+            for (int p : ps) {
+                count[p]++;
+            }
+        }
+        int[][] children = new int[parents.length][];
+        for (int t = 0; t < parents.length; t++) {
+            children[t] = new int[count[t]];
+        }
+        for (int t = 0; t < parents.length; t++) {
+            for (int p : parents[t]) {
+                children[p][--count[p]] = t;
+            }
+        }
+        return children;
+    }
+
+    private static int find(int[] root, int t) {
+        while (root[t] != t) {
+            root[t] = root[root[t]];
+            t = root[t];
+        }
+        return t;
+    }
+
+    private static void union(int[] root, int a, int b) {
+        int ra = find(root, a);
+        int rb = find(root, b);
+        if (ra != rb) {
+            root[Math.max(ra, rb)] = Math.min(ra, rb);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Histogram of non-negative values, typically latencies in nanoseconds, in constant memory.
+ *
+ * Values below 16 are counted exactly; above, each power of two is split into 16 buckets of equal
+ * width, so a percentile is reported with a relative error below 1/16 whatever the range. Not
+ * thread-safe.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[64 * SUB_BUCKETS];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /** Counts {@code value}; a negative value counts as 0 */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[index(value)]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /** Adds the values counted by {@code other} to this histogram */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /** @return the number of values recorded */
+    public long getCount() {
+        return count;
+    }
+
+    /** @return the smallest value recorded, 0 if none */
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    /** @return the largest value recorded, 0 if none */
+    public long getMax() {
+        return max;
+    }
+
+    /** @return the sum of the values recorded */
+    public long getSum() {
+        return sum;
+    }
+
+    /** @return the mean of the values recorded, 0 if none */
+    public double getMean() {
+        return count == 0 ? 0d : (double) sum / count;
+    }
+
+    /**
+     * @return an upper bound, within 1/16, of the value below which {@code percentile} percent of
+     *         the recorded values fall; 0 if none were recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100d * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highest(i), max);
+            }
+        }
+        return max;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /** @return the largest value counted in bucket {@code index} */
+    static long highest(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    public String toString() {
+        return "LatencyHistogram{count=" + count
+                + ", min=" + getMin()
+                + ", p50=" + getValueAtPercentile(50)
+                + ", p90=" + getValueAtPercentile(90)
+                + ", p99=" + getValueAtPercentile(99)
+                + ", max=" + max
+                + ", mean=" + String.format("%.1f", getMean())
+                + "}";
+    }
+}
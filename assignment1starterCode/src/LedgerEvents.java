@@ -0,0 +1,275 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import java.util.Set;
+
+/**
+ * Java Flight Recorder events of the ledger, in the "Ledger" category, so that a slow epoch can be
+ * traced to its stage with standard JFR tooling, e.g. {@code jcmd <pid> JFR.start} and then
+ * {@code jfr print --events ledger.EpochStage}:
+ * <pre>
+ * ledger.Epoch          one epoch handled: handler, candidates, inputs and accepted count
+ * ledger.EpochStage     one stage of an epoch: handler, stage, transactions in and passed
+ * ledger.TxValidation   one transaction run through rules: hash, inputs, rules and outcome
+ * ledger.SignatureCheck one signature verified: hash, input index and outcome
+ * </pre>
+ * The per-transaction events have a threshold of 1 ms by default, so that only outliers are
+ * recorded unless a recording sets it lower.
+ *
+ * Callers pass the object {@code begin*} returns to the matching {@code end*}. It is null when no
+ * recording takes the event, and {@code end*} then does nothing, so an event not recorded costs a
+ * flag check and a small allocation; fields are only filled for events that will be committed.
+ * This class is the only one referring to {@code jdk.jfr}, from its nested event classes, which
+ * are only loaded once {@code jdk.jfr} is found, so the ledger still runs on a JVM without Flight
+ * Recorder.
+ */
+final class LedgerEvents {
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    private LedgerEvents() {
+    }
+
+    /** @return a started {@code ledger.Epoch} event, or null */
+    static Object beginEpoch() {
+        return AVAILABLE ? EpochEvent.start() : null;
+    }
+
+    static void endEpoch(Object event, String handler, Transaction[] candidates, int accepted) {
+        if (event != null) {
+            ((EpochEvent) event).finish(handler, candidates, accepted);
+        }
+    }
+
+    /** @return a started {@code ledger.EpochStage} event, or null */
+    static Object beginStage() {
+        return AVAILABLE ? StageEvent.start() : null;
+    }
+
+    /**
+     * Ends stage {@code stage} of an epoch of {@code handler}, which {@code transactions}
+     * candidates entered and {@code passed} left without being rejected
+     */
+    static void endStage(Object event, String handler, String stage, int transactions,
+                         int passed) {
+        if (event != null) {
+            ((StageEvent) event).finish(handler, stage, transactions, passed);
+        }
+    }
+
+    /** @return a started {@code ledger.TxValidation} event, or null */
+    static Object beginValidation() {
+        return AVAILABLE ? ValidationEvent.start() : null;
+    }
+
+    /** Ends the validation of {@code tx} against {@code rules} */
+    static void endValidation(Object event, Transaction tx, Set<ValidationRule> rules,
+                              ValidationResult result) {
+        if (event != null) {
+            ((ValidationEvent) event).finish(tx, rules, result);
+        }
+    }
+
+    /** @return a started {@code ledger.SignatureCheck} event, or null */
+    static Object beginSignature() {
+        return AVAILABLE ? SignatureEvent.start() : null;
+    }
+
+    /** Ends the check of the signature on input {@code index} of {@code tx} */
+    static void endSignature(Object event, Transaction tx, int index, ValidationResult result) {
+        if (event != null) {
+            ((SignatureEvent) event).finish(tx, index, result);
+        }
+    }
+
+    private static String outcome(ValidationResult result) {
+        return result.isValid() ? "VALID" : result.getReason().name();
+    }
+
+    /** @return the name of the rule set of {@link TxValidator} {@code rules} is, or its rules */
+    private static String rulesName(Set<ValidationRule> rules) {
+        if (rules.equals(TxValidator.ALL_RULES)) {
+            return "all";
+        } else if (rules.equals(TxValidator.STATELESS_RULES)) {
+            return "stateless";
+        } else if (rules.equals(TxValidator.POOL_RULES)) {
+            return "pool";
+        }
+        return rules.toString();
+    }
+
+    private static String hex(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        StringBuilder hex = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+                    .append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    @Name("ledger.Epoch")
+    @Label("Epoch")
+    @Category("Ledger")
+    @Description("One epoch, handled by handleTxs or through an EpochPipeline")
+    @StackTrace(false)
+    static final class EpochEvent extends Event {
+        @Label("Handler")
+        String handler;
+        @Label("Candidates")
+        int candidates;
+        @Label("Inputs")
+        long inputs;
+        @Label("Accepted")
+        int accepted;
+
+        static EpochEvent start() {
+            EpochEvent event = new EpochEvent();
+            if (!event.isEnabled()) {
+                return null;
+            }
+            event.begin();
+            return event;
+        }
+
+        void finish(String handler, Transaction[] candidates, int accepted) {
+            end();
+            if (shouldCommit()) {
+                this.handler = handler;
+                this.candidates = candidates.length;
+                for (Transaction tx : candidates) {
+                    inputs += tx == null || tx.getInputs() == null ? 0 : tx.numInputs();
+                }
+                this.accepted = accepted;
+                commit();
+            }
+        }
+    }
+
+    @Name("ledger.EpochStage")
+    @Label("Epoch Stage")
+    @Category("Ledger")
+    @Description("One stage of handleTxs, over every candidate that reached it")
+    @StackTrace(false)
+    static final class StageEvent extends Event {
+        @Label("Handler")
+        String handler;
+        @Label("Stage")
+        String stage;
+        @Label("Transactions")
+        @Description("Candidates entering the stage")
+        int transactions;
+        @Label("Passed")
+        @Description("Candidates leaving the stage without being rejected")
+        int passed;
+
+        static StageEvent start() {
+            StageEvent event = new StageEvent();
+            if (!event.isEnabled()) {
+                return null;
+            }
+            event.begin();
+            return event;
+        }
+
+        void finish(String handler, String stage, int transactions, int passed) {
+            end();
+            if (shouldCommit()) {
+                this.handler = handler;
+                this.stage = stage;
+                this.transactions = transactions;
+                this.passed = passed;
+                commit();
+            }
+        }
+    }
+
+    @Name("ledger.TxValidation")
+    @Label("Transaction Validation")
+    @Category("Ledger")
+    @Description("One transaction checked against a set of validation rules")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class ValidationEvent extends Event {
+        @Label("Transaction Hash")
+        String txHash;
+        @Label("Inputs")
+        int inputs;
+        @Label("Rules")
+        @Description("all, stateless, pool, or the rules checked")
+        String rules;
+        @Label("Outcome")
+        @Description("VALID, or the rule that rejected the transaction")
+        String outcome;
+
+        static ValidationEvent start() {
+            ValidationEvent event = new ValidationEvent();
+            if (!event.isEnabled()) {
+                return null;
+            }
+            event.begin();
+            return event;
+        }
+
+        void finish(Transaction tx, Set<ValidationRule> rules, ValidationResult result) {
+            end();
+            if (shouldCommit()) {
+                txHash = hex(tx.getHash());
+                inputs = tx.getInputs() == null ? 0 : tx.numInputs();
+                this.rules = rulesName(rules);
+                outcome = outcome(result);
+                commit();
+            }
+        }
+    }
+
+    @Name("ledger.SignatureCheck")
+    @Label("Signature Check")
+    @Category("Ledger")
+    @Description("The signature on one input verified against the output it claims")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class SignatureEvent extends Event {
+        @Label("Transaction Hash")
+        String txHash;
+        @Label("Input")
+        int input;
+        @Label("Outcome")
+        String outcome;
+
+        static SignatureEvent start() {
+            SignatureEvent event = new SignatureEvent();
+            if (!event.isEnabled()) {
+                return null;
+            }
+            event.begin();
+            return event;
+        }
+
+        void finish(Transaction tx, int index, ValidationResult result) {
+            end();
+            if (shouldCommit()) {
+                txHash = hex(tx.getHash());
+                input = index;
+                outcome = outcome(result);
+                commit();
+            }
+        }
+    }
+}
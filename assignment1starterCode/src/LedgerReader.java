@@ -0,0 +1,188 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a ledger recorded by {@link LedgerWriter} through a memory-mapped window of fixed size
+ * that slides over the file, so memory use does not depend on the file size: only the current
+ * window is mapped, and only the current epoch and the table of public keys are held.
+ *
+ * {@link #readGenesis()} is called first, then {@link #nextEpoch()} until it returns null.
+ */
+public class LedgerReader implements Closeable {
+
+    public static final int DEFAULT_WINDOW_BYTES = 64 << 20;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int windowBytes;
+    private final List<PublicKey> keys = new ArrayList<>();
+    private final KeyFactory keyFactory;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private boolean genesisRead;
+
+    public LedgerReader(Path path) throws IOException {
+        this(path, DEFAULT_WINDOW_BYTES);
+    }
+
+    /** Opens {@code path}, mapping at most {@code windowBytes} of it at a time */
+    public LedgerReader(Path path, int windowBytes) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.windowBytes = windowBytes;
+        try {
+            this.keyFactory = KeyFactory.getInstance("RSA");
+            ensure(8);
+            if (window.getInt() != LedgerWriter.MAGIC) {
+                throw new IOException(path + " is not a ledger file");
+            }
+            int version = window.getInt();
+            if (version != LedgerWriter.VERSION) {
+                throw new IOException("unsupported ledger version " + version);
+            }
+        } catch (IOException | GeneralSecurityException x) {
+            channel.close();
+            throw x instanceof IOException ? (IOException) x : new IOException(x);
+        }
+    }
+
+    /** @return the pool made of the genesis outputs at the head of the file */
+    public UTXOPool readGenesis() throws IOException {
+        UTXOPool pool = new UTXOPool();
+        genesisRead = true;
+        while (position() < fileSize) {
+            ensure(1);
+            byte type = window.get();
+            if (type == LedgerWriter.KEY) {
+                readKey();
+            } else if (type == LedgerWriter.GENESIS_OUTPUT) {
+                Transaction carrier = new Transaction();
+                byte[] hash = readBytes();
+                ensure(16);
+                int index = window.getInt();
+                double value = window.getDouble();
+                carrier.addOutput(value, key(window.getInt()));
+                pool.addUTXO(new UTXO(hash, index), carrier.getOutput(0));
+            } else {
+                window.position(window.position() - 1);
+                break;
+            }
+        }
+        return pool;
+    }
+
+    /** @return the transactions of the next epoch, or null at the end of the file */
+    public Transaction[] nextEpoch() throws IOException {
+        if (!genesisRead) {
+            readGenesis();
+        }
+        List<Transaction> epoch = new ArrayList<>();
+        while (position() < fileSize) {
+            ensure(1);
+            byte type = window.get();
+            if (type == LedgerWriter.END_EPOCH) {
+                return epoch.toArray(new Transaction[epoch.size()]);
+            } else if (type == LedgerWriter.TX) {
+                epoch.add(readTransaction());
+            } else if (type == LedgerWriter.KEY) {
+                readKey();
+            } else {
+                throw new IOException("unexpected record " + type + " at " + (position() - 1));
+            }
+        }
+        if (!epoch.isEmpty()) {
+            throw new EOFException("last epoch is not terminated");
+        }
+        return null;
+    }
+
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private Transaction readTransaction() throws IOException {
+        Transaction tx = new Transaction();
+        byte[] hash = readBytes();
+        ensure(4);
+        int numInputs = window.getInt();
+        for (int i = 0; i < numInputs; i++) {
+            byte[] prevTxHash = readBytes();
+            ensure(4);
+            tx.addInput(prevTxHash, window.getInt());
+            byte[] signature = readBytes();
+            if (signature.length > 0) {
+                tx.addSignature(signature, i);
+            }
+        }
+        ensure(4);
+        int numOutputs = window.getInt();
+        for (int i = 0; i < numOutputs; i++) {
+            ensure(12);
+            double value = window.getDouble();
+            tx.addOutput(value, key(window.getInt()));
+        }
+        tx.setHash(hash);
+        return tx;
+    }
+
+    private void readKey() throws IOException {
+        ensure(4);
+        byte[] encoded = new byte[window.getInt()];
+        ensure(encoded.length);
+        window.get(encoded);
+        try {
+            keys.add(keyFactory.generatePublic(new X509EncodedKeySpec(encoded)));
+        } catch (GeneralSecurityException x) {
+            throw new IOException("bad public key at " + position(), x);
+        }
+    }
+
+    private PublicKey key(int id) throws IOException {
+        if (id < 0 || id >= keys.size()) {
+            throw new IOException("unknown key " + id + " at " + position());
+        }
+        return keys.get(id);
+    }
+
+    private byte[] readBytes() throws IOException {
+        ensure(2);
+        byte[] bytes = new byte[window.getShort() & 0xffff];
+        ensure(bytes.length);
+        window.get(bytes);
+        return bytes;
+    }
+
+    private long position() {
+        return window == null ? 0L : windowStart + window.position();
+    }
+
+    /** Slides the window forward, if needed, so that the next {@code n} bytes are mapped */
+    private void ensure(int n) throws IOException {
+        if (window != null && window.remaining() >= n) {
+            return;
+        }
+        long start = position();
+        if (start + n > fileSize) {
+            throw new EOFException("truncated record at " + start);
+        }
+        if (n > windowBytes) {
+            throw new IOException("record of " + n + " bytes is larger than the window");
+        }
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                Math.min(windowBytes, fileSize - start));
+    }
+}
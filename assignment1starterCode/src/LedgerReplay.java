@@ -0,0 +1,67 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.Function;
+
+/**
+ * Replays a ledger recorded by {@link LedgerWriter}: builds a handler over its genesis pool and
+ * feeds it each recorded epoch in turn, to check a change against recorded history or to rebuild
+ * the pool. The file is streamed through a {@link LedgerReader}, so memory use stays flat
+ * whatever its size.
+ *
+ * Usage: {@code java LedgerReplay <ledger file> [window MiB]}
+ */
+public class LedgerReplay {
+
+    private final Function<UTXOPool, ? extends EpochHandler> handlers;
+    private final int windowBytes;
+
+    /** Creates a replay through a {@link TxHandler} */
+    public LedgerReplay() {
+        this(TxHandler::new, LedgerReader.DEFAULT_WINDOW_BYTES);
+    }
+
+    /**
+     * Creates a replay through the handler {@code handlers} builds over the genesis pool, mapping
+     * {@code windowBytes} of the file at a time.
+     */
+    public LedgerReplay(Function<UTXOPool, ? extends EpochHandler> handlers, int windowBytes) {
+        this.handlers = handlers;
+        this.windowBytes = windowBytes;
+    }
+
+    /** @return the throughput and per-epoch latency of the replay of {@code ledger} */
+    public ReplayReport replay(Path ledger) throws IOException {
+        LatencyHistogram latency = new LatencyHistogram();
+        long epochs = 0, transactions = 0, inputs = 0, accepted = 0;
+        long start = System.nanoTime();
+        try (LedgerReader reader = new LedgerReader(ledger, windowBytes)) {
+            EpochHandler handler = handlers.apply(reader.readGenesis());
+            Transaction[] epoch;
+            while ((epoch = reader.nextEpoch()) != null) {
+                long epochStart = System.nanoTime();
+                Transaction[] result = handler.handleTxs(epoch);
+                latency.record(System.nanoTime() - epochStart);
+                epochs++;
+                transactions += epoch.length;
+                for (Transaction tx : epoch) {
+                    inputs += tx.numInputs();
+                }
+                accepted += result.length;
+            }
+        }
+        return new ReplayReport(epochs, transactions, inputs, accepted,
+                System.nanoTime() - start, latency);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("usage: java LedgerReplay <ledger file> [window MiB]");
+            System.exit(2);
+        }
+        int windowBytes = args.length > 1
+                ? Integer.parseInt(args[1]) << 20 : LedgerReader.DEFAULT_WINDOW_BYTES;
+        Path ledger = Paths.get(args[0]);
+        System.out.println(new LedgerReplay(TxHandler::new, windowBytes).replay(ledger));
+    }
+}
@@ -0,0 +1,130 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.PublicKey;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records a ledger, the outputs of its genesis pool followed by its epochs of transactions, in the
+ * binary format read by {@link LedgerReader}.
+ *
+ * After a header (magic number and version), the file is a sequence of records, each starting
+ * with its type byte. Public keys are written once, in a {@link #KEY} record, and referred to by
+ * their index from then on. All numbers are big-endian.
+ * <pre>
+ * KEY            int length, X.509 encoding
+ * GENESIS_OUTPUT short hash length, hash, int index, double value, int key
+ * TX             short hash length, hash, int input count,
+ *                  per input: short hash length, hash, int index, short signature length, signature
+ *                int output count, per output: double value, int key
+ * END_EPOCH      (no payload)
+ * </pre>
+ * Genesis outputs come before the first transaction; a missing signature is written with length 0.
+ */
+public class LedgerWriter implements Closeable {
+
+    static final int MAGIC = 0x4c454447;
+    static final int VERSION = 1;
+
+    static final byte KEY = 1;
+    static final byte GENESIS_OUTPUT = 2;
+    static final byte TX = 3;
+    static final byte END_EPOCH = 4;
+
+    private final DataOutputStream out;
+    private final Map<PublicKey, Integer> keyIds = new HashMap<>();
+    private boolean epochsStarted;
+
+    public LedgerWriter(Path path) throws IOException {
+        this(Files.newOutputStream(path));
+    }
+
+    public LedgerWriter(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(VERSION);
+    }
+
+    /** Writes an output of the genesis pool; must come before the first transaction */
+    public void writeGenesisOutput(UTXO utxo, Transaction.Output output) throws IOException {
+        if (epochsStarted) {
+            throw new IllegalStateException("genesis outputs must precede the first epoch");
+        }
+        int key = keyId(output.address);
+        out.writeByte(GENESIS_OUTPUT);
+        writeBytes(utxo.getTxHash());
+        out.writeInt(utxo.getIndex());
+        out.writeDouble(output.value);
+        out.writeInt(key);
+    }
+
+    /** Writes {@code txs} as one epoch */
+    public void writeEpoch(Transaction[] txs) throws IOException {
+        for (Transaction tx : txs) {
+            writeTransaction(tx);
+        }
+        endEpoch();
+    }
+
+    /** Writes {@code tx} as part of the current epoch */
+    public void writeTransaction(Transaction tx) throws IOException {
+        epochsStarted = true;
+        int[] keys = new int[tx.numOutputs()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = keyId(tx.getOutput(i).address);
+        }
+        out.writeByte(TX);
+        writeBytes(tx.getHash());
+        out.writeInt(tx.numInputs());
+        for (Transaction.Input in : tx.getInputs()) {
+            writeBytes(in.prevTxHash);
+            out.writeInt(in.outputIndex);
+            writeBytes(in.signature);
+        }
+        out.writeInt(tx.numOutputs());
+        for (int i = 0; i < keys.length; i++) {
+            out.writeDouble(tx.getOutput(i).value);
+            out.writeInt(keys[i]);
+        }
+    }
+
+    /** Ends the current epoch */
+    public void endEpoch() throws IOException {
+        epochsStarted = true;
+        out.writeByte(END_EPOCH);
+    }
+
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private int keyId(PublicKey key) throws IOException {
+        Integer id = keyIds.get(key);
+        if (id == null) {
+            id = keyIds.size();
+            keyIds.put(key, id);
+            byte[] encoded = key.getEncoded();
+            out.writeByte(KEY);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+        return id;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeShort(0);
+            return;
+        }
+        if (bytes.length > 0xffff) {
+            throw new IOException("field of " + bytes.length + " bytes is too long");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -1,20 +1,60 @@
-import java.security.PublicKey;
+import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.util.*;
 
-public class MaxFeeTxHandler {
+public class MaxFeeTxHandler implements EpochHandler {
+
+    /** Time {@link #handleTxs} may spend improving the selection of large conflicting components */
+    public static final Duration DEFAULT_SELECTION_BUDGET = Duration.ofMillis(100);
+
+    /** Name of this handler in {@link LedgerEvents} and {@link EpochMetrics} */
+    private static final String NAME = "MaxFeeTxHandler";
+
+    private static final EpochMetrics METRICS = new EpochMetrics(NAME);
 
     UTXOPool utxoPool;
+
+    private final TxValidator validator = new TxValidator();
+
+    private final FeeSelector selector;
+
+    private FeeSelection lastSelection;
+
+    /** Transactions accepted in the current epoch, which {@link #replace} may replace */
+    private final Map<ByteBuffer, Accepted> accepted = new LinkedHashMap<>();
+
+    /** Accepted transaction of the current epoch spending each outpoint */
+    private final Map<UTXO, Accepted> spentBy = new HashMap<>();
+
+    private long nextSequence;
+
     /**
      * Creates a public ledger whose current UTXOPool (collection of unspent transaction outputs) is
      * {@code utxoPool}. This should make a copy of utxoPool by using the UTXOPool(UTXOPool uPool)
      * constructor.
      */
     public MaxFeeTxHandler(UTXOPool utxoPool) {
+        this(utxoPool, DEFAULT_SELECTION_BUDGET);
+    }
+
+    /**
+     * Creates a public ledger like {@link #MaxFeeTxHandler(UTXOPool)} whose selection of large
+     * conflicting components stops improving after {@code selectionBudget}.
+     *
+     * @throws IllegalArgumentException if {@code selectionBudget} is negative
+     */
+    public MaxFeeTxHandler(UTXOPool utxoPool, Duration selectionBudget) {
+        if (selectionBudget.isNegative()) {
+            throw new IllegalArgumentException("selection budget " + selectionBudget);
+        }
         if(utxoPool!=null){
             this.utxoPool=new UTXOPool(utxoPool);
         }else{
             this.utxoPool=new UTXOPool();
         }
+        long budgetNanos = selectionBudget.compareTo(TxHandler.MAX_BUDGET) > 0
+                ? Long.MAX_VALUE : selectionBudget.toNanos();
+        this.selector = new FeeSelector(FeeSelector.DEFAULT_EXACT_LIMIT, budgetNanos);
     }
 
     /**
@@ -27,153 +67,478 @@ public class MaxFeeTxHandler {
      *     values; and false otherwise.
      */
     public boolean isValidTx(Transaction tx) {
-        ArrayList<Transaction.Input> inputs = tx.getInputs();
-        ArrayList<Transaction.Output> outputs = tx.getOutputs();
+        return validateTx(tx).isValid();
+    }
 
-        if(inputs == null || outputs == null){
-            return false;
+    /**
+     * Checks the same conditions as {@link #isValidTx}, cheapest first and signatures last.
+     *
+     * @return {@link ValidationResult#VALID}, or the first {@link ValidationRule} {@code tx} fails
+     */
+    public ValidationResult validateTx(Transaction tx) {
+        return validator.validate(tx, utxoPool);
+    }
+
+    /** @return the current UTXO pool of the ledger; callers must not modify it */
+    public UTXOPool getUTXOPool() {
+        return utxoPool;
+    }
+
+    /** @return the validator used by this handler, which counts rejections per rule */
+    public TxValidator getValidator() {
+        return validator;
+    }
+
+
+    /**
+     * Handles each epoch by receiving an unordered array of proposed transactions, checking each
+     * transaction for correctness, returning a mutually valid array of accepted transactions, and
+     * updating the current UTXO pool as appropriate.
+     *
+     * The accepted set maximizes the total fee. Each candidate is checked once against the outputs
+     * it claims, from the pool or from another candidate; the valid ones are handed to a
+     * {@link FeeSelector} over their conflict and dependency graph. The returned array lists
+     * parents before the children spending their outputs, and {@link #getLastSelection()} reports
+     * how close the selection is to the optimum. The call and its validate, select and apply
+     * stages are reported as {@link LedgerEvents}, and the call to the {@link MetricsRegistry}
+     * along with the time each candidate's check took.
+     *
+     * Each call starts a new epoch: transactions accepted by earlier calls can no longer be
+     * replaced by {@link #replace}.
+     */
+    public Transaction[] handleTxs(Transaction[] possibleTxs) {
+        accepted.clear();
+        spentBy.clear();
+        if(possibleTxs == null || possibleTxs.length == 0){
+            lastSelection = null;
+            return new Transaction[0];
         }
 
-        // (1) all outputs claimed by {@code tx} are in the current UTXO pool,
-        ArrayList<UTXO> utxos = this.utxoPool.getAllUTXO();
-        Transaction.Output out = null;
-        Transaction.Input in = null;
-        UTXO utxo = null;
+        long start = System.nanoTime();
+        Object event = LedgerEvents.beginEpoch();
+        Object stage = LedgerEvents.beginStage();
+        CandidateGraph graph = buildGraph(possibleTxs);
+        LedgerEvents.endStage(stage, NAME, "validate", possibleTxs.length, graph.txs.length);
 
-        // (2) the signatures on each input of {@code tx} are valid,
-        Transaction.Output claimedOutput;
-        PublicKey pubKey;
-        for (int i = 0; i < tx.numInputs(); i++){
-            in = tx.getInput(i);
-            utxo = new UTXO(in.prevTxHash, in.outputIndex);
+        stage = LedgerEvents.beginStage();
+        FeeSelection selection = selector.select(graph.fees, graph.parents, graph.outpoints);
+        lastSelection = selection;
+        int[] order = selection.getOrder();
+        LedgerEvents.endStage(stage, NAME, "select", graph.txs.length, order.length);
 
-            if((claimedOutput = utxoPool.getTxOutput(utxo)) == null){
-                return false;
+        stage = LedgerEvents.beginStage();
+        Transaction[] ret = new Transaction[order.length];
+        for (int i = 0; i < order.length; i++) {
+            ret[i] = graph.txs[order[i]];
+            accept(ret[i], graph.fees[order[i]]);
+        }
+        LedgerEvents.endStage(stage, NAME, "apply", order.length, ret.length);
+        LedgerEvents.endEpoch(event, NAME, possibleTxs, ret.length);
+        METRICS.record(start, possibleTxs, ret.length);
+        return ret;
+    }
+
+    /**
+     * Offers {@code txs}, parents first, after the current epoch was handled. If they spend
+     * outpoints already spent by transactions accepted in this epoch, they replace those
+     * transactions and their descendants provided their total fee is strictly higher; otherwise
+     * they are accepted as they are. Only the transactions involved are validated, and the pool is
+     * updated by undoing the replaced ones and applying the new ones.
+     *
+     * @return the outcome, with the replaced transactions
+     */
+    public Replacement replace(Transaction... txs) {
+        if (txs == null || txs.length == 0) {
+            return rejected(ValidationResult.reject(ValidationRule.STRUCTURE));
+        }
+        Map<UTXO, Transaction.Output> created = new HashMap<>();
+        Set<UTXO> spent = new HashSet<>();
+        Set<ByteBuffer> hashes = new HashSet<>();
+        Set<Accepted> conflicts = new LinkedHashSet<>();
+        double[] fees = new double[txs.length];
+        double fee = 0d;
+
+        for (int k = 0; k < txs.length; k++) {
+            Transaction tx = txs[k];
+            if (tx == null || tx.getHash() == null) {
+                return rejected(ValidationResult.reject(ValidationRule.STRUCTURE));
+            }
+            ByteBuffer key = ByteBuffer.wrap(tx.getHash());
+            if (accepted.containsKey(key) || !hashes.add(key)) {
+                return new Replacement(Replacement.Status.DUPLICATE, ValidationResult.VALID,
+                        new Transaction[0], 0d, 0d);
+            }
+            ValidationResult result = validator.validate(tx, utxoPool, TxValidator.STATELESS_RULES);
+            if (!result.isValid()) {
+                return rejected(result);
             }
 
-            pubKey = claimedOutput.address;
-            byte [] message = tx.getRawDataToSign(i);
-            byte [] signature = in.signature;
+            double inputValue = 0d;
+            Transaction.Output[] claimed = new Transaction.Output[tx.numInputs()];
+            for (int i = 0; i < tx.numInputs(); i++) {
+                UTXO utxo = new UTXO(tx.getInput(i).prevTxHash, tx.getInput(i).outputIndex);
+                if (!spent.add(utxo)) {
+                    return rejected(ValidationResult.reject(ValidationRule.DUPLICATE_INPUT, i));
+                }
+                claimed[i] = created.get(utxo);
+                if (claimed[i] == null) {
+                    claimed[i] = utxoPool.getTxOutput(utxo);
+                }
+                Accepted holder = spentBy.get(utxo);
+                if (claimed[i] == null && holder != null) {
+                    claimed[i] = holder.claimedOutput(utxo);
+                    conflicts.add(holder);
+                }
+                if (claimed[i] == null) {
+                    return rejected(ValidationResult.reject(ValidationRule.UNKNOWN_INPUT, i));
+                }
+                inputValue += claimed[i].value;
+            }
+            double outputValue = 0d;
+            for (Transaction.Output out : tx.getOutputs()) {
+                outputValue += out.value;
+            }
+            if (inputValue < outputValue) {
+                return rejected(ValidationResult.reject(ValidationRule.INSUFFICIENT_VALUE));
+            }
+            for (int i = 0; i < tx.numInputs(); i++) {
+                result = ValidationRule.checkSignature(tx, i, claimed[i]);
+                if (!result.isValid()) {
+                    return rejected(result);
+                }
+            }
 
-            if (!Crypto.verifySignature(pubKey, message, signature)) {
-                return false;
+            fees[k] = inputValue - outputValue;
+            fee += fees[k];
+            for (int i = 0; i < tx.numOutputs(); i++) {
+                created.put(new UTXO(tx.getHash(), i), tx.getOutput(i));
             }
         }
 
-        // (3) no UTXO is claimed multiple times by {@code tx},
-        Set<UTXO> UTXO_set = new HashSet<>();
-        for (int i = 0; i < tx.numInputs(); i++){
-            in = tx.getInput(i);
-            utxo = new UTXO(in.prevTxHash, in.outputIndex);
-            if (UTXO_set.contains(utxo)) {
-                return false;
+        List<Accepted> replaced = descendants(conflicts);
+        Transaction[] replacedTxs = new Transaction[replaced.size()];
+        double replacedFee = 0d;
+        Set<ByteBuffer> replacedHashes = new HashSet<>();
+        for (int i = 0; i < replacedTxs.length; i++) {
+            replacedTxs[i] = replaced.get(i).tx;
+            replacedFee += replaced.get(i).fee;
+            replacedHashes.add(ByteBuffer.wrap(replacedTxs[i].getHash()));
+        }
+        for (UTXO utxo : spent) {
+            if (replacedHashes.contains(ByteBuffer.wrap(utxo.getTxHash()))) {
+                // spends an output of a transaction it replaces
+                return rejected(ValidationResult.reject(ValidationRule.UNKNOWN_INPUT));
             }
-            UTXO_set.add(utxo);
+        }
+        if (!replaced.isEmpty() && fee <= replacedFee) {
+            return new Replacement(Replacement.Status.INSUFFICIENT_FEE, ValidationResult.VALID,
+                    replacedTxs, fee, replacedFee);
         }
 
-        // (4) all of {@code tx}s output values are non-negative, and
-        double output_value = 0.0;
-        for(int i = 0; i < tx.numOutputs(); i ++){
-            out = tx.getOutput(i);
+        for (int i = replaced.size() - 1; i >= 0; i--) {
+            revert(replaced.get(i));
+        }
+        for (int k = 0; k < txs.length; k++) {
+            accept(txs[k], fees[k]);
+        }
+        Replacement.Status status = replaced.isEmpty()
+                ? Replacement.Status.ACCEPTED : Replacement.Status.REPLACED;
+        return new Replacement(status, ValidationResult.VALID, replacedTxs, fee, replacedFee);
+    }
 
-            if(out.value < 0){
-                return false;
-            }
-            output_value += out.value;
+    /**
+     * @return the transactions accepted in the current epoch by {@link #handleTxs} and
+     *         {@link #replace}, parents before children
+     */
+    public Transaction[] getAcceptedTxs() {
+        Transaction[] ret = new Transaction[accepted.size()];
+        int i = 0;
+        for (Accepted entry : accepted.values()) {
+            ret[i++] = entry.tx;
+        }
+        return ret;
+    }
+
+    /**
+     * Builds a block of at most {@code maxBytes} raw bytes from {@code possibleTxs} that pays as
+     * much fee as the size allows, without updating the pool. Candidates are validated as in
+     * {@link #handleTxs}, then picked by {@link BlockTemplateBuilder} in order of the fee rate of
+     * their ancestor package, so a low-fee parent gets in when its children pay for it.
+     */
+    public BlockTemplate buildBlockTemplate(Transaction[] possibleTxs, long maxBytes) {
+        if (possibleTxs == null || possibleTxs.length == 0) {
+            return new BlockTemplate(new Transaction[0], 0d, 0L);
+        }
+        CandidateGraph graph = buildGraph(possibleTxs);
+        int[] sizes = new int[graph.txs.length];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = graph.txs[i].getRawTx().length;
         }
 
-        // (5) the sum of {@code tx}s input values is greater than or equal to the sum of its output values;
-        // and false otherwise.
-        double input_value = 0.0;
-        for(int i = 0; i < tx.numInputs(); i ++){
-            utxo = new UTXO(tx.getInput(i).prevTxHash, tx.getInput(i).outputIndex);
-            out = utxoPool.getTxOutput(utxo);
-            if (out== null){
-                continue;
+        int[] order = new BlockTemplateBuilder(maxBytes)
+                .build(graph.fees, sizes, graph.parents, graph.outpoints);
+        Transaction[] txs = new Transaction[order.length];
+        double fee = 0d;
+        long bytes = 0L;
+        for (int i = 0; i < order.length; i++) {
+            txs[i] = graph.txs[order[i]];
+            fee += graph.fees[order[i]];
+            bytes += sizes[order[i]];
+        }
+        return new BlockTemplate(txs, fee, bytes);
+    }
+
+    /**
+     * Validates {@code possibleTxs} and numbers the valid ones, with the outpoints they spend, for
+     * {@link FeeSelector} and {@link BlockTemplateBuilder}. A candidate spending the output of an
+     * invalid one is left out too.
+     */
+    private CandidateGraph buildGraph(Transaction[] possibleTxs) {
+        int n = possibleTxs.length;
+        Map<ByteBuffer, Integer> byHash = new HashMap<>();
+        for (int k = 0; k < n; k++) {
+            Transaction tx = possibleTxs[k];
+            if (tx != null && tx.getHash() != null) {
+                byHash.putIfAbsent(ByteBuffer.wrap(tx.getHash()), k);
             }
-            input_value += out.value;
         }
-        if(input_value < output_value){
-            return false;
+
+        double[] fees = new double[n];
+        int[][] parents = new int[n][];
+        boolean[] viable = new boolean[n];
+        for (int k = 0; k < n; k++) {
+            long start = System.nanoTime();
+            viable[k] = prepare(possibleTxs, k, byHash, fees, parents);
+            METRICS.recordValidation(System.nanoTime() - start);
         }
+        excludeDescendantsOfInvalid(viable, parents);
 
-        return true;
+        int[] index = new int[n];
+        List<Integer> kept = new ArrayList<>();
+        for (int k = 0; k < n; k++) {
+            index[k] = viable[k] ? kept.size() : -1;
+            if (viable[k]) {
+                kept.add(k);
+            }
+        }
+        CandidateGraph graph = new CandidateGraph(kept.size());
+        Map<UTXO, Integer> outpointIds = new HashMap<>();
+        for (int i = 0; i < kept.size(); i++) {
+            int k = kept.get(i);
+            Transaction tx = possibleTxs[k];
+            graph.txs[i] = tx;
+            graph.fees[i] = fees[k];
+            graph.parents[i] = new int[parents[k].length];
+            for (int j = 0; j < parents[k].length; j++) {
+                graph.parents[i][j] = index[parents[k][j]];
+            }
+            graph.outpoints[i] = new int[tx.numInputs()];
+            for (int j = 0; j < tx.numInputs(); j++) {
+                UTXO utxo = new UTXO(tx.getInput(j).prevTxHash, tx.getInput(j).outputIndex);
+                Integer id = outpointIds.get(utxo);
+                if (id == null) {
+                    id = outpointIds.size();
+                    outpointIds.put(utxo, id);
+                }
+                graph.outpoints[i][j] = id;
+            }
+        }
+        return graph;
     }
 
+    /** @return the report of the selection made by the last call to {@link #handleTxs}, or null */
+    public FeeSelection getLastSelection() {
+        return lastSelection;
+    }
 
     /**
-     * Handles each epoch by receiving an unordered array of proposed transactions, checking each
-     * transaction for correctness, returning a mutually valid array of accepted transactions, and
-     * updating the current UTXO pool as appropriate.
+     * Validates candidate {@code k} against the outputs it claims, resolved from the pool or from
+     * the candidate {@code byHash} names, cheapest rule first. Fills in its fee and the candidates
+     * it spends from.
+     *
+     * @return true if the candidate is valid once its parents are accepted
      */
-    public Transaction[] handleTxs(Transaction[] possibleTxs) {
-        ArrayList<Transaction> validedTarnsactions = new ArrayList<Transaction>();
-        if(possibleTxs == null || possibleTxs.length == 0){
-            return null;
+    private boolean prepare(Transaction[] txs, int k, Map<ByteBuffer, Integer> byHash,
+                            double[] fees, int[][] parents) {
+        Transaction tx = txs[k];
+        parents[k] = new int[0];
+        if (tx == null || tx.getHash() == null || byHash.get(ByteBuffer.wrap(tx.getHash())) != k) {
+            validator.record(ValidationResult.reject(ValidationRule.STRUCTURE));
+            return false;
+        }
+        if (!validator.validate(tx, utxoPool, TxValidator.STATELESS_RULES).isValid()) {
+            return false;
         }
 
-        for(Transaction tx:possibleTxs){
-            boolean valid = this.isValidTx(tx);
-
-            if(valid){
-                double fee = getFee(tx);
-                if(fee > 0d){
-                    validedTarnsactions.add(tx);
-                    updateUTXO(tx);
+        Transaction.Output[] claimed = new Transaction.Output[tx.numInputs()];
+        Set<Integer> spentFrom = new LinkedHashSet<>();
+        double inputValue = 0d;
+        for (int i = 0; i < tx.numInputs(); i++) {
+            Transaction.Input in = tx.getInput(i);
+            claimed[i] = utxoPool.getTxOutput(new UTXO(in.prevTxHash, in.outputIndex));
+            if (claimed[i] == null) {
+                Integer parent = byHash.get(ByteBuffer.wrap(in.prevTxHash));
+                if (parent == null || parent == k || in.outputIndex < 0
+                        || in.outputIndex >= txs[parent].numOutputs()) {
+                    validator.record(ValidationResult.reject(ValidationRule.UNKNOWN_INPUT, i));
+                    return false;
                 }
+                claimed[i] = txs[parent].getOutput(in.outputIndex);
+                spentFrom.add(parent);
             }
+            inputValue += claimed[i].value;
         }
 
-        Transaction[] ret = new Transaction[validedTarnsactions.size()];
-        for(int i=0; i < validedTarnsactions.size(); i++){
-            ret[i] = validedTarnsactions.get(i);
+        double outputValue = 0d;
+        for (Transaction.Output out : tx.getOutputs()) {
+            outputValue += out.value;
         }
-        return ret;
+        if (inputValue < outputValue) {
+            validator.record(ValidationResult.reject(ValidationRule.INSUFFICIENT_VALUE));
+            return false;
+        }
+
+        for (int i = 0; i < tx.numInputs(); i++) {
+            if (!validator.record(ValidationRule.checkSignature(tx, i, claimed[i])).isValid()) {
+                return false;
+            }
+        }
+
+        fees[k] = inputValue - outputValue;
+        parents[k] = new int[spentFrom.size()];
+        int j = 0;
+        for (int parent : spentFrom) {
+            parents[k][j++] = parent;
+        }
+        return true;
     }
 
-    private void updateUTXO(Transaction tx){
-        ArrayList<Transaction.Input> inputs = tx.getInputs();
-        ArrayList<Transaction.Output> outputs = tx.getOutputs();
-        ArrayList<UTXO> utxos = this.utxoPool.getAllUTXO();
-        for(Transaction.Input input:inputs){
-            UTXO tmp = new UTXO(input.prevTxHash, input.outputIndex);
-            for(UTXO utxo:utxos){
-                if(utxo.equals(tmp)){
-                    this.utxoPool.removeUTXO(utxo);
-                    break;
+    /** Marks every candidate spending, directly or not, the outputs of a non-viable one */
+    private static void excludeDescendantsOfInvalid(boolean[] viable, int[][] parents) {
+        List<List<Integer>> children = new ArrayList<>(viable.length);
+        for (int k = 0; k < viable.length; k++) {
+            children.add(new ArrayList<Integer>());
+        }
+        for (int k = 0; k < viable.length; k++) {
+            for (int parent : parents[k]) {
+                children.get(parent).add(k);
+            }
+        }
+        ArrayDeque<Integer> invalid = new ArrayDeque<>();
+        for (int k = 0; k < viable.length; k++) {
+            if (!viable[k]) {
+                invalid.add(k);
+            }
+        }
+        while (!invalid.isEmpty()) {
+            for (int child : children.get(invalid.poll())) {
+                if (viable[child]) {
+                    viable[child] = false;
+                    invalid.add(child);
                 }
             }
         }
+    }
 
-        for(int i = 0; i < outputs.size(); i++){
-            Transaction.Output output=outputs.get(i);
-            UTXO utxo = new UTXO(tx.getHash(), i);
-            this.utxoPool.addUTXO(utxo, output);
+    private Replacement rejected(ValidationResult result) {
+        validator.record(result);
+        return new Replacement(Replacement.Status.REJECTED, result, new Transaction[0], 0d, 0d);
+    }
+
+    /** Applies {@code tx} to the pool and records it as accepted in the current epoch */
+    private void accept(Transaction tx, double fee) {
+        Transaction.Output[] claimed = new Transaction.Output[tx.numInputs()];
+        Accepted entry = new Accepted(tx, claimed, fee, nextSequence++);
+        for (int i = 0; i < tx.numInputs(); i++) {
+            UTXO utxo = new UTXO(tx.getInput(i).prevTxHash, tx.getInput(i).outputIndex);
+            claimed[i] = utxoPool.getTxOutput(utxo);
+            spentBy.put(utxo, entry);
         }
+        accepted.put(ByteBuffer.wrap(tx.getHash()), entry);
+        updateUTXO(tx);
+    }
 
+    /** Undoes {@link #accept}; the outputs of {@code entry} must be unspent */
+    private void revert(Accepted entry) {
+        Transaction tx = entry.tx;
+        for (int i = 0; i < tx.numOutputs(); i++) {
+            utxoPool.removeUTXO(new UTXO(tx.getHash(), i));
+        }
+        for (int i = 0; i < tx.numInputs(); i++) {
+            UTXO utxo = new UTXO(tx.getInput(i).prevTxHash, tx.getInput(i).outputIndex);
+            spentBy.remove(utxo);
+            utxoPool.addUTXO(utxo, entry.claimed[i]);
+        }
+        accepted.remove(ByteBuffer.wrap(tx.getHash()));
     }
 
-    private double getFee(Transaction tx){
-        double inVal = 0d, outVal = 0d;
-        ArrayList<Transaction.Input> inputs = tx.getInputs();
-        ArrayList<Transaction.Output> outputs = tx.getOutputs();
-        ArrayList<UTXO> utxos = this.utxoPool.getAllUTXO();
-        for(int i=0; i < inputs.size(); i++){
-            Transaction.Input input = inputs.get(i);
-            UTXO in = new UTXO(input.prevTxHash, input.outputIndex);
-            Transaction.Output output = null;
-            for(UTXO utxo:utxos){
-                if(utxo.equals(in)){
-                    output = this.utxoPool.getTxOutput(utxo);
-                    inVal += output.value;
+    /** @return {@code roots} and the accepted transactions spending their outputs, in acceptance order */
+    private List<Accepted> descendants(Set<Accepted> roots) {
+        List<Accepted> found = new ArrayList<>(roots);
+        Set<Accepted> seen = new HashSet<>(roots);
+        for (int k = 0; k < found.size(); k++) {
+            Transaction tx = found.get(k).tx;
+            for (int i = 0; i < tx.numOutputs(); i++) {
+                Accepted child = spentBy.get(new UTXO(tx.getHash(), i));
+                if (child != null && seen.add(child)) {
+                    found.add(child);
                 }
             }
         }
+        found.sort((a, b) -> Long.compare(a.sequence, b.sequence));
+        return found;
+    }
 
-        for(Transaction.Output out:outputs){
-            outVal+=out.value;
+    private void updateUTXO(Transaction tx){
+        for(Transaction.Input input:tx.getInputs()){
+            this.utxoPool.removeUTXO(new UTXO(input.prevTxHash, input.outputIndex));
+        }
+
+        ArrayList<Transaction.Output> outputs = tx.getOutputs();
+        for(int i = 0; i < outputs.size(); i++){
+            this.utxoPool.addUTXO(new UTXO(tx.getHash(), i), outputs.get(i));
+        }
+    }
+
+    /** A transaction accepted in the current epoch, with the outputs it spent */
+    private static final class Accepted {
+        final Transaction tx;
+        final Transaction.Output[] claimed;
+        final double fee;
+        final long sequence;
+
+        Accepted(Transaction tx, Transaction.Output[] claimed, double fee, long sequence) {
+            this.tx = tx;
+            this.claimed = claimed;
+            this.fee = fee;
+            this.sequence = sequence;
         }
 
-        return inVal-outVal;
+        /** @return the output this transaction spent at {@code utxo} */
+        Transaction.Output claimedOutput(UTXO utxo) {
+            for (int i = 0; i < tx.numInputs(); i++) {
+                Transaction.Input in = tx.getInput(i);
+                if (in.outputIndex == utxo.getIndex()
+                        && Arrays.equals(in.prevTxHash, utxo.getTxHash())) {
+                    return claimed[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    /** The valid candidates of an epoch, with their fees, parents and spent outpoint ids */
+    private static final class CandidateGraph {
+        final Transaction[] txs;
+        final double[] fees;
+        final int[][] parents;
+        final int[][] outpoints;
+
+        CandidateGraph(int size) {
+            txs = new Transaction[size];
+            fees = new double[size];
+            parents = new int[size][];
+            outpoints = new int[size][];
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,383 @@
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Pool of validated transactions waiting to be proposed to an {@link EpochHandler}, kept across
+ * epochs so that a transaction the handler does not accept yet is not lost.
+ *
+ * A transaction is admitted once its signatures and value balance check out against the outputs it
+ * claims, from the ledger pool or from another pooled transaction; the first transaction to spend
+ * an outpoint wins. Pooled transactions are indexed by fee rate (fee per byte of
+ * {@link Transaction#getRawTx()}), and when the pool outgrows its byte limit the lowest fee-rate
+ * transactions are evicted with their descendants. A transaction claiming an outpoint nobody knows
+ * about is held as an orphan, keyed by that outpoint, until its parent shows up or it expires.
+ *
+ * All methods are synchronized.
+ */
+public class Mempool {
+
+    /** Outcome of {@link #add(Transaction)} */
+    public enum Status {
+        /** the transaction is pooled */
+        ADDED,
+        /** the transaction waits for a missing parent */
+        ORPHAN,
+        /** the transaction is already pooled or orphaned */
+        DUPLICATE,
+        /** a pooled transaction already spends one of its outpoints */
+        CONFLICT,
+        /** the transaction is invalid, see {@link #getValidator()} for the reason counts */
+        REJECTED,
+        /** the transaction was valid but its fee rate is too low to fit the pool */
+        EVICTED
+    }
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    public static final int DEFAULT_MAX_ORPHANS = 10000;
+    public static final Duration DEFAULT_ORPHAN_EXPIRY = Duration.ofMinutes(20);
+
+    private static final Comparator<Entry> BY_FEE_RATE = (a, b) -> {
+        int cmp = Double.compare(a.feeRate, b.feeRate);
+        return cmp != 0 ? cmp : Long.compare(a.sequence, b.sequence);
+    };
+
+    private final EpochHandler handler;
+    private final long maxBytes;
+    private final int maxOrphans;
+    private final Duration orphanExpiry;
+    private final Clock clock;
+    private final TxValidator validator = new TxValidator();
+
+    private final Map<ByteBuffer, Entry> byHash = new HashMap<>();
+    /** Pooled transactions from the lowest to the highest fee rate */
+    private final TreeSet<Entry> byFeeRate = new TreeSet<>(BY_FEE_RATE);
+    /** Pooled transaction spending each outpoint */
+    private final Map<UTXO, Entry> spentBy = new HashMap<>();
+    private long bytes;
+    private long sequence;
+
+    /** Orphans in arrival order, for expiry and the count limit */
+    private final LinkedHashMap<ByteBuffer, Orphan> orphansByHash = new LinkedHashMap<>();
+    private final Map<UTXO, List<Orphan>> orphansByOutpoint = new HashMap<>();
+
+    /** Creates a mempool in front of {@code handler} with the default limits */
+    public Mempool(EpochHandler handler) {
+        this(handler, DEFAULT_MAX_BYTES, DEFAULT_MAX_ORPHANS, DEFAULT_ORPHAN_EXPIRY,
+                Clock.systemUTC());
+    }
+
+    /**
+     * @param handler      ledger the pooled transactions are proposed to
+     * @param maxBytes     total raw size of pooled transactions above which the lowest fee-rate
+     *                     ones are evicted
+     * @param maxOrphans   number of orphans above which the oldest are dropped
+     * @param orphanExpiry time after which an orphan whose parent never showed up is dropped
+     * @param clock        clock used to expire orphans
+     */
+    public Mempool(EpochHandler handler, long maxBytes, int maxOrphans, Duration orphanExpiry,
+                   Clock clock) {
+        this.handler = handler;
+        this.maxBytes = maxBytes;
+        this.maxOrphans = maxOrphans;
+        this.orphanExpiry = orphanExpiry;
+        this.clock = clock;
+    }
+
+    /** Offers {@code tx} to the pool; orphans it unlocks are admitted along with it */
+    public synchronized Status add(Transaction tx) {
+        expireOrphans();
+        Status status = admit(tx);
+        if (status == Status.ADDED) {
+            releaseOrphans(tx);
+        }
+        return status;
+    }
+
+    /**
+     * Proposes every pooled transaction, highest fee rate first, to the handler. Accepted
+     * transactions leave the pool, pooled transactions spending the same outpoints are dropped
+     * with their descendants, and orphans of the accepted transactions are admitted.
+     *
+     * @return the transactions the handler accepted
+     */
+    public synchronized Transaction[] runEpoch() {
+        expireOrphans();
+        Transaction[] accepted = handler.handleTxs(getTransactionsByFeeRate());
+        for (Transaction tx : accepted) {
+            Entry entry = byHash.get(ByteBuffer.wrap(tx.getHash()));
+            if (entry != null) {
+                remove(entry);
+            }
+        }
+        for (Transaction tx : accepted) {
+            for (Transaction.Input in : tx.getInputs()) {
+                Entry conflict = spentBy.get(new UTXO(in.prevTxHash, in.outputIndex));
+                if (conflict != null) {
+                    removeWithDescendants(conflict);
+                }
+            }
+        }
+        for (Transaction tx : accepted) {
+            releaseOrphans(tx);
+        }
+        return accepted;
+    }
+
+    /** @return the pooled transactions, highest fee rate first */
+    public synchronized Transaction[] getTransactionsByFeeRate() {
+        Transaction[] txs = new Transaction[byFeeRate.size()];
+        int i = 0;
+        for (Iterator<Entry> it = byFeeRate.descendingIterator(); it.hasNext(); ) {
+            txs[i++] = it.next().tx;
+        }
+        return txs;
+    }
+
+    /** @return true if the transaction with hash {@code hash} is pooled */
+    public synchronized boolean contains(byte[] hash) {
+        return byHash.containsKey(ByteBuffer.wrap(hash));
+    }
+
+    /** @return the number of pooled transactions */
+    public synchronized int size() {
+        return byHash.size();
+    }
+
+    /** @return the total raw size of the pooled transactions, in bytes */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /** @return the number of orphans waiting for a parent */
+    public synchronized int getOrphanCount() {
+        return orphansByHash.size();
+    }
+
+    /** @return the validator used on admission, which counts rejections per rule */
+    public TxValidator getValidator() {
+        return validator;
+    }
+
+    private Status admit(Transaction tx) {
+        if (tx == null || tx.getHash() == null) {
+            validator.record(ValidationResult.reject(ValidationRule.STRUCTURE));
+            return Status.REJECTED;
+        }
+        ByteBuffer hash = ByteBuffer.wrap(tx.getHash());
+        if (byHash.containsKey(hash) || orphansByHash.containsKey(hash)) {
+            return Status.DUPLICATE;
+        }
+        UTXOPool ledger = handler.getUTXOPool();
+        if (!validator.validate(tx, ledger, TxValidator.STATELESS_RULES).isValid()) {
+            return Status.REJECTED;
+        }
+
+        Transaction.Output[] claimed = new Transaction.Output[tx.numInputs()];
+        List<UTXO> missing = new ArrayList<>();
+        double inputValue = 0d;
+        for (int i = 0; i < tx.numInputs(); i++) {
+            Transaction.Input in = tx.getInput(i);
+            UTXO utxo = new UTXO(in.prevTxHash, in.outputIndex);
+            if (spentBy.containsKey(utxo)) {
+                return Status.CONFLICT;
+            }
+            claimed[i] = ledger.getTxOutput(utxo);
+            if (claimed[i] == null) {
+                Entry parent = byHash.get(ByteBuffer.wrap(in.prevTxHash));
+                if (parent != null) {
+                    if (in.outputIndex < 0 || in.outputIndex >= parent.tx.numOutputs()) {
+                        validator.record(ValidationResult.reject(ValidationRule.UNKNOWN_INPUT, i));
+                        return Status.REJECTED;
+                    }
+                    claimed[i] = parent.tx.getOutput(in.outputIndex);
+                }
+            }
+            if (claimed[i] == null) {
+                missing.add(utxo);
+            } else {
+                inputValue += claimed[i].value;
+            }
+        }
+        if (!missing.isEmpty()) {
+            addOrphan(tx, hash, missing);
+            return Status.ORPHAN;
+        }
+
+        double outputValue = 0d;
+        for (Transaction.Output out : tx.getOutputs()) {
+            outputValue += out.value;
+        }
+        if (inputValue < outputValue) {
+            validator.record(ValidationResult.reject(ValidationRule.INSUFFICIENT_VALUE));
+            return Status.REJECTED;
+        }
+        for (int i = 0; i < tx.numInputs(); i++) {
+            if (!validator.record(ValidationRule.checkSignature(tx, i, claimed[i])).isValid()) {
+                return Status.REJECTED;
+            }
+        }
+
+        Entry entry = new Entry(tx, hash, inputValue - outputValue, tx.getRawTx().length,
+                sequence++);
+        byHash.put(hash, entry);
+        byFeeRate.add(entry);
+        for (Transaction.Input in : tx.getInputs()) {
+            spentBy.put(new UTXO(in.prevTxHash, in.outputIndex), entry);
+        }
+        bytes += entry.size;
+
+        while (bytes > maxBytes && !byFeeRate.isEmpty()) {
+            removeWithDescendants(byFeeRate.first());
+        }
+        return byHash.containsKey(hash) ? Status.ADDED : Status.EVICTED;
+    }
+
+    /**
+     * Admits the orphans waiting on outputs of {@code parent}, then their own orphans. An orphan
+     * still missing the output of another parent stays where it is, keeping its arrival time.
+     */
+    private void releaseOrphans(Transaction parent) {
+        ArrayDeque<Transaction> parents = new ArrayDeque<>();
+        parents.add(parent);
+        while (!parents.isEmpty()) {
+            Transaction p = parents.poll();
+            for (int i = 0; i < p.numOutputs(); i++) {
+                List<Orphan> waiting = orphansByOutpoint.get(new UTXO(p.getHash(), i));
+                if (waiting == null) {
+                    continue;
+                }
+                for (Orphan orphan : new ArrayList<>(waiting)) {
+                    if (!isReleasable(orphan)) {
+                        continue;
+                    }
+                    removeOrphan(orphan);
+                    if (admit(orphan.tx) == Status.ADDED) {
+                        parents.add(orphan.tx);
+                    }
+                }
+            }
+        }
+    }
+
+    /** @return true if every output {@code orphan} missed is in the ledger or the pool now */
+    private boolean isReleasable(Orphan orphan) {
+        UTXOPool ledger = handler.getUTXOPool();
+        for (UTXO utxo : orphan.missing) {
+            if (!ledger.contains(utxo) && !byHash.containsKey(ByteBuffer.wrap(utxo.getTxHash()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addOrphan(Transaction tx, ByteBuffer hash, List<UTXO> missing) {
+        Orphan orphan = new Orphan(tx, hash, missing, clock.millis());
+        orphansByHash.put(hash, orphan);
+        for (UTXO utxo : missing) {
+            List<Orphan> waiting = orphansByOutpoint.get(utxo);
+            if (waiting == null) {
+                waiting = new ArrayList<>(1);
+                orphansByOutpoint.put(utxo, waiting);
+            }
+            waiting.add(orphan);
+        }
+        while (orphansByHash.size() > maxOrphans) {
+            removeOrphan(oldestOrphan());
+        }
+    }
+
+    private void removeOrphan(Orphan orphan) {
+        if (orphansByHash.remove(orphan.hash) == null) {
+            return;
+        }
+        for (UTXO utxo : orphan.missing) {
+            List<Orphan> waiting = orphansByOutpoint.get(utxo);
+            waiting.remove(orphan);
+            if (waiting.isEmpty()) {
+                orphansByOutpoint.remove(utxo);
+            }
+        }
+    }
+
+    private void expireOrphans() {
+        long cutoff = clock.millis() - orphanExpiry.toMillis();
+        while (!orphansByHash.isEmpty() && oldestOrphan().arrival <= cutoff) {
+            removeOrphan(oldestOrphan());
+        }
+    }
+
+    private Orphan oldestOrphan() {
+        return orphansByHash.values().iterator().next();
+    }
+
+    /** Removes {@code entry} and every pooled transaction spending its outputs */
+    private void removeWithDescendants(Entry entry) {
+        ArrayDeque<Entry> doomed = new ArrayDeque<>();
+        doomed.add(entry);
+        while (!doomed.isEmpty()) {
+            Entry e = doomed.poll();
+            if (!byHash.containsKey(e.hash)) {
+                continue;
+            }
+            remove(e);
+            for (int i = 0; i < e.tx.numOutputs(); i++) {
+                Entry child = spentBy.get(new UTXO(e.tx.getHash(), i));
+                if (child != null) {
+                    doomed.add(child);
+                }
+            }
+        }
+    }
+
+    private void remove(Entry entry) {
+        byHash.remove(entry.hash);
+        byFeeRate.remove(entry);
+        for (Transaction.Input in : entry.tx.getInputs()) {
+            UTXO utxo = new UTXO(in.prevTxHash, in.outputIndex);
+            if (spentBy.get(utxo) == entry) {
+                spentBy.remove(utxo);
+            }
+        }
+        bytes -= entry.size;
+    }
+
+    private static final class Entry {
+        final Transaction tx;
+        final ByteBuffer hash;
+        final int size;
+        final double feeRate;
+        final long sequence;
+
+        Entry(Transaction tx, ByteBuffer hash, double fee, int size, long sequence) {
+            this.tx = tx;
+            this.hash = hash;
+            this.size = size;
+            this.feeRate = size == 0 ? fee : fee / size;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final class Orphan {
+        final Transaction tx;
+        final ByteBuffer hash;
+        final List<UTXO> missing;
+        final long arrival;
+
+        Orphan(Transaction tx, ByteBuffer hash, List<UTXO> missing, long arrival) {
+            this.tx = tx;
+            this.hash = hash;
+            this.missing = missing;
+            this.arrival = arrival;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named counters and latency histograms, always on and cheap enough for the hot path: a counter is
+ * a {@link LongAdder}, and a histogram records into one of a few {@link LatencyHistogram}s picked
+ * by thread, so concurrent threads seldom share a lock.
+ *
+ * The handlers, {@link UTXOPool} and {@link Crypto} report to the {@link #getDefault() default
+ * registry}. Its text export, in the Prometheus text format with latencies in nanoseconds, can be
+ * written to a file, once or periodically, or served over HTTP on a local port for Prometheus to
+ * scrape:
+ * <pre>
+ * MetricsRegistry.getDefault().serve(9400);   // then: curl localhost:9400/metrics
+ * </pre>
+ * Names follow the Prometheus conventions and may carry labels, e.g.
+ * {@code ledger_epoch_nanos{handler="TxHandler"}}.
+ */
+public class MetricsRegistry {
+
+    /** Content type of the text export */
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+
+    /** Longest a client of {@link #serve} may take to send its request, in milliseconds */
+    private static final int REQUEST_TIMEOUT_MILLIS = 5000;
+
+    /** Percentiles exported for each histogram */
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+
+    /** @return the registry the ledger reports to */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /** @return the counter named {@code name}, created at zero on first use */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, k -> new Counter());
+    }
+
+    /** @return the histogram named {@code name}, created empty on first use */
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new Histogram());
+    }
+
+    /**
+     * @return every metric in the Prometheus text format, sorted by name: counters as they are,
+     *         histograms as summaries of their percentiles, count and sum, followed by a gauge
+     *         of each histogram's maximum named with a {@code _max} suffix
+     */
+    public String export() {
+        StringBuilder text = new StringBuilder();
+        StringBuilder max = new StringBuilder();
+        String type = null;
+        String maxType = null;
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            type = typeLine(text, type, entry.getKey(), "counter");
+            text.append(entry.getKey()).append(' ').append(entry.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            type = typeLine(text, type, entry.getKey(), "summary");
+            LatencyHistogram snapshot = entry.getValue().snapshot();
+            for (double quantile : QUANTILES) {
+                sample(text, entry.getKey(), "", "quantile=\"" + quantile + "\"",
+                        snapshot.getValueAtPercentile(100 * quantile));
+            }
+            sample(text, entry.getKey(), "_count", null, snapshot.getCount());
+            sample(text, entry.getKey(), "_sum", null, snapshot.getSum());
+            String base = baseName(entry.getKey());
+            String maxName = base + "_max" + entry.getKey().substring(base.length());
+            maxType = typeLine(max, maxType, maxName, "gauge");
+            sample(max, maxName, "", null, snapshot.getMax());
+        }
+        return text.append(max).toString();
+    }
+
+    /** Writes the export to {@code file}, replacing it atomically so readers never see half */
+    public void exportTo(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                out.write(export());
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Writes the export to {@code file} every {@code period} from a daemon thread, until the
+     * returned handle is closed; a failed write is retried at the next period.
+     */
+    public Closeable exportEvery(final Path file, Duration period) {
+        final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-file-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(() -> {
+            try {
+                exportTo(file);
+            } catch (IOException e) {
+                // the file is left as it was
+            }
+        }, 0, period.toNanos(), TimeUnit.NANOSECONDS);
+        return timer::shutdownNow;
+    }
+
+    /**
+     * Serves the export over HTTP on {@code port} of the loopback interface, or on a free port if
+     * 0, from a daemon thread: each request, whatever its path, is answered with the current
+     * export, and the connection is then closed.
+     */
+    public Server serve(int port) throws IOException {
+        return new Server(new ServerSocket(port, 50, InetAddress.getLoopbackAddress()));
+    }
+
+    private static String typeLine(StringBuilder text, String previous, String name, String type) {
+        String base = baseName(name);
+        if (!base.equals(previous)) {
+            text.append("# TYPE ").append(base).append(' ').append(type).append('\n');
+        }
+        return base;
+    }
+
+    /** Appends the sample {@code name} with {@code suffix} and the extra {@code label}, if any */
+    private static void sample(StringBuilder text, String name, String suffix, String label,
+                               long value) {
+        String base = baseName(name);
+        String labels = name.substring(base.length());
+        text.append(base).append(suffix);
+        if (label != null) {
+            labels = labels.isEmpty() ? "{" + label + "}"
+                    : labels.substring(0, labels.length() - 1) + "," + label + "}";
+        }
+        text.append(labels).append(' ').append(value).append('\n');
+    }
+
+    private static String baseName(String name) {
+        int brace = name.indexOf('{');
+        return brace < 0 ? name : name.substring(0, brace);
+    }
+
+    /** A count that only goes up */
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long n) {
+            value.add(n);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /** A {@link LatencyHistogram} that threads can record into concurrently */
+    public static final class Histogram {
+        private final LatencyHistogram[] stripes;
+
+        Histogram() {
+            int n = Integer.highestOneBit(Math.min(16, Runtime.getRuntime().availableProcessors()));
+            stripes = new LatencyHistogram[n];
+            for (int i = 0; i < n; i++) {
+                stripes[i] = new LatencyHistogram();
+            }
+        }
+
+        /** Counts {@code nanos}, usually the time since a {@link System#nanoTime()} */
+        public void record(long nanos) {
+            LatencyHistogram stripe =
+                    stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+            synchronized (stripe) {
+                stripe.record(nanos);
+            }
+        }
+
+        /** Counts the time elapsed since {@code startNanos}, a {@link System#nanoTime()} */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        /** @return a copy of the values counted so far */
+        public LatencyHistogram snapshot() {
+            LatencyHistogram total = new LatencyHistogram();
+            for (LatencyHistogram stripe : stripes) {
+                synchronized (stripe) {
+                    total.add(stripe);
+                }
+            }
+            return total;
+        }
+    }
+
+    /** The export served on a local port */
+    public final class Server implements Closeable {
+        private final ServerSocket socket;
+
+        private Server(ServerSocket socket) {
+            this.socket = socket;
+            Thread thread = new Thread(this::run, "metrics-export");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /** @return the port the export is served on */
+        public int getPort() {
+            return socket.getLocalPort();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+
+        private void run() {
+            while (!socket.isClosed()) {
+                try (Socket client = socket.accept(); OutputStream out = client.getOutputStream()) {
+                    client.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+                    readRequest(client);
+                    byte[] body = export().getBytes(StandardCharsets.UTF_8);
+                    out.write(("HTTP/1.0 200 OK\r\nContent-Type: " + CONTENT_TYPE
+                            + "\r\nContent-Length: " + body.length + "\r\n\r\n")
+                            .getBytes(StandardCharsets.ISO_8859_1));
+                    out.write(body);
+                } catch (IOException e) {
+                    // the client went away, or the server was closed
+                }
+            }
+        }
+
+        /** Reads the request line and headers, up to the blank line ending them */
+        private void readRequest(Socket client) throws IOException {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(client.getInputStream(), StandardCharsets.ISO_8859_1));
+            String line;
+            do {
+                line = in.readLine();
+            } while (line != null && !line.isEmpty());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsRegistry{" + counters.size() + " counters, " + histograms.size()
+                + " histograms}";
+    }
+}
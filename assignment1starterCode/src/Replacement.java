@@ -0,0 +1,77 @@
+/**
+ * Outcome of {@link MaxFeeTxHandler#replace}: whether the submitted transactions were accepted
+ * and which previously accepted ones they replaced.
+ */
+public class Replacement {
+
+    /** Outcome of a replacement attempt */
+    public enum Status {
+        /** the transactions conflicted with nothing and were accepted */
+        ACCEPTED,
+        /** the transactions were accepted in place of conflicting ones */
+        REPLACED,
+        /** a transaction is already accepted in this epoch */
+        DUPLICATE,
+        /** a transaction is invalid, see {@link #getResult()} */
+        REJECTED,
+        /** the transactions conflict with accepted ones paying at least as much fee */
+        INSUFFICIENT_FEE
+    }
+
+    private final Status status;
+    private final ValidationResult result;
+    private final Transaction[] replaced;
+    private final double fee;
+    private final double replacedFee;
+
+    Replacement(Status status, ValidationResult result, Transaction[] replaced, double fee,
+                double replacedFee) {
+        this.status = status;
+        this.result = result;
+        this.replaced = replaced;
+        this.fee = fee;
+        this.replacedFee = replacedFee;
+    }
+
+    /** @return the outcome */
+    public Status getStatus() {
+        return status;
+    }
+
+    /** @return true if the submitted transactions are now accepted */
+    public boolean isAccepted() {
+        return status == Status.ACCEPTED || status == Status.REPLACED;
+    }
+
+    /** @return the first rule a submitted transaction failed, or {@link ValidationResult#VALID} */
+    public ValidationResult getResult() {
+        return result;
+    }
+
+    /**
+     * @return the accepted transactions that were, or would have been, replaced: the ones in
+     *         conflict and their descendants, children after their parents
+     */
+    public Transaction[] getReplaced() {
+        return replaced.clone();
+    }
+
+    /** @return the total fee of the submitted transactions, 0 if one of them is invalid */
+    public double getFee() {
+        return fee;
+    }
+
+    /** @return the total fee of {@link #getReplaced()} */
+    public double getReplacedFee() {
+        return replacedFee;
+    }
+
+    public String toString() {
+        return "Replacement{status=" + status
+                + ", result=" + result
+                + ", replaced=" + replaced.length
+                + ", fee=" + fee
+                + ", replacedFee=" + replacedFee
+                + "}";
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of {@link LedgerReplay#replay}: how much of the ledger was replayed and how fast.
+ */
+public class ReplayReport {
+
+    private final long epochs;
+    private final long transactions;
+    private final long inputs;
+    private final long accepted;
+    private final long elapsedNanos;
+    private final LatencyHistogram epochLatency;
+
+    ReplayReport(long epochs, long transactions, long inputs, long accepted, long elapsedNanos,
+                 LatencyHistogram epochLatency) {
+        this.epochs = epochs;
+        this.transactions = transactions;
+        this.inputs = inputs;
+        this.accepted = accepted;
+        this.elapsedNanos = elapsedNanos;
+        this.epochLatency = epochLatency;
+    }
+
+    /** @return the number of epochs replayed */
+    public long getEpochs() {
+        return epochs;
+    }
+
+    /** @return the number of transactions proposed */
+    public long getTransactions() {
+        return transactions;
+    }
+
+    /** @return the number of inputs of the transactions proposed */
+    public long getInputs() {
+        return inputs;
+    }
+
+    /** @return the number of transactions accepted */
+    public long getAccepted() {
+        return accepted;
+    }
+
+    /** @return the wall-clock time of the replay, reading included, in nanoseconds */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /** @return proposed transactions per second of wall-clock time */
+    public double getTxsPerSecond() {
+        return perSecond(transactions);
+    }
+
+    /** @return inputs of proposed transactions per second of wall-clock time */
+    public double getInputsPerSecond() {
+        return perSecond(inputs);
+    }
+
+    /** @return the time each epoch spent in {@link EpochHandler#handleTxs}, in nanoseconds */
+    public LatencyHistogram getEpochLatency() {
+        return epochLatency;
+    }
+
+    private double perSecond(long n) {
+        return elapsedNanos == 0 ? 0d : n * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    public String toString() {
+        return String.format("epochs=%d txs=%d inputs=%d accepted=%d elapsedMillis=%d%n"
+                        + "txs/sec=%.1f inputs/sec=%.1f%n"
+                        + "epoch latency micros: p50=%d p90=%d p99=%d max=%d",
+                epochs, transactions, inputs, accepted, elapsedNanos / 1000000,
+                getTxsPerSecond(), getInputsPerSecond(),
+                epochLatency.getValueAtPercentile(50) / 1000,
+                epochLatency.getValueAtPercentile(90) / 1000,
+                epochLatency.getValueAtPercentile(99) / 1000,
+                epochLatency.getMax() / 1000);
+    }
+}
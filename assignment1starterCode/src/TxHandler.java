@@ -1,21 +1,62 @@
-import java.security.PublicKey;
+import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
 
-public class TxHandler {
+public class TxHandler implements EpochHandler {
+
+    /**
+     * Fewest candidates, once verified, for {@link #handleTxs} to apply independent components of
+     * an epoch in parallel
+     */
+    static final int PARALLEL_APPLY_THRESHOLD = 64;
+
+    /** Candidates per verifier thread verified between two deadline checks */
+    private static final int DEADLINE_SLICE_PER_THREAD = 4;
+
+    /** Longest budget {@link System#nanoTime()} can measure; longer ones are unlimited */
+    static final Duration MAX_BUDGET = Duration.ofNanos(Long.MAX_VALUE);
+
+    /** Name of this handler in {@link LedgerEvents} and {@link EpochMetrics} */
+    private static final String NAME = "TxHandler";
+
+    private static final EpochMetrics METRICS = new EpochMetrics(NAME);
 
     private UTXOPool utxoPool;
 
+    /** Pool running the order-independent validation stages of {@link #handleTxs} */
+    private final ForkJoinPool verifier;
+
+    private final TxValidator validator = new TxValidator();
+
+    private EpochListener listener;
+
+    /** Epoch being fed by {@link #submit}, or null if none is open */
+    private Epoch stream;
+
     /**
      * Creates a public ledger whose current UTXOPool (collection of unspent transaction outputs) is
      * {@code utxoPool}. This should make a copy of utxoPool by using the UTXOPool(UTXOPool uPool)
      * constructor.
      */
     public TxHandler(UTXOPool utxoPool) {
+        this(utxoPool, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a public ledger like {@link #TxHandler(UTXOPool)}, running the well-formedness and
+     * signature checks of {@link #handleTxs} on {@code verifier}.
+     */
+    public TxHandler(UTXOPool utxoPool, ForkJoinPool verifier) {
         if(utxoPool == null){
             this.utxoPool = new UTXOPool();
         }else{
             this.utxoPool = new UTXOPool(utxoPool);
         }
+        this.verifier = verifier;
     }
 
     /**
@@ -28,148 +69,895 @@ public class TxHandler {
      *     values; and false otherwise.
      */
     public boolean isValidTx(Transaction tx) {
-        ArrayList<Transaction.Input> inputs = tx.getInputs();
-        ArrayList<Transaction.Output> outputs = tx.getOutputs();
+        return validateTx(tx).isValid();
+    }
+
+    /**
+     * Checks the same conditions as {@link #isValidTx}, cheapest first and signatures last.
+     *
+     * @return {@link ValidationResult#VALID}, or the first {@link ValidationRule} {@code tx} fails
+     */
+    public ValidationResult validateTx(Transaction tx) {
+        return validator.validate(tx, utxoPool);
+    }
+
+    /** @return the current UTXO pool of the ledger; callers must not modify it */
+    public UTXOPool getUTXOPool() {
+        return utxoPool;
+    }
+
+    /** @return the validator used by this handler, which counts rejections per rule */
+    public TxValidator getValidator() {
+        return validator;
+    }
 
-        if(inputs == null || outputs == null){
-            return false;
+    /**
+     * Handles each epoch by receiving an unordered array of proposed transactions, checking each
+     * transaction for correctness, returning a mutually valid array of accepted transactions, and
+     * updating the current UTXO pool as appropriate.
+     *
+     * Candidates are indexed by hash so that a transaction spending the output of another candidate
+     * waits on that outpoint and is accepted as soon as its parent is, whatever order they arrive
+     * in. The returned array lists transactions in acceptance order, so parents precede children.
+     * Each input and output is touched a constant number of times.
+     *
+     * Checks that do not depend on the order in which candidates are applied run first, in
+     * parallel on the verifier pool and cheapest first: structure, output values and duplicate
+     * inputs, then the value balance against the outputs claimed from the pool or from other
+     * candidates, and every signature last, so an unbalanced candidate costs no RSA verification.
+     * Only pool membership and double spends are resolved sequentially. The accepted set is the
+     * same as validating every candidate with {@link #isValidTx}, with the same reasons.
+     *
+     * Candidates that share no outpoint, spent or created, cannot affect each other, so the
+     * sequential stage partitions them into such components and, for large epochs, runs each
+     * component on its own copy of the outputs it claims, in parallel; the changes are then merged
+     * into the pool. Results and listener calls are ordered as if the candidates had been applied
+     * one after another, so they do not depend on the partition or on thread scheduling; listener
+     * calls are made once the whole epoch is applied.
+     *
+     * The call and its well-formed, balance, signatures, resolve and apply stages are reported as
+     * {@link LedgerEvents}, and the call to the {@link MetricsRegistry} along with the time each
+     * candidate spent in the checks of every stage.
+     */
+    public synchronized Transaction[] handleTxs(Transaction[] possibleTxs) {
+        if (possibleTxs == null) {
+            return new Transaction[0];
         }
 
-        // (1) all outputs claimed by {@code tx} are in the current UTXO pool,
-        ArrayList<UTXO> utxos = this.utxoPool.getAllUTXO();
-        Transaction.Output out = null;
-        Transaction.Input in = null;
-        UTXO utxo = null;
+        long start = System.nanoTime();
+        Object event = LedgerEvents.beginEpoch();
+        Map<ByteBuffer, Transaction> candidates = indexByHash(possibleTxs);
+        long[] nanos = new long[possibleTxs.length];
+        Transaction[] accepted = applyVerified(possibleTxs, candidates,
+                verifyCandidates(possibleTxs, candidates, nanos), nanos);
+        LedgerEvents.endEpoch(event, NAME, possibleTxs, accepted.length);
+        METRICS.record(start, possibleTxs, accepted.length);
+        return accepted;
+    }
 
-        // (2) the signatures on each input of {@code tx} are valid,
-        Transaction.Output claimedOutput;
-        PublicKey pubKey;
-        for (int i = 0; i < tx.numInputs(); i++){
-            in = tx.getInput(i);
-            utxo = new UTXO(in.prevTxHash, in.outputIndex);
+    /**
+     * Prepares {@code possibleTxs} for {@link #applyPrepared} while an earlier epoch may still be
+     * pending: runs the stateless rules and resolves the outputs each input claims, from the pool,
+     * from another candidate or from a candidate of the pending epoch {@code pending}, then starts
+     * verifying signatures against them on the verifier pool without holding the handler lock.
+     * Candidates whose claimed outputs are unknown or do not cover their outputs are not verified,
+     * nor the inputs after one whose signature failed.
+     */
+    synchronized PreparedEpoch prepareEpoch(final Transaction[] possibleTxs,
+                                            Map<ByteBuffer, Transaction> pending) {
+        final PreparedEpoch epoch = new PreparedEpoch(System.nanoTime(), LedgerEvents.beginEpoch(),
+                possibleTxs, indexByHash(possibleTxs));
+        verifier.submit(() -> IntStream.range(0, possibleTxs.length).parallel().forEach(k -> {
+            long start = System.nanoTime();
+            epoch.wellFormed[k] = checkWellFormed(possibleTxs[k]);
+            epoch.nanos[k] = System.nanoTime() - start;
+        })).join();
 
-            if((claimedOutput = utxoPool.getTxOutput(utxo)) == null){
-                return false;
+        for (int k = 0; k < possibleTxs.length; k++) {
+            if (!epoch.wellFormed[k].isValid()) {
+                continue;
+            }
+            long start = System.nanoTime();
+            Transaction tx = possibleTxs[k];
+            epoch.claimed[k] = new Transaction.Output[tx.numInputs()];
+            for (int i = 0; i < tx.numInputs(); i++) {
+                Transaction.Output claimed = claimedOutput(tx.getInput(i), epoch.candidates);
+                if (claimed == null && pending != null) {
+                    claimed = outputOf(tx.getInput(i), pending);
+                }
+                epoch.claimed[k][i] = claimed;
+            }
+            if (isBalanced(tx, epoch.claimed[k])) {
+                epoch.signatures[k] = new ValidationResult[tx.numInputs()];
             }
+            epoch.nanos[k] += System.nanoTime() - start;
+        }
 
-            pubKey = claimedOutput.address;
-            byte [] message = tx.getRawDataToSign(i);
-            byte [] signature = in.signature;
+        epoch.verified = CompletableFuture.runAsync(() -> IntStream.range(0, possibleTxs.length)
+                .parallel().forEach(k -> {
+                    long start = System.nanoTime();
+                    ValidationResult[] signed = epoch.signatures[k];
+                    for (int i = 0; signed != null && i < signed.length
+                            && (i == 0 || signed[i - 1].isValid()); i++) {
+                        signed[i] = ValidationRule.checkSignature(possibleTxs[k], i,
+                                epoch.claimed[k][i]);
+                    }
+                    epoch.nanos[k] += System.nanoTime() - start;
+                }), verifier);
+        return epoch;
+    }
 
-            if (!Crypto.verifySignature(pubKey, message, signature)) {
-                return false;
+    /**
+     * Applies an epoch prepared by {@link #prepareEpoch} once every earlier epoch is applied. The
+     * value balance is checked against the outputs claimed now, and an input whose claimed output
+     * is not the one its signature was verified against, because the earlier epochs spent or
+     * created it, is verified again; the result is the same as passing the candidates to
+     * {@link #handleTxs(Transaction[])} now. The epoch is reported as a {@link LedgerEvents} epoch
+     * and to the {@link MetricsRegistry} as taking from the start of its preparation until now.
+     */
+    synchronized Transaction[] applyPrepared(PreparedEpoch epoch) {
+        epoch.verified.join();
+        Transaction[] txs = epoch.txs;
+        ValidationResult[] verified = new ValidationResult[txs.length];
+        for (int k = 0; k < txs.length; k++) {
+            long start = System.nanoTime();
+            verified[k] = epoch.wellFormed[k];
+            if (verified[k].isValid()) {
+                Transaction.Output[] claimed = new Transaction.Output[txs[k].numInputs()];
+                verified[k] = checkBalance(txs[k], epoch.candidates, claimed);
+                ValidationResult[] signatures = epoch.signatures[k];
+                for (int i = 0; verified[k].isValid() && i < claimed.length; i++) {
+                    ValidationResult signed = signatures != null && signatures[i] != null
+                            && claimed[i] == epoch.claimed[k][i] ? signatures[i]
+                            : ValidationRule.checkSignature(txs[k], i, claimed[i]);
+                    if (!signed.isValid()) {
+                        verified[k] = validator.record(signed);
+                    }
+                }
             }
+            epoch.nanos[k] += System.nanoTime() - start;
         }
+        Transaction[] accepted = applyVerified(txs, epoch.candidates, verified, epoch.nanos);
+        LedgerEvents.endEpoch(epoch.event, NAME, txs, accepted.length);
+        METRICS.record(epoch.start, txs, accepted.length);
+        return accepted;
+    }
 
-        // (3) no UTXO is claimed multiple times by {@code tx},
-        Set<UTXO> UTXO_set = new HashSet<>();
-        for (int i = 0; i < tx.numInputs(); i++){
-            in = tx.getInput(i);
-            utxo = new UTXO(in.prevTxHash, in.outputIndex);
-            if (UTXO_set.contains(utxo)) {
-                return false;
+    /**
+     * Runs the sequential stage of {@link #handleTxs(Transaction[])} on candidates whose stateless
+     * rules and signatures were checked, with outcome {@code verified}, in {@code nanos} per
+     * candidate.
+     */
+    private Transaction[] applyVerified(Transaction[] possibleTxs,
+                                        Map<ByteBuffer, Transaction> candidates,
+                                        ValidationResult[] verified, long[] nanos) {
+        Object stage = LedgerEvents.beginStage();
+        List<EpochEvent> events = new ArrayList<>();
+        List<Integer> offered = new ArrayList<>();
+        List<Set<UTXO>> missingOf = new ArrayList<>();
+        int passed = 0;
+        for (int k = 0; k < possibleTxs.length; k++) {
+            passed += verified[k].isValid() ? 1 : 0;
+            Set<UTXO> missing = classify(possibleTxs, k, verified[k], candidates, events, nanos);
+            if (missing != null) {
+                offered.add(k);
+                missingOf.add(missing);
             }
-            UTXO_set.add(utxo);
         }
+        LedgerEvents.endStage(stage, NAME, "resolve", passed, offered.size());
 
-        // (4) all of {@code tx}s output values are non-negative, and
-        double output_value = 0.0;
-        for(int i = 0; i < tx.numOutputs(); i ++){
-            out = tx.getOutput(i);
+        stage = LedgerEvents.beginStage();
+        List<List<Integer>> components = partition(possibleTxs, offered);
+        if (components.size() < 2 || offered.size() < PARALLEL_APPLY_THRESHOLD) {
+            Epoch epoch = new Epoch(utxoPool, TxValidator.POOL_RULES, events);
+            for (int i = 0; i < offered.size(); i++) {
+                int k = offered.get(i);
+                epoch.offer(possibleTxs[k], missingOf.get(i), EpochEvent.keyOf(k), nanos[k]);
+            }
+            epoch.seal();
+        } else {
+            applyInParallel(possibleTxs, offered, missingOf, components, events, nanos);
+        }
+        Transaction[] accepted = report(events);
+        LedgerEvents.endStage(stage, NAME, "apply", offered.size(), accepted.length);
+        return accepted;
+    }
+
+    /**
+     * Handles an epoch like {@link #handleTxs(Transaction[])} within a time budget. Candidates are
+     * taken in array order, so callers list them highest priority first (as
+     * {@link Mempool#getTransactionsByFeeRate()} does), and verified and applied a slice at a time
+     * until the slices are exhausted or the budget runs out; the deadline is checked between
+     * slices, each of which takes a few candidates per verifier thread.
+     *
+     * The accepted transactions are mutually valid and the pool reflects exactly them. Candidates
+     * not reached by the deadline, and those reached that still wait for the output of one not
+     * reached, directly or through another waiting candidate, are returned unprocessed, in array
+     * order, for a later epoch; reached candidates waiting for an output nothing left can create
+     * are rejected. With an ample budget the result is the same as
+     * {@link #handleTxs(Transaction[])}, except that components are not applied in parallel.
+     */
+    public synchronized EpochResult handleTxs(Transaction[] possibleTxs, Duration budget) {
+        long start = System.nanoTime();
+        long budgetNanos = budget.compareTo(MAX_BUDGET) > 0 ? Long.MAX_VALUE : budget.toNanos();
+        if (possibleTxs == null) {
+            return new EpochResult(new Transaction[0], new Transaction[0]);
+        }
+        Object event = LedgerEvents.beginEpoch();
+
+        Map<ByteBuffer, Transaction> candidates = indexByHash(possibleTxs);
+        long[] nanos = new long[possibleTxs.length];
+        List<EpochEvent> events = new ArrayList<>();
+        Epoch epoch = new Epoch(utxoPool, TxValidator.POOL_RULES, events);
+        int slice = Math.max(1, verifier.getParallelism() * DEADLINE_SLICE_PER_THREAD);
+        int next = 0;
+        while (next < possibleTxs.length && System.nanoTime() - start < budgetNanos) {
+            int end = Math.min(possibleTxs.length, next + slice);
+            long[] sliceNanos = new long[end - next];
+            ValidationResult[] verified = verifyCandidates(
+                    Arrays.copyOfRange(possibleTxs, next, end), candidates, sliceNanos);
+            System.arraycopy(sliceNanos, 0, nanos, next, sliceNanos.length);
+            for (int k = next; k < end; k++) {
+                Set<UTXO> missing =
+                        classify(possibleTxs, k, verified[k - next], candidates, events, nanos);
+                if (missing != null) {
+                    epoch.offer(possibleTxs[k], missing, EpochEvent.keyOf(k), nanos[k]);
+                }
+            }
+            next = end;
+        }
+
+        Set<ByteBuffer> unreached = new HashSet<>();
+        for (int k = next; k < possibleTxs.length; k++) {
+            if (possibleTxs[k] != null && possibleTxs[k].getHash() != null) {
+                unreached.add(ByteBuffer.wrap(possibleTxs[k].getHash()));
+            }
+        }
+        Set<Transaction> waiting = epoch.sealExcept(unreached);
+        List<Transaction> unprocessed = new ArrayList<>();
+        for (int k = 0; k < next; k++) {
+            if (waiting.contains(possibleTxs[k])) {
+                unprocessed.add(possibleTxs[k]);
+            }
+        }
+        unprocessed.addAll(Arrays.asList(possibleTxs).subList(next, possibleTxs.length));
+        Transaction[] accepted = report(events);
+        LedgerEvents.endEpoch(event, NAME, possibleTxs, accepted.length);
+        METRICS.record(start, possibleTxs, accepted.length);
+        return new EpochResult(accepted, unprocessed.toArray(new Transaction[unprocessed.size()]));
+    }
+
+    /**
+     * Sets the listener told about every transaction {@link #handleTxs}, {@link #submit} and
+     * {@link #sealEpoch} accept or reject, or null for none. It is called on the thread doing the
+     * work, in acceptance order.
+     */
+    public synchronized void setEpochListener(EpochListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Streams {@code tx} into the open epoch, opening one if needed, and validates it right away.
+     * A transaction whose inputs are all in the pool is accepted or rejected before this returns;
+     * one claiming outputs not in the pool yet waits for them until the epoch is sealed. Submitting
+     * an epoch's transactions one by one and sealing it accepts the same transactions, in the same
+     * order, as passing them to {@link #handleTxs} in one array.
+     */
+    public synchronized void submit(Transaction tx) {
+        if (stream == null) {
+            stream = new Epoch(utxoPool, TxValidator.ALL_RULES, null);
+        }
+        long start = System.nanoTime();
+        if (tx == null || tx.getHash() == null) {
+            METRICS.recordValidation(System.nanoTime() - start);
+            fireRejected(tx, validator.record(ValidationResult.reject(ValidationRule.STRUCTURE)));
+            return;
+        }
+        ValidationResult result = validator.validate(tx, utxoPool, TxValidator.STATELESS_RULES);
+        if (!result.isValid()) {
+            METRICS.recordValidation(System.nanoTime() - start);
+            fireRejected(tx, result);
+            return;
+        }
+        Set<UTXO> missing = new HashSet<>();
+        for (Transaction.Input in : tx.getInputs()) {
+            UTXO utxo = new UTXO(in.prevTxHash, in.outputIndex);
+            if (!utxoPool.contains(utxo)) {
+                missing.add(utxo);
+            }
+        }
+        stream.offer(tx, missing, 0L, System.nanoTime() - start);
+    }
+
+    /**
+     * Closes the epoch opened by {@link #submit}: transactions still waiting for an output are
+     * rejected.
+     *
+     * @return the transactions accepted in the epoch, parents before children
+     */
+    public synchronized Transaction[] sealEpoch() {
+        Epoch epoch = stream;
+        stream = null;
+        return epoch == null ? new Transaction[0] : epoch.seal();
+    }
+
+    private static Map<ByteBuffer, Transaction> indexByHash(Transaction[] txs) {
+        Map<ByteBuffer, Transaction> candidates = new HashMap<>();
+        for (Transaction tx : txs) {
+            if (tx != null && tx.getHash() != null) {
+                candidates.put(ByteBuffer.wrap(tx.getHash()), tx);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Records the rejection of candidate {@code k} in {@code events} if it failed verification or
+     * claims an outpoint nobody provides, adding the time taken to {@code nanos[k]}; a rejected
+     * candidate's time is recorded in the {@link EpochMetrics}.
+     *
+     * @return the outpoints it claims that only other candidates provide, or null if rejected
+     */
+    private Set<UTXO> classify(Transaction[] txs, int k, ValidationResult verified,
+                               Map<ByteBuffer, Transaction> candidates, List<EpochEvent> events,
+                               long[] nanos) {
+        if (!verified.isValid()) {
+            METRICS.recordValidation(nanos[k]);
+            events.add(new EpochEvent(EpochEvent.keyOf(k), txs[k], verified));
+            return null;
+        }
+        long start = System.nanoTime();
+        Set<UTXO> missing = missingInputs(txs[k], candidates);
+        nanos[k] += System.nanoTime() - start;
+        if (missing == null) {
+            METRICS.recordValidation(nanos[k]);
+            events.add(new EpochEvent(EpochEvent.keyOf(k), txs[k], validator.record(
+                    ValidationResult.reject(ValidationRule.UNKNOWN_INPUT))));
+        }
+        return missing;
+    }
+
+    /**
+     * Sorts {@code events} into sequential order and tells the listener about them.
+     *
+     * @return the accepted transactions, in acceptance order
+     */
+    private Transaction[] report(List<EpochEvent> events) {
+        Collections.sort(events);
+        List<Transaction> accepted = new ArrayList<>();
+        for (EpochEvent event : events) {
+            if (event.result == null) {
+                accepted.add(event.tx);
+                fireAccepted(event.tx);
+            } else {
+                fireRejected(event.tx, event.result);
+            }
+        }
+        return accepted.toArray(new Transaction[accepted.size()]);
+    }
+
+    private void fireAccepted(Transaction tx) {
+        if (listener != null) {
+            listener.onAccepted(tx);
+        }
+    }
+
+    private void fireRejected(Transaction tx, ValidationResult result) {
+        if (listener != null) {
+            listener.onRejected(tx, result);
+        }
+    }
+
+    /**
+     * Runs the stateless rules on every candidate, then checks the value balance of those that
+     * passed against the outputs they claim, from the pool or from other candidates, and finally
+     * verifies the signature of every input of the balanced ones. Each stage runs in parallel on
+     * {@link #verifier}, over the inputs of every candidate for signatures; the inputs after one
+     * whose signature failed are skipped. Each rejected candidate is counted once, under the first
+     * rule it failed, and the time each candidate took is stored in {@code nanos}.
+     *
+     * @return for each candidate, the outcome of the three stages
+     */
+    private ValidationResult[] verifyCandidates(final Transaction[] txs,
+                                                final Map<ByteBuffer, Transaction> candidates,
+                                                final long[] nanos) {
+        Object stage = LedgerEvents.beginStage();
+        final ValidationResult[] verified = new ValidationResult[txs.length];
+        verifier.submit(() -> IntStream.range(0, txs.length).parallel().forEach(k -> {
+            long start = System.nanoTime();
+            verified[k] = checkWellFormed(txs[k]);
+            nanos[k] = System.nanoTime() - start;
+        })).join();
+
+        int wellFormed = 0;
+        for (int k = 0; k < txs.length; k++) {
+            wellFormed += verified[k].isValid() ? 1 : 0;
+        }
+        LedgerEvents.endStage(stage, NAME, "well-formed", txs.length, wellFormed);
+
+        stage = LedgerEvents.beginStage();
+        final Transaction.Output[][] claimed = new Transaction.Output[txs.length][];
+        verifier.submit(() -> IntStream.range(0, txs.length).parallel().forEach(k -> {
+            if (verified[k].isValid()) {
+                long start = System.nanoTime();
+                claimed[k] = new Transaction.Output[txs[k].numInputs()];
+                verified[k] = checkBalance(txs[k], candidates, claimed[k]);
+                nanos[k] += System.nanoTime() - start;
+            }
+        })).join();
 
-            if(out.value < 0){
+        int total = 0;
+        int balanced = 0;
+        for (int k = 0; k < txs.length; k++) {
+            if (verified[k].isValid()) {
+                total += txs[k].numInputs();
+                balanced++;
+            }
+        }
+        LedgerEvents.endStage(stage, NAME, "balance", wellFormed, balanced);
+
+        stage = LedgerEvents.beginStage();
+        final int[] owner = new int[total];
+        final int[] position = new int[total];
+        for (int k = 0, j = 0; k < txs.length; k++) {
+            for (int i = 0; verified[k].isValid() && i < txs[k].numInputs(); i++, j++) {
+                owner[j] = k;
+                position[j] = i;
+            }
+        }
+
+        // per candidate, 1 + the position of its first input known to fail, or 0
+        final AtomicIntegerArray failed = new AtomicIntegerArray(txs.length);
+        final ValidationResult[] signed = new ValidationResult[total];
+        final long[] signedNanos = new long[total];
+        verifier.submit(() -> IntStream.range(0, owner.length).parallel().forEach(j -> {
+            int k = owner[j];
+            int first = failed.get(k);
+            if (first != 0 && first <= position[j]) {
+                return;
+            }
+            long start = System.nanoTime();
+            signed[j] = ValidationRule.checkSignature(txs[k], position[j], claimed[k][position[j]]);
+            signedNanos[j] = System.nanoTime() - start;
+            if (!signed[j].isValid()) {
+                failed.accumulateAndGet(k, position[j] + 1,
+                        (a, b) -> a == 0 ? b : Math.min(a, b));
+            }
+        })).join();
+
+        int passed = balanced;
+        for (int j = 0; j < total; j++) {
+            nanos[owner[j]] += signedNanos[j];
+            if (verified[owner[j]].isValid() && signed[j] != null && !signed[j].isValid()) {
+                verified[owner[j]] = validator.record(signed[j]);
+                passed--;
+            }
+        }
+        LedgerEvents.endStage(stage, NAME, "signatures", balanced, passed);
+        return verified;
+    }
+
+    /** Checks that {@code tx} is hashed and passes the {@link TxValidator#STATELESS_RULES} */
+    private ValidationResult checkWellFormed(Transaction tx) {
+        if (tx == null || tx.getHash() == null) {
+            return validator.record(ValidationResult.reject(ValidationRule.STRUCTURE));
+        }
+        return validator.validate(tx, utxoPool, TxValidator.STATELESS_RULES);
+    }
+
+    /**
+     * Resolves into {@code claimed} the output each input of {@code tx} claims, from the pool or
+     * else among the epoch's {@code candidates}, and checks that they cover the outputs of
+     * {@code tx}, as the {@link TxValidator#POOL_RULES} will once its parents are accepted.
+     */
+    private ValidationResult checkBalance(Transaction tx, Map<ByteBuffer, Transaction> candidates,
+                                          Transaction.Output[] claimed) {
+        for (int i = 0; i < claimed.length; i++) {
+            claimed[i] = claimedOutput(tx.getInput(i), candidates);
+            if (claimed[i] == null) {
+                return validator.record(ValidationResult.reject(ValidationRule.UNKNOWN_INPUT, i));
+            }
+        }
+        return isBalanced(tx, claimed) ? ValidationResult.VALID
+                : validator.record(ValidationResult.reject(ValidationRule.INSUFFICIENT_VALUE));
+    }
+
+    /** @return true if the {@code claimed} outputs are all known and cover those of {@code tx} */
+    private static boolean isBalanced(Transaction tx, Transaction.Output[] claimed) {
+        double inputValue = 0.0;
+        for (Transaction.Output output : claimed) {
+            if (output == null) {
                 return false;
             }
-            output_value += out.value;
+            inputValue += output.value;
+        }
+        double outputValue = 0.0;
+        for (int i = 0; i < tx.numOutputs(); i++) {
+            outputValue += tx.getOutput(i).value;
+        }
+        return inputValue >= outputValue;
+    }
+
+    /** @return the output {@code in} claims, from the pool or else from {@code candidates} */
+    private Transaction.Output claimedOutput(Transaction.Input in,
+                                             Map<ByteBuffer, Transaction> candidates) {
+        Transaction.Output claimed = utxoPool.getTxOutput(new UTXO(in.prevTxHash, in.outputIndex));
+        return claimed != null ? claimed : outputOf(in, candidates);
+    }
+
+    /** @return the output {@code in} claims among {@code txs}, or null */
+    private static Transaction.Output outputOf(Transaction.Input in,
+                                               Map<ByteBuffer, Transaction> txs) {
+        Transaction parent = txs.get(ByteBuffer.wrap(in.prevTxHash));
+        if (parent == null || in.outputIndex < 0 || in.outputIndex >= parent.numOutputs()) {
+            return null;
         }
+        return parent.getOutput(in.outputIndex);
+    }
 
-        // (5) the sum of {@code tx}s input values is greater than or equal to the sum of its output values;
-        // and false otherwise.
-        double input_value = 0.0;
-        for(int i = 0; i < tx.numInputs(); i ++){
-            utxo = new UTXO(tx.getInput(i).prevTxHash, tx.getInput(i).outputIndex);
-            out = utxoPool.getTxOutput(utxo);
-            if (out== null){
+    /**
+     * @return the distinct outpoints claimed by {@code tx} that are not in the pool yet but are
+     *         outputs of another candidate in {@code candidates}, or null if {@code tx} claims an
+     *         outpoint that neither the pool nor any candidate can provide
+     */
+    private Set<UTXO> missingInputs(Transaction tx, Map<ByteBuffer, Transaction> candidates) {
+        Set<UTXO> missing = new HashSet<>();
+        for (Transaction.Input in : tx.getInputs()) {
+            if (in.prevTxHash == null) {
+                return null;
+            }
+            UTXO utxo = new UTXO(in.prevTxHash, in.outputIndex);
+            if (utxoPool.contains(utxo)) {
                 continue;
             }
-            input_value += out.value;
+            Transaction parent = candidates.get(ByteBuffer.wrap(in.prevTxHash));
+            if (parent == null || parent == tx || in.outputIndex < 0
+                    || in.outputIndex >= parent.numOutputs()) {
+                return null;
+            }
+            missing.add(utxo);
+        }
+        return missing;
+    }
+
+    /**
+     * Groups the {@code offered} candidates into components whose members share no outpoint, spent
+     * or created, with any member of another component, using union-find over the outpoints.
+     *
+     * @return the components, as positions in {@code offered}, in order of their first member
+     */
+    private static List<List<Integer>> partition(Transaction[] txs, List<Integer> offered) {
+        int[] parent = new int[offered.size()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        Map<UTXO, Integer> owner = new HashMap<>();
+        for (int i = 0; i < parent.length; i++) {
+            Transaction tx = txs[offered.get(i)];
+            for (Transaction.Input in : tx.getInputs()) {
+                union(parent, i, owner, new UTXO(in.prevTxHash, in.outputIndex));
+            }
+            for (int j = 0; j < tx.numOutputs(); j++) {
+                union(parent, i, owner, new UTXO(tx.getHash(), j));
+            }
+        }
+
+        Map<Integer, List<Integer>> byRoot = new LinkedHashMap<>();
+        for (int i = 0; i < parent.length; i++) {
+            int root = find(parent, i);
+            List<Integer> component = byRoot.get(root);
+            if (component == null) {
+                component = new ArrayList<>();
+                byRoot.put(root, component);
+            }
+            component.add(i);
         }
-        if(input_value < output_value){
-            return false;
+        return new ArrayList<>(byRoot.values());
+    }
+
+    private static void union(int[] parent, int i, Map<UTXO, Integer> owner, UTXO utxo) {
+        Integer other = owner.putIfAbsent(utxo, i);
+        if (other != null) {
+            parent[find(parent, other)] = find(parent, i);
         }
+    }
 
-        return true;
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
     }
 
     /**
-     * Handles each epoch by receiving an unordered array of proposed transactions, checking each
-     * transaction for correctness, returning a mutually valid array of accepted transactions, and
-     * updating the current UTXO pool as appropriate.
+     * Runs the sequential stage of each component on {@link #verifier}, over a private pool holding
+     * the outputs its members claim, given their time so far in {@code nanos}, then merges the
+     * outputs each component spent and created into the pool and its events into {@code events}.
      */
-    public Transaction[] handleTxs(Transaction[] possibleTxs) {
-        List<Transaction> result = new ArrayList<>();
-        UTXOPool ds_utxoPool = new UTXOPool();
-        UTXO utxo;
-
-        for (Transaction tx : possibleTxs) {
-            for (int i = 0; i < tx.getOutputs().size(); i++) {
-                Transaction.Output output = tx.getOutput(i);
-                utxoPool.addUTXO(new UTXO(tx.getHash(), i), output);
-            }
-            for (int i = 0; i < tx.getInputs().size(); i++) {
-                Transaction.Input input = tx.getInput(i);
-                utxo = new UTXO(input.prevTxHash, i);
-                utxoPool.addUTXO(utxo, utxoPool.getTxOutput(utxo));
-            }
-        }
-        int index = 0;
-
-        for (Transaction tx : possibleTxs) {
-            utxo = new UTXO(tx.getHash(), index);
-            if (isValidTx(tx)) {
-                boolean double_spending = false;
-                for(Transaction.Input in : tx.getInputs()){
-                    utxo = new UTXO(in.prevTxHash, in.outputIndex);
-                    if (ds_utxoPool.contains(utxo)) {
-                        double_spending = true;
-                        break;
+    private void applyInParallel(final Transaction[] txs, final List<Integer> offered,
+                                 final List<Set<UTXO>> missingOf,
+                                 final List<List<Integer>> components, List<EpochEvent> events,
+                                 final long[] nanos) {
+        final UTXOPool[] pools = new UTXOPool[components.size()];
+        final List<List<EpochEvent>> parts = new ArrayList<>(components.size());
+        for (int c = 0; c < components.size(); c++) {
+            parts.add(new ArrayList<EpochEvent>());
+        }
+        verifier.submit(() -> IntStream.range(0, components.size()).parallel().forEach(c -> {
+            UTXOPool pool = new UTXOPool();
+            for (int i : components.get(c)) {
+                for (Transaction.Input in : txs[offered.get(i)].getInputs()) {
+                    UTXO utxo = new UTXO(in.prevTxHash, in.outputIndex);
+                    Transaction.Output output = utxoPool.getTxOutput(utxo);
+                    if (output != null) {
+                        pool.addUTXO(utxo, output);
+                    }
+                }
+            }
+            Epoch epoch = new Epoch(pool, TxValidator.POOL_RULES, parts.get(c));
+            for (int i : components.get(c)) {
+                int k = offered.get(i);
+                epoch.offer(txs[k], missingOf.get(i), EpochEvent.keyOf(k), nanos[k]);
+            }
+            epoch.seal();
+            pools[c] = pool;
+        })).join();
+
+        for (int c = 0; c < components.size(); c++) {
+            for (int i : components.get(c)) {
+                for (Transaction.Input in : txs[offered.get(i)].getInputs()) {
+                    UTXO utxo = new UTXO(in.prevTxHash, in.outputIndex);
+                    if (!pools[c].contains(utxo)) {
+                        utxoPool.removeUTXO(utxo);
                     }
-                    ds_utxoPool.addUTXO(utxo, ds_utxoPool.getTxOutput(utxo));
                 }
-                if(!double_spending) {
-                    result.add(tx);
-                    utxoPool.addUTXO(utxo, tx.getOutput(index));
-                    updateUTXO(tx);
-                }else{
-                    utxoPool.removeUTXO(utxo);
+            }
+            for (EpochEvent event : parts.get(c)) {
+                if (event.result != null) {
+                    continue;
+                }
+                for (int j = 0; j < event.tx.numOutputs(); j++) {
+                    UTXO utxo = new UTXO(event.tx.getHash(), j);
+                    Transaction.Output output = pools[c].getTxOutput(utxo);
+                    if (output != null) {
+                        utxoPool.addUTXO(utxo, output);
+                    }
                 }
-            } else if (tx.getInputs() != null && tx.getInputs().size() != 0) {
-                utxoPool.removeUTXO(utxo);
             }
-            index++;
+            events.addAll(parts.get(c));
         }
-        return result.toArray(new Transaction[]{});
     }
 
-    private void updateUTXO(Transaction tx){
-        ArrayList<Transaction.Input> inputs = tx.getInputs();
+    private static void updateUTXO(UTXOPool utxoPool, Transaction tx){
+        for(Transaction.Input input:tx.getInputs()){
+            utxoPool.removeUTXO(new UTXO(input.prevTxHash, input.outputIndex));
+        }
+
         ArrayList<Transaction.Output> outputs = tx.getOutputs();
-        ArrayList<UTXO> utxos = this.utxoPool.getAllUTXO();
-        for(Transaction.Input input:inputs){
-            UTXO tmp = new UTXO(input.prevTxHash, input.outputIndex);
-            for(UTXO utxo:utxos){
-                if(utxo.equals(tmp)){
-                    this.utxoPool.removeUTXO(utxo);
-                    break;
+        for(int i = 0; i < outputs.size(); i++){
+            utxoPool.addUTXO(new UTXO(tx.getHash(), i), outputs.get(i));
+        }
+    }
+
+    /** An epoch between {@link #prepareEpoch} and {@link #applyPrepared} */
+    static final class PreparedEpoch {
+        /** {@link System#nanoTime()} when the preparation started */
+        final long start;
+        /** The {@link LedgerEvents} epoch event started with the preparation, or null */
+        final Object event;
+        final Transaction[] txs;
+        final Map<ByteBuffer, Transaction> candidates;
+        final ValidationResult[] wellFormed;
+        /** Per candidate and input, the output the signature is verified against */
+        final Transaction.Output[][] claimed;
+        /** Per candidate and input, its signature's outcome, or null if it was not verified */
+        final ValidationResult[][] signatures;
+        /** Per candidate, the time its checks took so far */
+        final long[] nanos;
+        CompletableFuture<Void> verified;
+
+        PreparedEpoch(long start, Object event, Transaction[] txs,
+                      Map<ByteBuffer, Transaction> candidates) {
+            this.start = start;
+            this.event = event;
+            this.txs = txs;
+            this.candidates = candidates;
+            this.wellFormed = new ValidationResult[txs.length];
+            this.claimed = new Transaction.Output[txs.length][];
+            this.signatures = new ValidationResult[txs.length][];
+            this.nanos = new long[txs.length];
+        }
+    }
+
+    /**
+     * An acceptance or rejection made while applying an epoch of {@link #handleTxs}, reported once
+     * the epoch is applied. Events are ordered as if the candidates had been applied one after
+     * another: by the position of the candidate whose offer caused them, then in the order they
+     * happened; rejections at the seal come last, by the position of the rejected candidate.
+     */
+    private static final class EpochEvent implements Comparable<EpochEvent> {
+        /** Key of the rejection at the seal of candidate 0, above those of every offer */
+        static final long SEALED = Long.MAX_VALUE - Integer.MAX_VALUE;
+
+        final long key;
+        final Transaction tx;
+        /** Null if {@link #tx} was accepted */
+        final ValidationResult result;
+
+        EpochEvent(long key, Transaction tx, ValidationResult result) {
+            this.key = key;
+            this.tx = tx;
+            this.result = result;
+        }
+
+        /** @return the key of the first event caused by offering candidate {@code position} */
+        static long keyOf(int position) {
+            return (long) position << 32;
+        }
+
+        /** @return the key of the sealed rejection of the candidate offered with {@code key} */
+        static long sealedKeyOf(long key) {
+            return SEALED + (key >>> 32);
+        }
+
+        public int compareTo(EpochEvent other) {
+            return Long.compare(key, other.key);
+        }
+    }
+
+    /**
+     * The sequential stage of an epoch. Offered transactions whose inputs are all in the pool are
+     * validated at once; the others wait on the outpoints they miss and are validated as soon as
+     * the last one is created by an accepted transaction. Once a transaction is accepted or
+     * rejected, the time all its checks took is recorded in the {@link EpochMetrics}.
+     */
+    private final class Epoch {
+
+        private final UTXOPool pool;
+        /** Rules still to check when a transaction's inputs are all in the pool */
+        private final Set<ValidationRule> rules;
+        /** Where to record acceptances and rejections, or null to report them at once */
+        private final List<EpochEvent> events;
+        private long nextKey;
+        private final List<Transaction> accepted = new ArrayList<>();
+        private final Map<UTXO, List<Transaction>> waiting = new HashMap<>();
+        private final Map<Transaction, Integer> missingCount = new IdentityHashMap<>();
+        /** Time the checks of each waiting transaction took before it was offered */
+        private final Map<Transaction, Long> checkedNanos = new IdentityHashMap<>();
+        /** Transactions that had to wait, in offer order, and the key each was offered with */
+        private final List<Transaction> waited = new ArrayList<>();
+        private final Map<Transaction, Long> offerKeys = new IdentityHashMap<>();
+        private final ArrayDeque<Transaction> ready = new ArrayDeque<>();
+
+        Epoch(UTXOPool pool, Set<ValidationRule> rules, List<EpochEvent> events) {
+            this.pool = pool;
+            this.rules = rules;
+            this.events = events;
+        }
+
+        /**
+         * Offers {@code tx}, which claims the outpoints {@code missing} that were not created yet
+         * when it was checked in {@code nanos}; the events it causes are recorded from {@code key}
+         * on.
+         */
+        void offer(Transaction tx, Set<UTXO> missing, long key, long nanos) {
+            nextKey = key;
+            for (Iterator<UTXO> it = missing.iterator(); it.hasNext(); ) {
+                if (pool.contains(it.next())) {
+                    it.remove();
+                }
+            }
+            if (missing.isEmpty()) {
+                ready.add(tx);
+            } else {
+                missingCount.put(tx, missing.size());
+                checkedNanos.put(tx, nanos);
+                waited.add(tx);
+                offerKeys.put(tx, key);
+                for (UTXO utxo : missing) {
+                    List<Transaction> children = waiting.get(utxo);
+                    if (children == null) {
+                        children = new ArrayList<>(1);
+                        waiting.put(utxo, children);
+                    }
+                    children.add(tx);
+                }
+            }
+
+            while (!ready.isEmpty()) {
+                Transaction next = ready.poll();
+                Long waited = checkedNanos.remove(next);
+                long start = System.nanoTime();
+                ValidationResult result = validator.validate(next, pool, rules);
+                METRICS.recordValidation(
+                        (waited != null ? waited : nanos) + System.nanoTime() - start);
+                if (!result.isValid()) {
+                    report(next, result);
+                    continue;
+                }
+                accepted.add(next);
+                updateUTXO(pool, next);
+                report(next, null);
+                for (int i = 0; i < next.numOutputs(); i++) {
+                    List<Transaction> children = waiting.remove(new UTXO(next.getHash(), i));
+                    if (children == null) {
+                        continue;
+                    }
+                    for (Transaction child : children) {
+                        int left = missingCount.get(child) - 1;
+                        missingCount.put(child, left);
+                        if (left == 0) {
+                            ready.add(child);
+                        }
+                    }
                 }
             }
         }
 
-        for(int i = 0; i < outputs.size(); i++){
-            Transaction.Output output=outputs.get(i);
-            UTXO utxo = new UTXO(tx.getHash(), i);
-            this.utxoPool.addUTXO(utxo, output);
+        /**
+         * Rejects the transactions still waiting for an outpoint.
+         *
+         * @return the accepted transactions, parents before children
+         */
+        Transaction[] seal() {
+            sealExcept(Collections.<ByteBuffer>emptySet());
+            return accepted.toArray(new Transaction[accepted.size()]);
+        }
+
+        /**
+         * Rejects the transactions still waiting for an outpoint, except those waiting, directly
+         * or through another waiting transaction, for an output of a transaction hashed in
+         * {@code pending}. They are rejected in the order they were offered.
+         *
+         * @return the transactions left waiting
+         */
+        Set<Transaction> sealExcept(Set<ByteBuffer> pending) {
+            Map<ByteBuffer, List<Transaction>> waitersOf = new HashMap<>();
+            for (Map.Entry<UTXO, List<Transaction>> entry : waiting.entrySet()) {
+                ByteBuffer creator = ByteBuffer.wrap(entry.getKey().getTxHash());
+                List<Transaction> waiters = waitersOf.get(creator);
+                if (waiters == null) {
+                    waiters = new ArrayList<>();
+                    waitersOf.put(creator, waiters);
+                }
+                waiters.addAll(entry.getValue());
+            }
+            Set<Transaction> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+            ArrayDeque<ByteBuffer> creators = new ArrayDeque<>(pending);
+            while (!creators.isEmpty()) {
+                List<Transaction> waiters = waitersOf.remove(creators.poll());
+                if (waiters == null) {
+                    continue;
+                }
+                for (Transaction waiter : waiters) {
+                    if (kept.add(waiter)) {
+                        creators.add(ByteBuffer.wrap(waiter.getHash()));
+                    }
+                }
+            }
+
+            for (Transaction tx : waited) {
+                if (missingCount.get(tx) > 0 && !kept.contains(tx)) {
+                    METRICS.recordValidation(checkedNanos.get(tx));
+                    nextKey = EpochEvent.sealedKeyOf(offerKeys.get(tx));
+                    report(tx, validator.record(
+                            ValidationResult.reject(ValidationRule.UNKNOWN_INPUT)));
+                }
+            }
+            return kept;
         }
 
+        /** Reports the acceptance of {@code tx}, or its rejection if {@code result} is not null */
+        private void report(Transaction tx, ValidationResult result) {
+            if (events != null) {
+                events.add(new EpochEvent(nextKey >= EpochEvent.SEALED ? nextKey : ++nextKey,
+                        tx, result));
+            } else if (result == null) {
+                fireAccepted(tx);
+            } else {
+                fireRejected(tx, result);
+            }
+        }
     }
 }
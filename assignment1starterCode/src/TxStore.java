@@ -0,0 +1,515 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the transactions accepted by an {@link EpochHandler} on disk so that they can be looked up
+ * by hash long after their epoch, without holding the history on the heap:
+ * {@code store.append(handler.handleTxs(txs))} after each epoch, then {@link #get(byte[])}.
+ *
+ * Transactions go to append-only segment files, {@code segment-NNNNNNNN.dat}, one write per
+ * epoch; a segment is closed for writing once it exceeds the segment size. Each record is an int
+ * length followed by the hash, the inputs (previous hash, index, signature) and the outputs
+ * (value, X.509 encoding of the address), so it can be decoded on its own.
+ *
+ * {@code index.dat} is a memory-mapped open-addressing hash table from a 64-bit digest of the hash
+ * to the segment and offset of the record, doubled when half full. A lookup probes it and reads
+ * the hash at the start of one record, compared in case of digest collisions, before decoding
+ * the record it found once. The index header records how far the segments are indexed, so
+ * records written after the last {@link #flush()} are indexed again, and a torn record at the end
+ * of the last segment is cut off, when the store is opened.
+ * A least recently used cache in front of the index keeps the hottest transactions decoded.
+ *
+ * Growing the index writes a new one beside it and renames it over the old, whose mapping is
+ * released first. Java has no public way to unmap a file, so this relies on the JVM's internal
+ * cleaner; where that is not available the old mapping lingers until collected, and platforms
+ * that refuse to replace a mapped file, such as Windows, fail the rename with an IOException.
+ *
+ * All methods are synchronized.
+ */
+public class TxStore implements Closeable {
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    private static final int SEGMENT_MAGIC = 0x54585347;
+    private static final int INDEX_MAGIC = 0x54584958;
+    private static final int VERSION = 1;
+    private static final int SEGMENT_HEADER_BYTES = 8;
+    /** magic, version, capacity, unused, count, indexed position */
+    private static final int INDEX_HEADER_BYTES = 32;
+    /** digest, position + 1 (0 for an empty slot) */
+    private static final int SLOT_BYTES = 16;
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    private static final int MAX_CAPACITY = (Integer.MAX_VALUE - INDEX_HEADER_BYTES) / SLOT_BYTES;
+    /** Positions are a segment number above an offset of this many bits */
+    private static final int OFFSET_BITS = 40;
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final List<FileChannel> segments = new ArrayList<>();
+    private final Map<ByteBuffer, Transaction> cache;
+    private final KeyFactory keyFactory;
+
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int capacity;
+    private long count;
+
+    /** Opens the store in {@code dir} with the default segment and cache sizes */
+    public TxStore(Path dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_BYTES, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Opens the store in {@code dir}, creating it if needed.
+     *
+     * @param segmentBytes size above which a segment is closed for writing
+     * @param cacheSize    number of transactions kept decoded in memory
+     */
+    public TxStore(Path dir, long segmentBytes, final int cacheSize) throws IOException {
+        if (segmentBytes <= SEGMENT_HEADER_BYTES || segmentBytes >= 1L << OFFSET_BITS) {
+            throw new IllegalArgumentException("segment size " + segmentBytes);
+        }
+        this.dir = Files.createDirectories(dir);
+        this.segmentBytes = segmentBytes;
+        this.cache = new LinkedHashMap<ByteBuffer, Transaction>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Transaction> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        try {
+            this.keyFactory = KeyFactory.getInstance("RSA");
+            openSegments();
+            openIndex();
+            recover();
+        } catch (IOException | GeneralSecurityException | RuntimeException x) {
+            closeChannels();
+            throw x instanceof IOException ? (IOException) x : new IOException(x);
+        }
+    }
+
+    /** Appends the transactions of one epoch, skipping those already stored */
+    public synchronized void append(Transaction[] accepted) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Map<ByteBuffer, Transaction> added = new LinkedHashMap<>();
+        List<Integer> lengths = new ArrayList<>();
+        for (Transaction tx : accepted) {
+            ByteBuffer key = ByteBuffer.wrap(tx.getHash());
+            if (added.containsKey(key) || locate(tx.getHash()) != 0L) {
+                continue;
+            }
+            byte[] record = encode(tx);
+            out.writeInt(record.length);
+            out.write(record);
+            added.put(key, tx);
+            lengths.add(record.length);
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+
+        FileChannel segment = writableSegment();
+        long offset = segment.size();
+        ByteBuffer epoch = ByteBuffer.wrap(bytes.toByteArray());
+        while (epoch.hasRemaining()) {
+            segment.write(epoch, segment.size());
+        }
+        long position = position(segments.size() - 1, offset);
+        ensureCapacity(count + added.size());
+        int i = 0;
+        for (Map.Entry<ByteBuffer, Transaction> record : added.entrySet()) {
+            insert(digest(record.getKey().array()), position);
+            position += 4 + lengths.get(i++);
+            cache.put(record.getKey(), record.getValue());
+        }
+        index.putLong(24, position);
+    }
+
+    /** @return the stored transaction with hash {@code hash}, or null */
+    public synchronized Transaction get(byte[] hash) throws IOException {
+        Transaction tx = cache.get(ByteBuffer.wrap(hash));
+        if (tx == null) {
+            long position = locate(hash);
+            if (position != 0L) {
+                tx = read(position - 1);
+                // the caller may reuse its array, which would corrupt the key
+                cache.put(ByteBuffer.wrap(hash.clone()), tx);
+            }
+        }
+        return tx;
+    }
+
+    /** @return true if a transaction with hash {@code hash} is stored */
+    public synchronized boolean contains(byte[] hash) throws IOException {
+        return cache.containsKey(ByteBuffer.wrap(hash)) || locate(hash) != 0L;
+    }
+
+    /** @return the number of stored transactions */
+    public synchronized long size() {
+        return count;
+    }
+
+    /** @return the number of segment files */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /** @return the number of transactions kept decoded in memory */
+    public synchronized int getCachedCount() {
+        return cache.size();
+    }
+
+    /** Forces the segments and the index to disk */
+    public synchronized void flush() throws IOException {
+        if (!segments.isEmpty()) {
+            segments.get(segments.size() - 1).force(false);
+        }
+        index.force();
+    }
+
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            closeChannels();
+        }
+    }
+
+    private void openSegments() throws IOException {
+        for (int n = 0; Files.exists(segmentPath(n)); n++) {
+            FileChannel segment = FileChannel.open(segmentPath(n),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segments.add(segment);
+            ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+            readFully(segment, header, 0L);
+            if (header.getInt(0) != SEGMENT_MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException(segmentPath(n) + " is not a transaction segment");
+            }
+        }
+    }
+
+    private void openIndex() throws IOException {
+        Path path = dir.resolve("index.dat");
+        boolean fresh = !Files.exists(path);
+        indexChannel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (!fresh) {
+            index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+            if (index.capacity() < INDEX_HEADER_BYTES || index.getInt(0) != INDEX_MAGIC
+                    || index.getInt(4) != VERSION
+                    || index.capacity() != INDEX_HEADER_BYTES + (long) index.getInt(8) * SLOT_BYTES) {
+                throw new IOException(path + " is not a transaction index");
+            }
+            capacity = index.getInt(8);
+            count = index.getLong(16);
+            return;
+        }
+        index = createIndex(indexChannel, INITIAL_CAPACITY);
+        capacity = INITIAL_CAPACITY;
+    }
+
+    /** Indexes the records written after the indexed position and cuts off a torn last record */
+    private void recover() throws IOException {
+        long indexed = index.getLong(24);
+        int segment = (int) (indexed >>> OFFSET_BITS);
+        long offset = Math.max(SEGMENT_HEADER_BYTES, indexed & ((1L << OFFSET_BITS) - 1));
+        ByteBuffer length = ByteBuffer.allocate(4);
+        for (; segment < segments.size(); segment++, offset = SEGMENT_HEADER_BYTES) {
+            FileChannel channel = segments.get(segment);
+            long size = channel.size();
+            while (offset < size) {
+                length.clear();
+                Transaction tx = null;
+                if (offset + 4 <= size) {
+                    readFully(channel, length, offset);
+                    int n = length.getInt(0);
+                    if (n > 0 && offset + 4 + n <= size) {
+                        try {
+                            tx = read(position(segment, offset));
+                        } catch (IOException x) {
+                            // handled as a torn record below
+                        }
+                    }
+                }
+                if (tx == null) {
+                    if (segment != segments.size() - 1) {
+                        throw new IOException("torn record in " + segmentPath(segment));
+                    }
+                    channel.truncate(offset);
+                    break;
+                }
+                ensureCapacity(count + 1);
+                if (locate(tx.getHash()) == 0L) {
+                    insert(digest(tx.getHash()), position(segment, offset));
+                }
+                offset += 4 + length.getInt(0);
+            }
+            index.putLong(24, position(segment, offset));
+        }
+    }
+
+    private FileChannel writableSegment() throws IOException {
+        if (!segments.isEmpty()) {
+            FileChannel last = segments.get(segments.size() - 1);
+            if (last.size() < segmentBytes) {
+                return last;
+            }
+        }
+        Path path = segmentPath(segments.size());
+        FileChannel segment = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segments.add(segment);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+        header.putInt(SEGMENT_MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) {
+            segment.write(header, header.position());
+        }
+        return segment;
+    }
+
+    /** @return the position of the record with hash {@code hash} plus one, or 0 */
+    private long locate(byte[] hash) throws IOException {
+        long digest = digest(hash);
+        for (int slot = slotOf(digest); ; slot = (slot + 1) & (capacity - 1)) {
+            int at = INDEX_HEADER_BYTES + slot * SLOT_BYTES;
+            long position = index.getLong(at + 8);
+            if (position == 0L) {
+                return 0L;
+            }
+            if (index.getLong(at) == digest && hasHash(position - 1, hash)) {
+                return position;
+            }
+        }
+    }
+
+    /** @return true if the record at {@code position} has hash {@code hash}, read undecoded */
+    private boolean hasHash(long position, byte[] hash) throws IOException {
+        FileChannel segment = segments.get((int) (position >>> OFFSET_BITS));
+        long offset = position & ((1L << OFFSET_BITS) - 1);
+        ByteBuffer header = ByteBuffer.allocate(6);
+        readFully(segment, header, offset);
+        if ((header.getShort(4) & 0xffff) != hash.length) {
+            return false;
+        }
+        ByteBuffer stored = ByteBuffer.allocate(hash.length);
+        readFully(segment, stored, offset + 6);
+        return Arrays.equals(hash, stored.array());
+    }
+
+    private void insert(long digest, long position) {
+        int slot = slotOf(digest);
+        while (index.getLong(INDEX_HEADER_BYTES + slot * SLOT_BYTES + 8) != 0L) {
+            slot = (slot + 1) & (capacity - 1);
+        }
+        index.putLong(INDEX_HEADER_BYTES + slot * SLOT_BYTES, digest);
+        index.putLong(INDEX_HEADER_BYTES + slot * SLOT_BYTES + 8, position + 1);
+        index.putLong(16, ++count);
+    }
+
+    /** Doubles the index until {@code needed} entries keep it at most half full */
+    private void ensureCapacity(long needed) throws IOException {
+        int grown = capacity;
+        while (needed * 2 > grown) {
+            if (grown > MAX_CAPACITY / 2) {
+                throw new IOException("index is full");
+            }
+            grown <<= 1;
+        }
+        if (grown == capacity) {
+            return;
+        }
+        Path next = dir.resolve("index.tmp");
+        FileChannel channel = FileChannel.open(next, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        MappedByteBuffer old = index;
+        int oldCapacity = capacity;
+        index = createIndex(channel, grown);
+        capacity = grown;
+        count = 0;
+        index.putLong(24, old.getLong(24));
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            long position = old.getLong(INDEX_HEADER_BYTES + slot * SLOT_BYTES + 8);
+            if (position != 0L) {
+                insert(old.getLong(INDEX_HEADER_BYTES + slot * SLOT_BYTES), position - 1);
+            }
+        }
+        index.force();
+        unmap(old);
+        indexChannel.close();
+        indexChannel = channel;
+        Files.move(next, dir.resolve("index.dat"), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static MappedByteBuffer createIndex(FileChannel channel, int capacity)
+            throws IOException {
+        MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                INDEX_HEADER_BYTES + (long) capacity * SLOT_BYTES);
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, VERSION);
+        index.putInt(8, capacity);
+        index.putLong(16, 0L);
+        index.putLong(24, 0L);
+        return index;
+    }
+
+    /**
+     * Releases the mapping of {@code buffer}, which must not be used again, through the internal
+     * cleaner of Java 9+ or Java 8; on other JVMs it stays mapped until collected.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Field theUnsafe = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            unsafe.getClass().getMethod("invokeCleaner", ByteBuffer.class).invoke(unsafe, buffer);
+            return;
+        } catch (ReflectiveOperationException | RuntimeException x) {
+            // not Java 9+, try the Java 8 cleaner below
+        }
+        try {
+            Method cleaner = buffer.getClass().getMethod("cleaner");
+            cleaner.setAccessible(true);
+            Object clean = cleaner.invoke(buffer);
+            clean.getClass().getMethod("clean").invoke(clean);
+        } catch (ReflectiveOperationException | RuntimeException x) {
+            // left to the garbage collector
+        }
+    }
+
+    private Transaction read(long position) throws IOException {
+        FileChannel segment = segments.get((int) (position >>> OFFSET_BITS));
+        long offset = position & ((1L << OFFSET_BITS) - 1);
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(segment, length, offset);
+        ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+        readFully(segment, record, offset + 4);
+        record.flip();
+        return decode(record);
+    }
+
+    private byte[] encode(Transaction tx) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeBytes(out, tx.getHash());
+        out.writeInt(tx.numInputs());
+        for (Transaction.Input in : tx.getInputs()) {
+            writeBytes(out, in.prevTxHash);
+            out.writeInt(in.outputIndex);
+            writeBytes(out, in.signature);
+        }
+        out.writeInt(tx.numOutputs());
+        for (Transaction.Output output : tx.getOutputs()) {
+            out.writeDouble(output.value);
+            writeBytes(out, output.address.getEncoded());
+        }
+        return bytes.toByteArray();
+    }
+
+    private Transaction decode(ByteBuffer record) throws IOException {
+        try {
+            Transaction tx = new Transaction();
+            byte[] hash = readBytes(record);
+            int numInputs = record.getInt();
+            for (int i = 0; i < numInputs; i++) {
+                byte[] prevTxHash = readBytes(record);
+                tx.addInput(prevTxHash, record.getInt());
+                byte[] signature = readBytes(record);
+                if (signature.length > 0) {
+                    tx.addSignature(signature, i);
+                }
+            }
+            int numOutputs = record.getInt();
+            for (int i = 0; i < numOutputs; i++) {
+                double value = record.getDouble();
+                tx.addOutput(value,
+                        keyFactory.generatePublic(new X509EncodedKeySpec(readBytes(record))));
+            }
+            tx.setHash(hash);
+            return tx;
+        } catch (GeneralSecurityException | RuntimeException x) {
+            throw new IOException("corrupt transaction record", x);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeShort(0);
+            return;
+        }
+        if (bytes.length > 0xffff) {
+            throw new IOException("field of " + bytes.length + " bytes is too long");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(ByteBuffer record) {
+        byte[] bytes = new byte[record.getShort() & 0xffff];
+        record.get(bytes);
+        return bytes;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("truncated record at " + offset);
+            }
+        }
+    }
+
+    /** @return a 64-bit FNV-1a digest of {@code hash} */
+    private static long digest(byte[] hash) {
+        long digest = 0xcbf29ce484222325L;
+        for (byte b : hash) {
+            digest = (digest ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return digest;
+    }
+
+    private int slotOf(long digest) {
+        return (int) (digest ^ (digest >>> 32)) & (capacity - 1);
+    }
+
+    private static long position(int segment, long offset) {
+        return ((long) segment << OFFSET_BITS) | offset;
+    }
+
+    private Path segmentPath(int n) {
+        return dir.resolve(String.format("segment-%08d.dat", n));
+    }
+
+    private void closeChannels() throws IOException {
+        index = null;
+        for (FileChannel segment : segments) {
+            segment.close();
+        }
+        if (indexChannel != null) {
+            indexChannel.close();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Applies the {@link ValidationRule}s to transactions, cheapest rule first, and counts how many
+ * transactions each rule has rejected. Safe to share between threads.
+ */
+public class TxValidator {
+
+    /** Every rule, in cost order */
+    public static final Set<ValidationRule> ALL_RULES =
+            Collections.unmodifiableSet(EnumSet.allOf(ValidationRule.class));
+
+    /** Rules that only look at the transaction itself */
+    public static final Set<ValidationRule> STATELESS_RULES = Collections.unmodifiableSet(
+            EnumSet.of(ValidationRule.STRUCTURE, ValidationRule.NEGATIVE_OUTPUT,
+                    ValidationRule.DUPLICATE_INPUT));
+
+    /** Rules resolved against the pool, signatures excepted */
+    public static final Set<ValidationRule> POOL_RULES = Collections.unmodifiableSet(
+            EnumSet.of(ValidationRule.UNKNOWN_INPUT, ValidationRule.INSUFFICIENT_VALUE));
+
+    private final LongAdder[] rejects = new LongAdder[ValidationRule.values().length];
+
+    public TxValidator() {
+        for (int i = 0; i < rejects.length; i++) {
+            rejects[i] = new LongAdder();
+        }
+    }
+
+    /** Validates {@code tx} against {@code pool} with every rule */
+    public ValidationResult validate(Transaction tx, UTXOPool pool) {
+        return validate(tx, pool, ALL_RULES);
+    }
+
+    /**
+     * Validates {@code tx} against {@code pool} with the given {@code rules} only, in cost order,
+     * stopping at the first one that fails.
+     */
+    public ValidationResult validate(Transaction tx, UTXOPool pool, Set<ValidationRule> rules) {
+        Object event = LedgerEvents.beginValidation();
+        ValidationResult result = ValidationResult.VALID;
+        for (ValidationRule rule : ValidationRule.values()) {
+            if (rules.contains(rule)) {
+                result = rule.check(tx, pool);
+                if (!result.isValid()) {
+                    break;
+                }
+            }
+        }
+        LedgerEvents.endValidation(event, tx, rules, result);
+        return record(result);
+    }
+
+    /**
+     * Counts {@code result} if it is a rejection reached outside {@link #validate}, e.g. by a
+     * caller that checked signatures against outputs it resolved itself.
+     *
+     * @return {@code result}
+     */
+    public ValidationResult record(ValidationResult result) {
+        if (!result.isValid()) {
+            rejects[result.getReason().ordinal()].increment();
+        }
+        return result;
+    }
+
+    /** @return the number of transactions rejected by {@code rule} */
+    public long getRejectCount(ValidationRule rule) {
+        return rejects[rule.ordinal()].sum();
+    }
+
+    /** @return the number of transactions rejected by each rule */
+    public Map<ValidationRule, Long> getRejectCounts() {
+        Map<ValidationRule, Long> counts = new EnumMap<>(ValidationRule.class);
+        for (ValidationRule rule : ValidationRule.values()) {
+            counts.put(rule, getRejectCount(rule));
+        }
+        return counts;
+    }
+}
@@ -1,32 +1,82 @@
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 public class UTXOPool {
 
+    /** Load factor and default table size used by {@code HashMap}, mirrored to track capacity */
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** Number of slots in the bucket and probe histograms reported by {@link #getStats()} */
+    private static final int HISTOGRAM_SLOTS = 9;
+
+    /** Estimated shallow sizes, in bytes, of the objects retained per entry */
+    private static final int NODE_BYTES = 32;
+    private static final int UTXO_BYTES = 24;
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+
     /**
      * The current collection of UTXOs, with each one mapped to its corresponding transaction output
      */
     private HashMap<UTXO, Transaction.Output> H;
 
+    /** Number of buckets in the table of {@code H}, following the {@code HashMap} resize policy */
+    private int capacity;
+
+    /** Totals over every pool, in the default registry, next to the counts of this pool */
+    private static final MetricsRegistry.Counter ADDS =
+            MetricsRegistry.getDefault().counter("utxo_pool_adds_total");
+    private static final MetricsRegistry.Counter REMOVES =
+            MetricsRegistry.getDefault().counter("utxo_pool_removes_total");
+    private static final MetricsRegistry.Counter LOOKUPS =
+            MetricsRegistry.getDefault().counter("utxo_pool_lookups_total");
+    private static final MetricsRegistry.Counter MISSES =
+            MetricsRegistry.getDefault().counter("utxo_pool_misses_total");
+
+    private final LongAdder adds = new LongAdder();
+    private final LongAdder removes = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
     /** Creates a new empty UTXOPool */
     public UTXOPool() {
         H = new HashMap<UTXO, Transaction.Output>();
+        capacity = 0;
     }
 
     /** Creates a new UTXOPool that is a copy of {@code uPool} */
     public UTXOPool(UTXOPool uPool) {
         H = new HashMap<UTXO, Transaction.Output>(uPool.H);
+        capacity = H.isEmpty() ? 0 : tableSizeFor((int) (H.size() / LOAD_FACTOR + 1.0f));
     }
 
     /** Adds a mapping from UTXO {@code utxo} to transaction output @code{txOut} to the pool */
     public void addUTXO(UTXO utxo, Transaction.Output txOut) {
+        int before = H.size();
         H.put(utxo, txOut);
+        if (H.size() > before) {
+            adds.increment();
+            ADDS.increment();
+            if (capacity == 0) {
+                capacity = DEFAULT_CAPACITY;
+            }
+            if (H.size() > capacity * LOAD_FACTOR) {
+                capacity <<= 1;
+            }
+        }
     }
 
     /** Removes the UTXO {@code utxo} from the pool */
     public void removeUTXO(UTXO utxo) {
+        int before = H.size();
         H.remove(utxo);
+        if (H.size() < before) {
+            removes.increment();
+            REMOVES.increment();
+        }
     }
 
     /**
@@ -34,12 +84,26 @@ public class UTXOPool {
      *         not in the pool.
      */
     public Transaction.Output getTxOutput(UTXO ut) {
-        return H.get(ut);
+        lookups.increment();
+        LOOKUPS.increment();
+        Transaction.Output out = H.get(ut);
+        if (out == null) {
+            misses.increment();
+            MISSES.increment();
+        }
+        return out;
     }
 
     /** @return true if UTXO {@code utxo} is in the pool and false otherwise */
     public boolean contains(UTXO utxo) {
-        return H.containsKey(utxo);
+        lookups.increment();
+        LOOKUPS.increment();
+        boolean found = H.containsKey(utxo);
+        if (!found) {
+            misses.increment();
+            MISSES.increment();
+        }
+        return found;
     }
 
     /** Returns an {@code ArrayList} of all UTXOs in the pool */
@@ -51,4 +115,60 @@ public class UTXOPool {
         }
         return allUTXO;
     }
+
+    /** @return the number of UTXOs in the pool */
+    public int size() {
+        return H.size();
+    }
+
+    /**
+     * Returns a snapshot of the pool occupancy and access counters. The counters are maintained on
+     * every call and cost one uncontended increment; the histograms and the memory estimate are
+     * computed here, in a single pass over the pool.
+     */
+    public UTXOPoolStats getStats() {
+        long[] bucketHistogram = new long[HISTOGRAM_SLOTS];
+        long[] probeHistogram = new long[HISTOGRAM_SLOTS];
+        int largestBucket = 0;
+        long keyBytes = 0;
+
+        if (capacity > 0) {
+            int[] bucketSizes = new int[capacity];
+            for (UTXO ut : H.keySet()) {
+                int depth = ++bucketSizes[bucketIndex(ut, capacity)];
+                probeHistogram[Math.min(depth, HISTOGRAM_SLOTS) - 1]++;
+                keyBytes += UTXO_BYTES + align(ARRAY_HEADER_BYTES + ut.getTxHash().length);
+            }
+            for (int bucketSize : bucketSizes) {
+                bucketHistogram[Math.min(bucketSize, HISTOGRAM_SLOTS - 1)]++;
+                largestBucket = Math.max(largestBucket, bucketSize);
+            }
+        }
+
+        long tableBytes = capacity == 0 ? 0 : align(ARRAY_HEADER_BYTES + (long) capacity * REFERENCE_BYTES);
+        long totalBytes = tableBytes + (long) H.size() * NODE_BYTES + keyBytes;
+
+        return new UTXOPoolStats("HashMap", H.size(), capacity, totalBytes, adds.sum(),
+                removes.sum(), lookups.sum(), misses.sum(), largestBucket, bucketHistogram,
+                probeHistogram);
+    }
+
+    /** Same bucket selection as {@code HashMap}: spread the high bits, then mask */
+    private static int bucketIndex(UTXO ut, int capacity) {
+        int h = ut.hashCode();
+        return (h ^ (h >>> 16)) & (capacity - 1);
+    }
+
+    /** Same table sizing as {@code HashMap}: the smallest power of two not below {@code n} */
+    private static int tableSizeFor(int n) {
+        int size = 1;
+        while (size < n) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
 }
@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+/**
+ * Immutable snapshot of the occupancy, memory and access counters of a {@link UTXOPool}. Obtained
+ * with {@link UTXOPool#getStats()}.
+ *
+ * Memory figures are estimates for a 64-bit JVM with compressed oops (12 byte object headers,
+ * 4 byte references, 8 byte alignment). They cover the table, its nodes, the {@code UTXO} keys and
+ * their hash arrays; the {@code Transaction.Output} values are shared with the transactions that
+ * created them and are not counted.
+ */
+public class UTXOPoolStats {
+
+    private final String backend;
+    private final int size;
+    private final int capacity;
+    private final long estimatedTotalBytes;
+    private final long adds;
+    private final long removes;
+    private final long lookups;
+    private final long misses;
+    private final int largestBucket;
+    private final long[] bucketHistogram;
+    private final long[] probeHistogram;
+
+    UTXOPoolStats(String backend, int size, int capacity, long estimatedTotalBytes, long adds,
+                  long removes, long lookups, long misses, int largestBucket,
+                  long[] bucketHistogram, long[] probeHistogram) {
+        this.backend = backend;
+        this.size = size;
+        this.capacity = capacity;
+        this.estimatedTotalBytes = estimatedTotalBytes;
+        this.adds = adds;
+        this.removes = removes;
+        this.lookups = lookups;
+        this.misses = misses;
+        this.largestBucket = largestBucket;
+        this.bucketHistogram = bucketHistogram;
+        this.probeHistogram = probeHistogram;
+    }
+
+    /** @return the name of the storage backing the pool */
+    public String getBackend() {
+        return backend;
+    }
+
+    /** @return the number of UTXOs in the pool */
+    public int getSize() {
+        return size;
+    }
+
+    /** @return the number of buckets in the table backing the pool */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** @return {@code size / capacity}, or 0 if no table has been allocated yet */
+    public double getLoadFactor() {
+        return capacity == 0 ? 0d : (double) size / capacity;
+    }
+
+    /** @return the estimated number of bytes retained by the pool */
+    public long getEstimatedTotalBytes() {
+        return estimatedTotalBytes;
+    }
+
+    /** @return the estimated number of bytes retained per UTXO, table overhead included */
+    public double getEstimatedBytesPerEntry() {
+        return size == 0 ? 0d : (double) estimatedTotalBytes / size;
+    }
+
+    /** @return the number of UTXOs inserted into the pool */
+    public long getAdds() {
+        return adds;
+    }
+
+    /** @return the number of UTXOs removed from the pool */
+    public long getRemoves() {
+        return removes;
+    }
+
+    /** @return the number of {@code getTxOutput} and {@code contains} calls */
+    public long getLookups() {
+        return lookups;
+    }
+
+    /** @return the number of lookups that did not find their UTXO */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return a histogram where element {@code i} is the number of buckets holding {@code i}
+     *         entries; the last element counts every bucket at least that long
+     */
+    public long[] getBucketHistogram() {
+        return bucketHistogram.clone();
+    }
+
+    /**
+     * @return a histogram where element {@code i} is the number of entries found after
+     *         {@code i + 1} probes of their bucket; the last element counts every deeper entry
+     */
+    public long[] getProbeHistogram() {
+        return probeHistogram.clone();
+    }
+
+    /** @return the number of entries in the most populated bucket */
+    public int getLargestBucket() {
+        return largestBucket;
+    }
+
+    public String toString() {
+        return "UTXOPoolStats{backend=" + backend
+                + ", size=" + size
+                + ", capacity=" + capacity
+                + ", loadFactor=" + String.format("%.3f", getLoadFactor())
+                + ", estimatedTotalBytes=" + estimatedTotalBytes
+                + ", estimatedBytesPerEntry=" + String.format("%.1f", getEstimatedBytesPerEntry())
+                + ", adds=" + adds
+                + ", removes=" + removes
+                + ", lookups=" + lookups
+                + ", misses=" + misses
+                + ", largestBucket=" + getLargestBucket()
+                + ", bucketHistogram=" + Arrays.toString(bucketHistogram)
+                + ", probeHistogram=" + Arrays.toString(probeHistogram)
+                + "}";
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Outcome of a transaction submitted to a {@link ValidationService}.
+ */
+public class ValidationOutcome {
+
+    private final Transaction tx;
+    private final ValidationResult result;
+    private final long sequence;
+
+    ValidationOutcome(Transaction tx, ValidationResult result, long sequence) {
+        this.tx = tx;
+        this.result = result;
+        this.sequence = sequence;
+    }
+
+    /** @return the submitted transaction */
+    public Transaction getTransaction() {
+        return tx;
+    }
+
+    /** @return {@link ValidationResult#VALID} if the transaction was applied, or why it was not */
+    public ValidationResult getResult() {
+        return result;
+    }
+
+    /** @return true if the transaction was valid and its outputs are now in the pool */
+    public boolean isAccepted() {
+        return result.isValid();
+    }
+
+    /** @return the order in which the transaction was submitted, from 0 */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String toString() {
+        return "ValidationOutcome{sequence=" + sequence + ", result=" + result + "}";
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Outcome of validating a transaction: either {@link #VALID}, or a rejection carrying the
+ * {@link ValidationRule} that failed and, where it applies, the index of the offending input or
+ * output.
+ */
+public class ValidationResult {
+
+    /** Result of a transaction that satisfies every rule */
+    public static final ValidationResult VALID = new ValidationResult(null, -1);
+
+    private final ValidationRule reason;
+    private final int index;
+
+    private ValidationResult(ValidationRule reason, int index) {
+        this.reason = reason;
+        this.index = index;
+    }
+
+    static ValidationResult reject(ValidationRule reason) {
+        return new ValidationResult(reason, -1);
+    }
+
+    static ValidationResult reject(ValidationRule reason, int index) {
+        return new ValidationResult(reason, index);
+    }
+
+    /** @return true if the transaction satisfies every rule */
+    public boolean isValid() {
+        return reason == null;
+    }
+
+    /** @return the rule the transaction failed, or null if it is valid */
+    public ValidationRule getReason() {
+        return reason;
+    }
+
+    /** @return the index of the input or output that failed the rule, or -1 if none applies */
+    public int getIndex() {
+        return index;
+    }
+
+    public String toString() {
+        if (reason == null) {
+            return "VALID";
+        }
+        return index < 0 ? reason.name() : reason.name() + "[" + index + "]";
+    }
+}
@@ -0,0 +1,128 @@
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The rules a transaction must satisfy to be valid, declared from the cheapest to the most
+ * expensive. {@link TxValidator} applies them in this order, so a malformed, unbalanced or
+ * double-claiming transaction is rejected before any RSA signature is verified. The rule that
+ * rejects a transaction is the reason code of its {@link ValidationResult}.
+ */
+public enum ValidationRule {
+
+    /** The input and output lists exist and every input names an outpoint */
+    STRUCTURE {
+        ValidationResult check(Transaction tx, UTXOPool pool) {
+            if (tx.getInputs() == null || tx.getOutputs() == null) {
+                return ValidationResult.reject(this);
+            }
+            for (int i = 0; i < tx.numInputs(); i++) {
+                Transaction.Input in = tx.getInput(i);
+                if (in == null || in.prevTxHash == null) {
+                    return ValidationResult.reject(this, i);
+                }
+            }
+            for (int i = 0; i < tx.numOutputs(); i++) {
+                if (tx.getOutput(i) == null) {
+                    return ValidationResult.reject(this, i);
+                }
+            }
+            return ValidationResult.VALID;
+        }
+    },
+
+    /** All of the transaction's output values are non-negative */
+    NEGATIVE_OUTPUT {
+        ValidationResult check(Transaction tx, UTXOPool pool) {
+            for (int i = 0; i < tx.numOutputs(); i++) {
+                if (tx.getOutput(i).value < 0) {
+                    return ValidationResult.reject(this, i);
+                }
+            }
+            return ValidationResult.VALID;
+        }
+    },
+
+    /** No UTXO is claimed multiple times by the transaction */
+    DUPLICATE_INPUT {
+        ValidationResult check(Transaction tx, UTXOPool pool) {
+            Set<UTXO> claimed = new HashSet<>();
+            for (int i = 0; i < tx.numInputs(); i++) {
+                Transaction.Input in = tx.getInput(i);
+                if (!claimed.add(new UTXO(in.prevTxHash, in.outputIndex))) {
+                    return ValidationResult.reject(this, i);
+                }
+            }
+            return ValidationResult.VALID;
+        }
+    },
+
+    /** All outputs claimed by the transaction are in the current UTXO pool */
+    UNKNOWN_INPUT {
+        ValidationResult check(Transaction tx, UTXOPool pool) {
+            for (int i = 0; i < tx.numInputs(); i++) {
+                Transaction.Input in = tx.getInput(i);
+                if (!pool.contains(new UTXO(in.prevTxHash, in.outputIndex))) {
+                    return ValidationResult.reject(this, i);
+                }
+            }
+            return ValidationResult.VALID;
+        }
+    },
+
+    /** The sum of the input values is greater than or equal to the sum of the output values */
+    INSUFFICIENT_VALUE {
+        ValidationResult check(Transaction tx, UTXOPool pool) {
+            double inputValue = 0.0;
+            for (int i = 0; i < tx.numInputs(); i++) {
+                Transaction.Input in = tx.getInput(i);
+                Transaction.Output claimed = pool.getTxOutput(new UTXO(in.prevTxHash, in.outputIndex));
+                if (claimed != null) {
+                    inputValue += claimed.value;
+                }
+            }
+            double outputValue = 0.0;
+            for (int i = 0; i < tx.numOutputs(); i++) {
+                outputValue += tx.getOutput(i).value;
+            }
+            return inputValue < outputValue ? ValidationResult.reject(this) : ValidationResult.VALID;
+        }
+    },
+
+    /** The signature on each input is valid for the address of the output it claims */
+    SIGNATURE {
+        ValidationResult check(Transaction tx, UTXOPool pool) {
+            for (int i = 0; i < tx.numInputs(); i++) {
+                Transaction.Input in = tx.getInput(i);
+                Transaction.Output claimed = pool.getTxOutput(new UTXO(in.prevTxHash, in.outputIndex));
+                if (claimed == null) {
+                    return ValidationResult.reject(UNKNOWN_INPUT, i);
+                }
+                ValidationResult result = checkSignature(tx, i, claimed);
+                if (!result.isValid()) {
+                    return result;
+                }
+            }
+            return ValidationResult.VALID;
+        }
+    };
+
+    /**
+     * @return {@link ValidationResult#VALID} if {@code tx} satisfies this rule against
+     *         {@code pool}, or a rejection naming the rule otherwise
+     */
+    abstract ValidationResult check(Transaction tx, UTXOPool pool);
+
+    /**
+     * Checks the signature on input {@code index} of {@code tx} against the output it claims,
+     * which the caller may have resolved from somewhere other than the pool.
+     */
+    static ValidationResult checkSignature(Transaction tx, int index, Transaction.Output claimed) {
+        Object event = LedgerEvents.beginSignature();
+        byte[] signature = tx.getInput(index).signature;
+        ValidationResult result = signature == null
+                || !Crypto.verifySignature(claimed.address, tx.getRawDataToSign(index), signature)
+                ? ValidationResult.reject(SIGNATURE, index) : ValidationResult.VALID;
+        LedgerEvents.endSignature(event, tx, index, result);
+        return result;
+    }
+}
@@ -0,0 +1,204 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Validates and applies transactions submitted concurrently by many clients against one shared
+ * UTXO pool.
+ *
+ * Each submission goes through three steps: the stateless rules and the lookup of the claimed
+ * outputs on the I/O executor, signature verification on the bounded CPU executor, and a short
+ * apply step under the pool lock. Submissions that touch a common outpoint (one spends or creates
+ * an outpoint the other spends or creates) run one after the other in submission order, so their
+ * outcomes do not depend on thread scheduling; unrelated submissions run concurrently. A
+ * transaction spending the output of one submitted earlier waits for it; one submitted before its
+ * parent is rejected.
+ */
+public class ValidationService implements AutoCloseable {
+
+    private final UTXOPool utxoPool;
+    private final Executor ioExecutor;
+    private final Executor cpuExecutor;
+    private final List<ExecutorService> owned = new ArrayList<>();
+    private final TxValidator validator = new TxValidator();
+
+    /** Last submission touching each outpoint, which the next one touching it waits for */
+    private final Map<UTXO, CompletableFuture<ValidationOutcome>> tails = new HashMap<>();
+    private long nextSequence;
+
+    /**
+     * Creates a service over a copy of {@code utxoPool}, with an unbounded daemon pool for the
+     * I/O steps and one daemon thread per core for signature checks.
+     */
+    public ValidationService(UTXOPool utxoPool) {
+        this(utxoPool, null, null);
+    }
+
+    /**
+     * Creates a service over a copy of {@code utxoPool} running its steps on the given executors;
+     * a null executor is replaced by the default one, which {@link #close()} shuts down.
+     */
+    public ValidationService(UTXOPool utxoPool, Executor ioExecutor, Executor cpuExecutor) {
+        this.utxoPool = utxoPool == null ? new UTXOPool() : new UTXOPool(utxoPool);
+        if (ioExecutor == null) {
+            ExecutorService io = Executors.newCachedThreadPool(daemonThreads("validation-io"));
+            owned.add(io);
+            ioExecutor = io;
+        }
+        if (cpuExecutor == null) {
+            ExecutorService cpu = Executors.newFixedThreadPool(
+                    Runtime.getRuntime().availableProcessors(), daemonThreads("validation-cpu"));
+            owned.add(cpu);
+            cpuExecutor = cpu;
+        }
+        this.ioExecutor = ioExecutor;
+        this.cpuExecutor = cpuExecutor;
+    }
+
+    /**
+     * Submits {@code tx} for validation. The returned future completes once the transaction has
+     * been applied to the pool or rejected.
+     */
+    public CompletableFuture<ValidationOutcome> submit(final Transaction tx) {
+        final CompletableFuture<ValidationOutcome> done = new CompletableFuture<>();
+        final Set<UTXO> touched = new LinkedHashSet<>();
+        final long sequence;
+        List<CompletableFuture<ValidationOutcome>> before = new ArrayList<>();
+
+        synchronized (tails) {
+            sequence = nextSequence++;
+            if (tx == null || tx.getHash() == null || tx.getInputs() == null
+                    || tx.getOutputs() == null) {
+                done.complete(new ValidationOutcome(tx, validator.record(
+                        ValidationResult.reject(ValidationRule.STRUCTURE)), sequence));
+                return done;
+            }
+            for (Transaction.Input in : tx.getInputs()) {
+                if (in != null && in.prevTxHash != null) {
+                    touched.add(new UTXO(in.prevTxHash, in.outputIndex));
+                }
+            }
+            for (int i = 0; i < tx.numOutputs(); i++) {
+                touched.add(new UTXO(tx.getHash(), i));
+            }
+            for (UTXO utxo : touched) {
+                CompletableFuture<ValidationOutcome> previous = tails.put(utxo, done);
+                if (previous != null) {
+                    before.add(previous);
+                }
+            }
+        }
+
+        CompletableFuture.allOf(before.toArray(new CompletableFuture<?>[before.size()]))
+                .handleAsync((ignored, error) -> prepare(tx), ioExecutor)
+                .thenApplyAsync(this::verify, cpuExecutor)
+                .thenApply(this::apply)
+                .whenComplete((result, error) -> {
+                    synchronized (tails) {
+                        for (UTXO utxo : touched) {
+                            tails.remove(utxo, done);
+                        }
+                    }
+                    if (error != null) {
+                        done.completeExceptionally(error);
+                    } else {
+                        done.complete(new ValidationOutcome(tx, result, sequence));
+                    }
+                });
+        return done;
+    }
+
+    /** @return a copy of the current pool */
+    public UTXOPool getUTXOPool() {
+        synchronized (utxoPool) {
+            return new UTXOPool(utxoPool);
+        }
+    }
+
+    /** @return the validator used by the service, which counts rejections per rule */
+    public TxValidator getValidator() {
+        return validator;
+    }
+
+    /** Shuts down the executors the service created */
+    public void close() {
+        for (ExecutorService executor : owned) {
+            executor.shutdown();
+        }
+    }
+
+    /** Runs the stateless and pool rules and resolves the outputs {@code tx} claims */
+    private Pending prepare(Transaction tx) {
+        Pending pending = new Pending(tx);
+        pending.result = validator.validate(tx, utxoPool, TxValidator.STATELESS_RULES);
+        if (!pending.result.isValid()) {
+            return pending;
+        }
+        synchronized (utxoPool) {
+            pending.result = validator.validate(tx, utxoPool, TxValidator.POOL_RULES);
+            for (int i = 0; pending.result.isValid() && i < tx.numInputs(); i++) {
+                Transaction.Input in = tx.getInput(i);
+                pending.claimed[i] = utxoPool.getTxOutput(new UTXO(in.prevTxHash, in.outputIndex));
+            }
+        }
+        return pending;
+    }
+
+    private Pending verify(Pending pending) {
+        for (int i = 0; pending.result.isValid() && i < pending.tx.numInputs(); i++) {
+            pending.result = validator.record(
+                    ValidationRule.checkSignature(pending.tx, i, pending.claimed[i]));
+        }
+        return pending;
+    }
+
+    /**
+     * Applies a verified transaction. Nothing else touching its outpoints ran since
+     * {@link #prepare}, so the claimed outputs are still in the pool.
+     */
+    private ValidationResult apply(Pending pending) {
+        if (!pending.result.isValid()) {
+            return pending.result;
+        }
+        Transaction tx = pending.tx;
+        synchronized (utxoPool) {
+            for (Transaction.Input in : tx.getInputs()) {
+                utxoPool.removeUTXO(new UTXO(in.prevTxHash, in.outputIndex));
+            }
+            for (int i = 0; i < tx.numOutputs(); i++) {
+                utxoPool.addUTXO(new UTXO(tx.getHash(), i), tx.getOutput(i));
+            }
+        }
+        return ValidationResult.VALID;
+    }
+
+    private static ThreadFactory daemonThreads(final String prefix) {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /** A submission between its steps */
+    private static final class Pending {
+        final Transaction tx;
+        final Transaction.Output[] claimed;
+        ValidationResult result;
+
+        Pending(Transaction tx) {
+            this.tx = tx;
+            this.claimed = new Transaction.Output[tx.numInputs()];
+        }
+    }
+}
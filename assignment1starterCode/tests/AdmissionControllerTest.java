@@ -0,0 +1,109 @@
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Duration;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link AdmissionController}
+ */
+public class AdmissionControllerTest {
+
+    @Test
+    public void shedsUnknownInputsThenLowestFeeRate() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Transaction coinbase = TestTransactions.coinbase(alice, 10, 10, 10, 10);
+        AdmissionController controller = new AdmissionController(
+                new TxHandler(TestTransactions.poolOf(coinbase)), 2,
+                Duration.ofSeconds(1), Duration.ofMillis(1));
+
+        Transaction orphan = TestTransactions.spend(new byte[32], 0, 1, alice, alice.getPrivate());
+        Transaction low = TestTransactions.spend(coinbase, 0, 9, alice);
+        Transaction mid = TestTransactions.spend(coinbase, 1, 8, alice);
+        Transaction high = TestTransactions.spend(coinbase, 2, 5, alice);
+        Transaction lowest = TestTransactions.spend(coinbase, 3, 9.5, alice);
+
+        assertEquals(AdmissionController.Admission.QUEUED, controller.offer(orphan));
+        assertEquals(AdmissionController.Admission.QUEUED, controller.offer(low));
+        assertTrue(controller.isSaturated());
+        assertEquals(1d, controller.getPressure(), 1e-9);
+        assertEquals(AdmissionController.Admission.QUEUED, controller.offer(mid));
+        assertEquals(AdmissionController.Admission.QUEUED, controller.offer(high));
+        assertEquals(AdmissionController.Admission.SHED, controller.offer(lowest));
+        assertEquals(AdmissionController.Admission.DUPLICATE, controller.offer(high));
+        assertEquals(3, controller.getShedCount());
+
+        assertArrayEquals(new Transaction[]{high, mid}, controller.runEpoch());
+        assertFalse(controller.isSaturated());
+    }
+
+    @Test
+    public void shedParentTakesItsQueuedDescendants() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Transaction coinbase = TestTransactions.coinbase(alice, 10, 10);
+        AdmissionController controller = new AdmissionController(
+                new TxHandler(TestTransactions.poolOf(coinbase)), 3,
+                Duration.ofSeconds(1), Duration.ofMillis(1));
+
+        Transaction parent = TestTransactions.spend(coinbase, 0, 9.9, alice);
+        Transaction child = TestTransactions.spend(parent, 0, 1, alice);
+        Transaction grandchild = TestTransactions.spend(child, 0, 0.5, alice);
+        Transaction other = TestTransactions.spend(coinbase, 1, 5, alice);
+
+        for (Transaction tx : new Transaction[]{parent, child, grandchild}) {
+            assertEquals(AdmissionController.Admission.QUEUED, controller.offer(tx));
+        }
+        assertEquals(AdmissionController.Admission.QUEUED, controller.offer(other));
+        assertEquals(3, controller.getShedCount());
+        assertEquals(1, controller.getQueueDepth());
+
+        assertArrayEquals(new Transaction[]{other}, controller.runEpoch());
+    }
+
+    @Test
+    public void epochsStayWithinInputBudget() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Transaction coinbase = TestTransactions.coinbase(alice, 10, 10, 10);
+        AdmissionController controller = new AdmissionController(
+                new TxHandler(TestTransactions.poolOf(coinbase)), 10,
+                Duration.ofSeconds(2), Duration.ofSeconds(1));
+
+        Transaction a = TestTransactions.spend(coinbase, 0, 7, alice);
+        Transaction b = TestTransactions.spend(coinbase, 1, 8, alice);
+        Transaction c = TestTransactions.spend(coinbase, 2, 9, alice);
+        Transaction overspend = TestTransactions.spend(coinbase, 0, 11, alice);
+        for (Transaction tx : new Transaction[]{c, b, a}) {
+            assertEquals(AdmissionController.Admission.QUEUED, controller.offer(tx));
+        }
+        assertEquals(AdmissionController.Admission.REJECTED, controller.offer(overspend));
+
+        assertEquals(2, controller.getEpochInputBudget());
+        assertArrayEquals(new Transaction[]{a, b}, controller.runEpoch());
+        assertEquals(1, controller.getQueueDepth());
+    }
+
+    @Test
+    public void childPullsQueuedParentIntoEpoch() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Transaction coinbase = TestTransactions.coinbase(alice, 10, 10);
+        AdmissionController controller = new AdmissionController(
+                new TxHandler(TestTransactions.poolOf(coinbase)), 10,
+                Duration.ofSeconds(1), Duration.ofSeconds(1));
+
+        Transaction parent = TestTransactions.spend(coinbase, 0, 10, alice);
+        Transaction child = TestTransactions.spend(parent, 0, 1, alice);
+        Transaction other = TestTransactions.spend(coinbase, 1, 8, alice);
+        controller.offer(other);
+        controller.offer(parent);
+        controller.offer(child);
+
+        assertEquals(1, controller.getEpochInputBudget());
+        assertArrayEquals(new Transaction[]{parent, child}, controller.runEpoch());
+        assertEquals(1, controller.getQueueDepth());
+    }
+}
@@ -0,0 +1,169 @@
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Allocation regression tests: runs {@code isValidTx} and {@code handleTxs} on fixed workloads
+ * and checks the bytes allocated per transaction and per input against the budgets below, so that
+ * a change adding garbage to the hot path fails here. The budgets leave some room above the
+ * measured values; when a change reduces allocations, lower them to keep the gain.
+ *
+ * Each workload runs a few rounds first so that the JIT has compiled, and escape analysis removed
+ * what it can, before the rounds measured; the lowest round is compared.
+ */
+public class AllocationBudgetTest {
+
+    /** Budgets in bytes, per transaction then per input, about a fifth above the measured values */
+    private static final long[] IS_VALID_TX = {29000, 12000};
+    private static final long[] TX_HANDLER_FLAT = {33000, 13500};
+    private static final long[] MAX_FEE_TX_HANDLER_FLAT = {31000, 12500};
+    private static final long[] TX_HANDLER_CHAINED = {19000, 12500};
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static AllocationMeter meter;
+    private static UTXOPool flatPool;
+    private static Transaction[] flatTxs;
+    private static UTXOPool chainedPool;
+    private static Transaction[] chainedTxs;
+    private static WorkloadGenerator.Summary chainedSummary;
+
+    @BeforeClass
+    public static void buildWorkloads() throws Exception {
+        assumeTrue("no per-thread allocation counters", AllocationMeter.isSupported());
+        meter = new AllocationMeter(2);
+        Path keys = folder.newFolder("keys").toPath();
+        UtxoTestSet set = UtxoTestSet.builder()
+                .setSeed(11L)
+                .setKeyBits(512)
+                .setKeyCache(keys)
+                .setPeopleSize(20)
+                .setUtxoTxNumber(500)
+                .setMaxUtxoTxOutput(10)
+                .setMaxValue(200)
+                .setTxPerTest(1000)
+                .setMaxInput(4)
+                .setMaxOutput(4)
+                .build();
+        flatPool = set.getUtxoPool();
+        flatTxs = set.getValidationLists().allElements().toArray(new Transaction[0]);
+
+        Path ledger = folder.newFile("chained.bin").toPath();
+        chainedSummary = WorkloadGenerator.builder()
+                .setSeed(11L)
+                .setKeyBits(512)
+                .setKeyCache(keys)
+                .setPeople(20)
+                .setGenesisOutputs(2000)
+                .setEpochs(1)
+                .setTxsPerEpoch(1000)
+                .setChainShare(0.5)
+                .build()
+                .generate(ledger);
+        try (LedgerReader reader = new LedgerReader(ledger)) {
+            chainedPool = reader.readGenesis();
+            chainedTxs = reader.nextEpoch();
+        }
+    }
+
+    @AfterClass
+    public static void closeMeter() {
+        if (meter != null) {
+            meter.close();
+        }
+    }
+
+    @Test
+    public void isValidTx() {
+        TxHandler handler = new TxHandler(flatPool, meter.getPool());
+        long valid = check("isValidTx", IS_VALID_TX, flatTxs, () -> {
+            int count = 0;
+            for (Transaction tx : flatTxs) {
+                count += handler.isValidTx(tx) ? 1 : 0;
+            }
+            return count;
+        });
+        assertTrue(valid > 0);
+    }
+
+    @Test
+    public void txHandlerFlatEpoch() {
+        check("TxHandler flat", TX_HANDLER_FLAT, flatTxs,
+                epoch(pool -> new TxHandler(pool, meter.getPool()), flatPool, flatTxs));
+    }
+
+    @Test
+    public void maxFeeTxHandlerFlatEpoch() {
+        check("MaxFeeTxHandler flat", MAX_FEE_TX_HANDLER_FLAT, flatTxs,
+                epoch(MaxFeeTxHandler::new, flatPool, flatTxs));
+    }
+
+    @Test
+    public void txHandlerChainedEpoch() {
+        long accepted = check("TxHandler chained", TX_HANDLER_CHAINED, chainedTxs,
+                epoch(pool -> new TxHandler(pool, meter.getPool()), chainedPool, chainedTxs));
+        assertEquals(chainedSummary.getExpectedAccepted(), accepted);
+    }
+
+    /**
+     * @return a round handling {@code txs} as one epoch of a handler built over {@code pool};
+     *         the handlers are built ahead, outside the allocations measured
+     */
+    private static Round epoch(Function<UTXOPool, EpochHandler> handlers, UTXOPool pool,
+                               Transaction[] txs) {
+        List<EpochHandler> ready = new ArrayList<>();
+        for (int i = 0; i < WARMUP_ROUNDS + ROUNDS; i++) {
+            ready.add(handlers.apply(pool));
+        }
+        return () -> ready.remove(ready.size() - 1).handleTxs(txs.clone()).length;
+    }
+
+    /**
+     * Runs {@code round}, then checks its lowest allocation against {@code budget}
+     *
+     * @return the result of the last round
+     */
+    private static long check(String name, long[] budget, Transaction[] txs, Round round) {
+        long inputs = 0;
+        for (Transaction tx : txs) {
+            inputs += tx.numInputs();
+        }
+        long result = 0;
+        long lowest = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP_ROUNDS + ROUNDS; i++) {
+            long before = meter.allocatedBytes();
+            result = round.run();
+            long bytes = meter.allocatedBytes() - before;
+            if (i >= WARMUP_ROUNDS) {
+                lowest = Math.min(lowest, bytes);
+            }
+        }
+        long perTx = lowest / txs.length;
+        long perInput = lowest / inputs;
+        assertTrue(name + " allocates " + perTx + " bytes per transaction, over its budget of "
+                + budget[0], perTx <= budget[0]);
+        assertTrue(name + " allocates " + perInput + " bytes per input, over its budget of "
+                + budget[1], perInput <= budget[1]);
+        return result;
+    }
+
+    private interface Round {
+        /** @return the number of transactions accepted */
+        long run();
+    }
+}
@@ -0,0 +1,69 @@
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Counts the bytes allocated on the heap by the calling thread and by the workers of a pool of its
+ * own, which is handed to the code measured (e.g. as the verifier of a {@link TxHandler}), from
+ * the per-thread allocation counters of the JVM. Unlike sampling the heap, the counters are exact
+ * and do not depend on when collections happen; allocations on other threads are not counted.
+ */
+class AllocationMeter implements AutoCloseable {
+
+    private final com.sun.management.ThreadMXBean threads;
+    private final List<Thread> workers = new CopyOnWriteArrayList<>();
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a meter whose pool has {@code parallelism} workers
+     *
+     * @throws UnsupportedOperationException unless {@link #isSupported()}
+     */
+    AllocationMeter(int parallelism) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("no per-thread allocation counters");
+        }
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+        pool = new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread worker =
+                    ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            workers.add(worker);
+            return worker;
+        }, null, false);
+    }
+
+    /** @return true if this JVM has the per-thread allocation counters a meter reads */
+    static boolean isSupported() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported();
+    }
+
+    /** @return the pool whose workers are counted */
+    ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return the bytes allocated so far by the calling thread and the live workers of the pool;
+     *         only differences between two calls on the same thread are meaningful
+     */
+    long allocatedBytes() {
+        long bytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (Thread worker : workers) {
+            long workerBytes = threads.getThreadAllocatedBytes(worker.getId());
+            if (workerBytes > 0) {
+                bytes += workerBytes;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,128 @@
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link BlockTemplateBuilder} on synthetic candidate graphs
+ */
+public class BlockTemplateBuilderTest {
+
+    private static final int[] NONE = new int[0];
+
+    @Test
+    public void childPaysForLowFeeParent() {
+        // tx0 pays 1 for 100 bytes, tx1 spends it and pays 50 for 100 bytes, tx2 pays 20 for 100
+        int[] order = new BlockTemplateBuilder(200).build(
+                new double[]{1, 50, 20},
+                new int[]{100, 100, 100},
+                new int[][]{NONE, {0}, NONE},
+                new int[][]{{0}, {1}, {2}});
+
+        assertArrayEquals(new int[]{0, 1}, order);
+    }
+
+    @Test
+    public void skipsConflictsAndPackagesThatDoNotFit() {
+        // tx1 conflicts with tx0; tx2 is too large; tx3 fits in what is left
+        int[] order = new BlockTemplateBuilder(250).build(
+                new double[]{30, 20, 100, 5},
+                new int[]{100, 100, 300, 100},
+                new int[][]{NONE, NONE, NONE, NONE},
+                new int[][]{{0}, {0}, {1}, {2}});
+
+        assertArrayEquals(new int[]{0, 3}, order);
+    }
+
+    @Test
+    public void conflictWithinPackageOnlyRulesOutThatPackage() {
+        // tx2 would pay for both tx0 and tx1, but they spend the same outpoint; tx1 is still fine
+        int[] order = new BlockTemplateBuilder(1000).build(
+                new double[]{1, 100, 1000},
+                new int[]{100, 100, 100},
+                new int[][]{NONE, NONE, {0, 1}},
+                new int[][]{{0}, {0}, {1, 2}});
+
+        assertArrayEquals(new int[]{1}, order);
+    }
+
+    @Test
+    public void fillsFromFiftyThousandCandidatesQuickly() {
+        Random random = new Random(42);
+        int n = 50000;
+        double[] fees = new double[n];
+        int[] sizes = new int[n];
+        int[][] parents = new int[n][];
+        int[][] outpoints = new int[n][];
+        for (int t = 0; t < n; t++) {
+            fees[t] = random.nextInt(1000);
+            sizes[t] = 100 + random.nextInt(400);
+            parents[t] = t > 0 && random.nextInt(3) == 0
+                    ? new int[]{Math.max(0, t - 1 - random.nextInt(50))} : NONE;
+            outpoints[t] = new int[]{random.nextInt(2 * n)};
+        }
+
+        long maxBytes = 1000000;
+        int[] order = buildQuickly(maxBytes, fees, sizes, parents, outpoints);
+
+        long bytes = assertValid(order, sizes, parents, outpoints);
+        assertTrue(bytes <= maxBytes);
+        assertTrue(bytes > maxBytes - 500);
+    }
+
+    @Test
+    public void includesFiftyThousandDeepChainQuickly() {
+        Random random = new Random(42);
+        int n = 50000;
+        double[] fees = new double[n];
+        int[] sizes = new int[n];
+        int[][] parents = new int[n][];
+        int[][] outpoints = new int[n][];
+        for (int t = 0; t < n; t++) {
+            fees[t] = random.nextInt(1000);
+            sizes[t] = 100;
+            parents[t] = t > 0 ? new int[]{t - 1} : NONE;
+            outpoints[t] = new int[]{t};
+        }
+
+        int[] order = buildQuickly(100L * n, fees, sizes, parents, outpoints);
+
+        assertEquals(n, order.length);
+        assertValid(order, sizes, parents, outpoints);
+    }
+
+    /** @return the template, checked to be built within the time a block interval allows */
+    private static int[] buildQuickly(long maxBytes, double[] fees, int[] sizes, int[][] parents,
+                                      int[][] outpoints) {
+        BlockTemplateBuilder builder = new BlockTemplateBuilder(maxBytes);
+        builder.build(fees, sizes, parents, outpoints);
+        long start = System.nanoTime();
+        int[] order = builder.build(fees, sizes, parents, outpoints);
+        long elapsed = System.nanoTime() - start;
+        assertTrue("built in " + elapsed / 1000000 + " ms", elapsed < 500000000L);
+        return order;
+    }
+
+    /** @return the size of {@code order}, checked to put parents first and spend no outpoint twice */
+    private static long assertValid(int[] order, int[] sizes, int[][] parents, int[][] outpoints) {
+        boolean[] included = new boolean[sizes.length];
+        Set<Integer> spent = new HashSet<>();
+        long bytes = 0;
+        for (int t : order) {
+            for (int p : parents[t]) {
+                assertTrue(included[p]);
+            }
+            for (int o : outpoints[t]) {
+                assertTrue(spent.add(o));
+            }
+            included[t] = true;
+            bytes += sizes[t];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,92 @@
+import org.junit.Test;
+
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link BlockTree}
+ */
+public class BlockTreeTest {
+
+    @Test
+    public void forksSeeTheirOwnSpends()
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        KeyPair bob = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+
+        Transaction coinbase = TestTransactions.coinbase(alice, 10, 5);
+        UTXOPool genesis = TestTransactions.poolOf(coinbase);
+        UTXO first = new UTXO(coinbase.getHash(), 0);
+        UTXO second = new UTXO(coinbase.getHash(), 1);
+
+        Transaction toBob = TestTransactions.spend(coinbase, 0, 10, bob, alice.getPrivate());
+        Transaction toAlice = TestTransactions.spend(coinbase, 0, 9, alice);
+        Transaction fromBob = TestTransactions.spend(toBob, 0, 10, alice, bob.getPrivate());
+
+        BlockTree tree = new BlockTree(genesis, 1, 10);
+        byte[] genesisHash = tree.getRoot().getHash();
+        Block left = tree.addBlock(genesisHash, new Transaction[]{toBob});
+        Block right = tree.addBlock(genesisHash, new Transaction[]{toAlice});
+        Block leftChild = tree.addBlock(left.getHash(), new Transaction[]{fromBob});
+
+        assertArrayEquals(new Transaction[]{fromBob}, leftChild.getTransactions());
+        assertEquals(leftChild, tree.getTip());
+        assertEquals(2, tree.getTips().size());
+        assertEquals(1, tree.getCachedViewCount());
+
+        assertNull(tree.getTxOutput(first));
+        assertNull(tree.getTxOutput(new UTXO(toBob.getHash(), 0)));
+        assertNotNull(tree.getTxOutput(new UTXO(fromBob.getHash(), 0)));
+        assertNotNull(tree.getTxOutput(second));
+        assertNotNull(tree.getTxOutput(right.getHash(), new UTXO(toAlice.getHash(), 0)));
+        assertNull(tree.getTxOutput(right.getHash(), new UTXO(toBob.getHash(), 0)));
+
+        assertTrue(tree.setTip(right.getHash()));
+        UTXOPool rightPool = tree.getUTXOPool();
+        assertEquals(2, rightPool.size());
+        assertTrue(rightPool.contains(new UTXO(toAlice.getHash(), 0)));
+        UTXOPool leftPool = tree.getUTXOPool(left.getHash());
+        assertEquals(2, leftPool.size());
+        assertTrue(leftPool.contains(new UTXO(toBob.getHash(), 0)));
+        assertEquals(1, tree.getCachedViewCount());
+    }
+
+    @Test
+    public void pruningDropsStaleForks()
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+
+        Transaction coinbase = TestTransactions.coinbase(alice, 10);
+        UTXOPool genesis = TestTransactions.poolOf(coinbase);
+
+        BlockTree tree = new BlockTree(genesis, 2, 3);
+        Block stale = tree.addBlock(null,
+                new Transaction[]{TestTransactions.spend(coinbase, 0, 9, alice)});
+        Block best = tree.addBlock(tree.getRoot().getHash(),
+                new Transaction[]{TestTransactions.spend(coinbase, 0, 8, alice)});
+        for (int i = 0; i < 5; i++) {
+            Transaction tx = best.getTransactions()[0];
+            best = tree.addBlock(best.getHash(),
+                    new Transaction[]{TestTransactions.spend(tx, 0, 8 - i - 1, alice)});
+        }
+
+        assertEquals(6, best.getHeight());
+        assertEquals(best, tree.getTip());
+        assertEquals(3, tree.getRoot().getHeight());
+        assertEquals(4, tree.size());
+        assertNull(tree.getBlock(stale.getHash()));
+        assertNull(tree.addBlock(stale.getHash(), new Transaction[0]));
+        assertEquals(1, tree.getUTXOPool().size());
+        UTXO last = new UTXO(best.getTransactions()[0].getHash(), 0);
+        assertEquals(3d, tree.getTxOutput(last).value, 1e-9);
+    }
+}
@@ -0,0 +1,89 @@
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link CoinSelector}
+ */
+public class CoinSelectorTest {
+
+    @Test
+    public void prefersExactMatchWithFewestInputs() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        KeyPair bob = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Transaction coinbase = TestTransactions.coinbase(alice, 5, 4, 3, 1, 1, 1, 1, 1, 1, 1);
+        coinbase.addOutput(100, bob.getPublic());
+        coinbase.finalize();
+        CoinSelector selector = new CoinSelector(TestTransactions.poolOf(coinbase));
+
+        CoinSelection exact = selector.select(alice.getPublic(), 7);
+        assertEquals(CoinSelection.Strategy.EXACT_MATCH, exact.getStrategy());
+        assertEquals(Arrays.asList(new UTXO(coinbase.getHash(), 1),
+                new UTXO(coinbase.getHash(), 2)), exact.getInputs());
+        assertEquals(0d, exact.getChange(), 0d);
+
+        CoinSelection single = selector.select(alice.getPublic(), 3.5);
+        assertEquals(CoinSelection.Strategy.KNAPSACK, single.getStrategy());
+        assertEquals(Arrays.asList(new UTXO(coinbase.getHash(), 1)), single.getInputs());
+
+        CoinSelection all = selector.select(alice.getPublic(), 18.5, 0.5);
+        assertEquals(CoinSelection.Strategy.EXACT_MATCH, all.getStrategy());
+        assertEquals(10, all.getInputs().size());
+
+        assertNull(selector.select(alice.getPublic(), 20.5));
+        assertEquals(1, selector.select(bob.getPublic(), 50).getInputs().size());
+    }
+
+    @Test
+    public void followsAcceptedTransactions() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        KeyPair bob = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Transaction coinbase = TestTransactions.coinbase(alice, 10, 6);
+        TxHandler handler = new TxHandler(TestTransactions.poolOf(coinbase));
+        CoinSelector selector = new CoinSelector(handler.getUTXOPool());
+        handler.setEpochListener(selector);
+
+        Transaction pay = new Transaction();
+        pay.addInput(coinbase.getHash(), 0);
+        pay.addOutput(7, bob.getPublic());
+        pay.addOutput(3, alice.getPublic());
+        TestTransactions.sign(pay, alice.getPrivate());
+        assertEquals(1, handler.handleTxs(new Transaction[]{pay}).length);
+
+        assertEquals(9d, selector.getBalance(alice.getPublic()), 0d);
+        assertEquals(2, selector.getCoinCount(alice.getPublic()));
+        assertEquals(Arrays.asList(new UTXO(coinbase.getHash(), 1), new UTXO(pay.getHash(), 1)),
+                selector.select(alice.getPublic(), 9).getInputs());
+        assertEquals(Arrays.asList(new UTXO(pay.getHash(), 0)),
+                selector.select(bob.getPublic(), 7).getInputs());
+    }
+
+    @Test
+    public void selectsQuicklyFromLargeWallet() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Random random = new Random(42);
+        double[] values = new double[100000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1 + random.nextInt(100000) / 100d;
+        }
+        Transaction coinbase = TestTransactions.coinbase(alice, values);
+        CoinSelector selector = new CoinSelector(TestTransactions.poolOf(coinbase));
+
+        int rounds = 2000;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            double target = 1 + random.nextInt(5000000) / 100d;
+            CoinSelection selection = selector.select(alice.getPublic(), target);
+            assertTrue(selection.getTotal() >= target);
+        }
+        long nanosPerSelection = (System.nanoTime() - start) / rounds;
+        assertTrue("took " + nanosPerSelection + "ns", nanosPerSelection < 1000000);
+    }
+}
@@ -0,0 +1,72 @@
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link EpochPipeline}
+ */
+public class EpochPipelineTest {
+
+    @Test
+    public void pipelinedEpochsMatchSerialHandling() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        KeyPair bob = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Transaction coinbase = TestTransactions.coinbase(alice, 10, 10, 10, 10);
+
+        Transaction a = TestTransactions.spend(coinbase, 0, 9, bob, alice.getPrivate());
+        Transaction b = TestTransactions.spend(coinbase, 1, 9, bob, alice.getPrivate());
+        // spends an output of the previous epoch, unknown when its signature is verified
+        Transaction fromA = TestTransactions.spend(a, 0, 8, alice, bob.getPrivate());
+        // spends an output the previous epoch spent
+        Transaction doubleSpend = TestTransactions.spend(coinbase, 1, 5, alice);
+        Transaction forged = TestTransactions.spend(coinbase, 2, 9, bob, bob.getPrivate());
+        Transaction c = TestTransactions.spend(coinbase, 2, 9, bob, alice.getPrivate());
+        Transaction fromFromA = TestTransactions.spend(fromA, 0, 7, bob, alice.getPrivate());
+        // spends an output of a transaction the previous epoch rejected
+        Transaction fromForged = TestTransactions.spend(forged, 0, 8, alice, bob.getPrivate());
+        Transaction[][] epochs = {
+                {a, b},
+                {fromA, doubleSpend, forged},
+                {c, fromFromA, fromForged},
+                {},
+                {TestTransactions.spend(coinbase, 3, 1, bob, alice.getPrivate())}
+        };
+
+        TxHandler serial = new TxHandler(TestTransactions.poolOf(coinbase));
+        List<Transaction[]> expected = new ArrayList<>();
+        for (Transaction[] epoch : epochs) {
+            expected.add(serial.handleTxs(epoch));
+        }
+
+        MetricsRegistry.Counter recorded = MetricsRegistry.getDefault()
+                .counter("ledger_epochs_total{handler=\"TxHandler\"}");
+        long recordedBefore = recorded.get();
+        List<CompletableFuture<Transaction[]>> results = new ArrayList<>();
+        try (EpochPipeline pipeline =
+                     new EpochPipeline(new TxHandler(TestTransactions.poolOf(coinbase)))) {
+            for (Transaction[] epoch : epochs) {
+                results.add(pipeline.submit(epoch));
+            }
+            for (int i = 0; i < epochs.length; i++) {
+                assertArrayEquals(expected.get(i), results.get(i).get());
+            }
+            assertEquals(epochs.length, recorded.get() - recordedBefore);
+            assertEquals(serial.getUTXOPool().getAllUTXO().size(),
+                    pipeline.getHandler().getUTXOPool().getAllUTXO().size());
+            for (UTXO utxo : serial.getUTXOPool().getAllUTXO()) {
+                assertEquals(serial.getUTXOPool().getTxOutput(utxo),
+                        pipeline.getHandler().getUTXOPool().getTxOutput(utxo));
+            }
+        }
+        assertArrayEquals(new Transaction[]{a, b}, expected.get(0));
+        assertArrayEquals(new Transaction[]{fromA}, expected.get(1));
+        assertArrayEquals(new Transaction[]{c, fromFromA}, expected.get(2));
+    }
+}
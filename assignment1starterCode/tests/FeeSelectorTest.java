@@ -0,0 +1,139 @@
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link FeeSelector} on synthetic conflict and dependency graphs
+ */
+public class FeeSelectorTest {
+
+    private static final int[] NONE = new int[0];
+
+    @Test
+    public void prefersTwoSmallerFeesOverOneConflictingLargerFee() {
+        // tx0 spends outpoints 0 and 1, tx1 spends 0, tx2 spends 1
+        FeeSelection selection = new FeeSelector(FeeSelector.DEFAULT_EXACT_LIMIT, 0L).select(
+                new double[]{5, 3, 3},
+                new int[][]{NONE, NONE, NONE},
+                new int[][]{{0, 1}, {0}, {1}});
+
+        assertArrayEquals(new int[]{1, 2}, selection.getOrder());
+        assertEquals(6d, selection.getFee(), 1e-9);
+        assertEquals(1d, selection.getOptimalityRatio(), 1e-9);
+    }
+
+    @Test
+    public void includesFeelessParentOfHighFeeChild() {
+        // tx0 pays nothing and conflicts with tx1, but tx2 spends its output
+        FeeSelection selection = new FeeSelector(FeeSelector.DEFAULT_EXACT_LIMIT, 0L).select(
+                new double[]{0, 4, 10, 0},
+                new int[][]{NONE, NONE, {0}, NONE},
+                new int[][]{{0}, {0}, {1}, {2}});
+
+        assertArrayEquals(new int[]{0, 2}, selection.getOrder());
+        assertEquals(10d, selection.getFee(), 1e-9);
+    }
+
+    @Test
+    public void heuristicStaysWithinBoundsOnThousandsOfConflicts() {
+        Random random = new Random(42);
+        int n = 5000;
+        int numOutpoints = 3000;
+        double[] fees = new double[n];
+        int[][] parents = new int[n][];
+        int[][] outpoints = new int[n][];
+        for (int t = 0; t < n; t++) {
+            fees[t] = random.nextInt(1000) / 10d;
+            parents[t] = t > 0 && random.nextInt(4) == 0 ? new int[]{random.nextInt(t)} : NONE;
+            int a = random.nextInt(numOutpoints);
+            int b = random.nextInt(numOutpoints);
+            outpoints[t] = a == b ? new int[]{a} : new int[]{a, b};
+        }
+
+        long budget = TimeUnit.MILLISECONDS.toNanos(200);
+        FeeSelection selection = new FeeSelector(FeeSelector.DEFAULT_EXACT_LIMIT, budget)
+                .select(fees, parents, outpoints);
+
+        assertTrue(selection.getHeuristicComponents() > 0);
+        assertTrue(selection.getFee() <= selection.getUpperBound());
+        assertTrue(selection.getOptimalityRatio() > 0.5);
+        assertTrue(selection.getElapsedNanos() < 10 * budget);
+        assertValid(selection, parents, outpoints, numOutpoints);
+    }
+
+    @Test
+    public void heuristicNeverBeatsExactSolution() {
+        Random random = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            int n = 16;
+            double[] fees = new double[n];
+            int[][] parents = new int[n][];
+            int[][] outpoints = new int[n][];
+            for (int t = 0; t < n; t++) {
+                fees[t] = random.nextInt(100);
+                parents[t] = t > 0 && random.nextInt(3) == 0 ? new int[]{random.nextInt(t)} : NONE;
+                outpoints[t] = new int[]{random.nextInt(8), 8 + random.nextInt(8)};
+            }
+            FeeSelection exact = new FeeSelector(n, 0L).select(fees, parents, outpoints);
+            FeeSelection heuristic = new FeeSelector(0, TimeUnit.MILLISECONDS.toNanos(50))
+                    .select(fees, parents, outpoints);
+
+            assertValid(exact, parents, outpoints, 16);
+            assertValid(heuristic, parents, outpoints, 16);
+            assertTrue(heuristic.getFee() <= exact.getFee() + 1e-9);
+            assertTrue(heuristic.getUpperBound() >= exact.getFee() - 1e-9);
+        }
+    }
+
+    @Test
+    public void unlimitedBudgetImprovesUntilNoImprovementIsLeft() {
+        FeeSelection selection = new FeeSelector(0, Long.MAX_VALUE).select(
+                new double[]{5, 3, 3},
+                new int[][]{NONE, NONE, NONE},
+                new int[][]{{0, 1}, {0}, {1}});
+
+        assertFalse(selection.isBudgetExhausted());
+        assertValid(selection, new int[][]{NONE, NONE, NONE}, new int[][]{{0, 1}, {0}, {1}}, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeBudget() {
+        new FeeSelector(FeeSelector.DEFAULT_EXACT_LIMIT, -1L);
+    }
+
+    @Test
+    public void maxFeeTxHandlerSaturatesLongSelectionBudget() {
+        MaxFeeTxHandler handler =
+                new MaxFeeTxHandler(new UTXOPool(), Duration.ofSeconds(Long.MAX_VALUE));
+
+        assertEquals(0, handler.handleTxs(new Transaction[0]).length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxFeeTxHandlerRejectsNegativeSelectionBudget() {
+        new MaxFeeTxHandler(new UTXOPool(), Duration.ofMillis(-1));
+    }
+
+    private static void assertValid(FeeSelection selection, int[][] parents, int[][] outpoints,
+                                    int numOutpoints) {
+        boolean[] taken = new boolean[numOutpoints];
+        boolean[] placed = new boolean[parents.length];
+        for (int t : selection.getOrder()) {
+            for (int p : parents[t]) {
+                assertTrue(placed[p]);
+            }
+            for (int o : outpoints[t]) {
+                assertTrue(!taken[o]);
+                taken[o] = true;
+            }
+            placed[t] = true;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link LatencyHistogram}
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 100000; v++) {
+            histogram.record(v);
+        }
+
+        assertEquals(100000, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(100000, histogram.getMax());
+        assertEquals(50000.5, histogram.getMean(), 1e-9);
+        for (double p : new double[]{1, 50, 90, 99, 99.9}) {
+            long exact = (long) Math.ceil(p * 1000);
+            long reported = histogram.getValueAtPercentile(p);
+            assertTrue(reported >= exact);
+            assertTrue(reported <= exact + exact / 16 + 1);
+        }
+        assertEquals(100000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void bucketsCoverEveryValue() {
+        for (long v : new long[]{0, 1, 15, 16, 17, 31, 32, 33, 1000, 1L << 40, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.index(v);
+            assertTrue(LatencyHistogram.highest(index) >= v);
+            assertTrue(index == 0 || LatencyHistogram.highest(index - 1) < v);
+        }
+    }
+}
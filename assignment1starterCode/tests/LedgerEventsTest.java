@@ -0,0 +1,117 @@
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LedgerEvents}
+ */
+public class LedgerEventsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsEpochsStagesAndChecks() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Transaction coinbase = TestTransactions.coinbase(alice, 10, 5);
+        UTXOPool pool = TestTransactions.poolOf(coinbase);
+
+        Transaction pay = TestTransactions.spend(coinbase, 0, 9, alice);
+        Transaction forged = new Transaction();
+        forged.addInput(coinbase.getHash(), 1);
+        forged.addOutput(5, alice.getPublic());
+        forged.addSignature(new byte[256], 0);
+        forged.finalize();
+        Transaction[] epoch = {pay, forged};
+
+        Path dump = folder.newFile("ledger.jfr").toPath();
+        try (Recording recording = new Recording()) {
+            for (String name : new String[]{"ledger.Epoch", "ledger.EpochStage",
+                    "ledger.TxValidation", "ledger.SignatureCheck"}) {
+                recording.enable(name).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            assertEquals(1, new TxHandler(pool).handleTxs(epoch.clone()).length);
+            assertEquals(1, new MaxFeeTxHandler(pool).handleTxs(epoch.clone()).length);
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<String> epochs = new ArrayList<>();
+        Set<String> stages = new HashSet<>();
+        Set<String> outcomes = new HashSet<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+            String type = event.getEventType().getName();
+            if (type.equals("ledger.Epoch")) {
+                epochs.add(event.getString("handler") + " " + event.getInt("candidates") + " "
+                        + event.getInt("accepted"));
+            } else if (type.equals("ledger.EpochStage")) {
+                stages.add(event.getString("handler") + " " + event.getString("stage") + " "
+                        + event.getInt("transactions") + " " + event.getInt("passed"));
+            } else {
+                assertEquals(64, event.getString("txHash").length());
+                outcomes.add(type + " " + event.getString("outcome"));
+            }
+        }
+        assertEquals(2, epochs.size());
+        assertTrue(epochs.contains("TxHandler 2 1"));
+        assertTrue(epochs.contains("MaxFeeTxHandler 2 1"));
+        assertTrue(stages.contains("TxHandler signatures 2 1"));
+        assertTrue(stages.contains("TxHandler apply 1 1"));
+        assertTrue(stages.contains("MaxFeeTxHandler validate 2 1"));
+        assertTrue(outcomes.contains("ledger.SignatureCheck SIGNATURE"));
+        assertTrue(outcomes.contains("ledger.SignatureCheck VALID"));
+        assertTrue(outcomes.contains("ledger.TxValidation VALID"));
+    }
+
+    @Test
+    public void recordsPipelinedEpochs() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Transaction coinbase = TestTransactions.coinbase(alice, 10, 5);
+        Transaction pay = TestTransactions.spend(coinbase, 0, 9, alice);
+        Transaction overspend = TestTransactions.spend(coinbase, 1, 6, alice);
+        Transaction fromPay = TestTransactions.spend(pay, 0, 8, alice);
+
+        Path dump = folder.newFile("pipeline.jfr").toPath();
+        try (Recording recording = new Recording();
+             EpochPipeline pipeline =
+                     new EpochPipeline(new TxHandler(TestTransactions.poolOf(coinbase)))) {
+            recording.enable("ledger.Epoch").withThreshold(Duration.ZERO);
+            recording.start();
+            CompletableFuture<Transaction[]> first =
+                    pipeline.submit(new Transaction[]{pay, overspend});
+            CompletableFuture<Transaction[]> second = pipeline.submit(new Transaction[]{fromPay});
+            assertEquals(1, first.get().length);
+            assertEquals(1, second.get().length);
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<String> epochs = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+            if (event.getEventType().getName().equals("ledger.Epoch")) {
+                epochs.add(event.getString("handler") + " " + event.getInt("candidates") + " "
+                        + event.getInt("accepted"));
+            }
+        }
+        assertEquals(2, epochs.size());
+        assertTrue(epochs.contains("TxHandler 2 1"));
+        assertTrue(epochs.contains("TxHandler 1 1"));
+    }
+}
@@ -0,0 +1,75 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LedgerWriter}, {@link LedgerReader} and {@link LedgerReplay}
+ */
+public class LedgerReplayTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replayMatchesDirectHandling() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        KeyPair bob = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+
+        Transaction coinbase = new Transaction();
+        coinbase.addOutput(10, alice.getPublic());
+        coinbase.addOutput(20, bob.getPublic());
+        coinbase.finalize();
+        UTXOPool genesis = TestTransactions.poolOf(coinbase);
+
+        Transaction a = TestTransactions.spend(coinbase, 0, 9, bob, alice.getPrivate());
+        Transaction b = TestTransactions.spend(a, 0, 8, alice, bob.getPrivate());
+        Transaction forged = TestTransactions.spend(coinbase, 1, 20, alice);
+        Transaction c = TestTransactions.spend(coinbase, 1, 19, alice, bob.getPrivate());
+        Transaction[][] epochs = {{b, a, forged}, {}, {c}};
+
+        Path ledger = folder.newFile("ledger.bin").toPath();
+        try (LedgerWriter writer = new LedgerWriter(ledger)) {
+            writer.writeGenesisOutput(new UTXO(coinbase.getHash(), 0), coinbase.getOutput(0));
+            writer.writeGenesisOutput(new UTXO(coinbase.getHash(), 1), coinbase.getOutput(1));
+            for (Transaction[] epoch : epochs) {
+                writer.writeEpoch(epoch);
+            }
+        }
+
+        try (LedgerReader reader = new LedgerReader(ledger, 512)) {
+            assertEquals(2, reader.readGenesis().size());
+            Transaction[] first = reader.nextEpoch();
+            assertEquals(3, first.length);
+            for (int i = 0; i < first.length; i++) {
+                assertArrayEquals(epochs[0][i].getHash(), first[i].getHash());
+                assertArrayEquals(epochs[0][i].getRawTx(), first[i].getRawTx());
+            }
+            assertEquals(0, reader.nextEpoch().length);
+            assertEquals(1, reader.nextEpoch().length);
+            assertNull(reader.nextEpoch());
+        }
+
+        ReplayReport report = new LedgerReplay(TxHandler::new, 512).replay(ledger);
+        TxHandler direct = new TxHandler(genesis);
+        long accepted = 0;
+        for (Transaction[] epoch : epochs) {
+            accepted += direct.handleTxs(epoch).length;
+        }
+        assertEquals(3, report.getEpochs());
+        assertEquals(4, report.getTransactions());
+        assertEquals(4, report.getInputs());
+        assertEquals(accepted, report.getAccepted());
+        assertEquals(3, report.getAccepted());
+        assertEquals(3, report.getEpochLatency().getCount());
+        assertTrue(report.getTxsPerSecond() > 0);
+    }
+}
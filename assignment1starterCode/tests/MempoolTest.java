@@ -0,0 +1,128 @@
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link Mempool}: orphans, fee-rate eviction and epochs
+ */
+public class MempoolTest {
+
+    @Test
+    public void orphanIsAdmittedWhenParentArrives() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Transaction coinbase = TestTransactions.coinbase(alice, 10);
+        UTXOPool pool = new UTXOPool();
+        pool.addUTXO(new UTXO(coinbase.getHash(), 0), coinbase.getOutput(0));
+
+        Transaction parent = TestTransactions.spend(coinbase, 0, 9, alice);
+        Transaction child = TestTransactions.spend(parent, 0, 8, alice);
+        Transaction conflict = TestTransactions.spend(coinbase, 0, 5, alice);
+
+        Mempool mempool = new Mempool(new TxHandler(pool));
+        assertEquals(Mempool.Status.ORPHAN, mempool.add(child));
+        assertEquals(1, mempool.getOrphanCount());
+        assertEquals(Mempool.Status.ADDED, mempool.add(parent));
+        assertEquals(0, mempool.getOrphanCount());
+        assertEquals(2, mempool.size());
+        assertEquals(Mempool.Status.CONFLICT, mempool.add(conflict));
+        assertEquals(Mempool.Status.DUPLICATE, mempool.add(parent));
+
+        assertArrayEquals(new Transaction[]{parent, child}, mempool.runEpoch());
+        assertEquals(0, mempool.size());
+        assertEquals(0, mempool.getBytes());
+    }
+
+    @Test
+    public void lowestFeeRateIsEvictedFirst() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Transaction coinbase = TestTransactions.coinbase(alice, 10, 10);
+        UTXOPool pool = TestTransactions.poolOf(coinbase);
+
+        Transaction cheap = TestTransactions.spend(coinbase, 0, 9, alice);
+        Transaction cheapChild = TestTransactions.spend(cheap, 0, 8, alice);
+        Transaction generous = TestTransactions.spend(coinbase, 1, 1, alice);
+        long size = cheap.getRawTx().length;
+
+        Mempool mempool = new Mempool(new TxHandler(pool), 2 * size, 10,
+                Duration.ofMinutes(1), Clock.systemUTC());
+        assertEquals(Mempool.Status.ADDED, mempool.add(cheap));
+        assertEquals(Mempool.Status.ADDED, mempool.add(cheapChild));
+        assertEquals(Mempool.Status.ADDED, mempool.add(generous));
+        assertEquals(1, mempool.size());
+        assertTrue(mempool.contains(generous.getHash()));
+        assertFalse(mempool.contains(cheapChild.getHash()));
+    }
+
+    @Test
+    public void orphansExpire() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Transaction coinbase = TestTransactions.coinbase(alice, 10);
+        Transaction parent = TestTransactions.spend(coinbase, 0, 9, alice);
+        Transaction child = TestTransactions.spend(parent, 0, 8, alice);
+        UTXOPool pool = new UTXOPool();
+        pool.addUTXO(new UTXO(coinbase.getHash(), 0), coinbase.getOutput(0));
+
+        MutableClock clock = new MutableClock();
+        Mempool mempool = new Mempool(new TxHandler(pool), Mempool.DEFAULT_MAX_BYTES, 10,
+                Duration.ofSeconds(30), clock);
+        assertEquals(Mempool.Status.ORPHAN, mempool.add(child));
+        clock.now = clock.now.plusSeconds(31);
+        assertEquals(Mempool.Status.ADDED, mempool.add(parent));
+        assertEquals(0, mempool.getOrphanCount());
+        assertEquals(1, mempool.size());
+    }
+
+    @Test
+    public void orphanKeepsItsArrivalTimeWhileParentsArrive() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Transaction coinbase = TestTransactions.coinbase(alice, 10, 10);
+        UTXOPool pool = TestTransactions.poolOf(coinbase);
+
+        Transaction left = TestTransactions.spend(coinbase, 0, 9, alice);
+        Transaction right = TestTransactions.spend(coinbase, 1, 9, alice);
+        Transaction child = new Transaction();
+        child.addInput(left.getHash(), 0);
+        child.addInput(right.getHash(), 0);
+        child.addOutput(17, alice.getPublic());
+        TestTransactions.sign(child, alice.getPrivate());
+
+        MutableClock clock = new MutableClock();
+        Mempool mempool = new Mempool(new TxHandler(pool), Mempool.DEFAULT_MAX_BYTES, 10,
+                Duration.ofSeconds(30), clock);
+        assertEquals(Mempool.Status.ORPHAN, mempool.add(child));
+        clock.now = clock.now.plusSeconds(20);
+        assertEquals(Mempool.Status.ADDED, mempool.add(left));
+        assertEquals(1, mempool.getOrphanCount());
+        clock.now = clock.now.plusSeconds(11);
+        assertEquals(Mempool.Status.ADDED, mempool.add(right));
+        assertEquals(0, mempool.getOrphanCount());
+        assertFalse(mempool.contains(child.getHash()));
+    }
+
+    private static final class MutableClock extends Clock {
+        Instant now = Instant.EPOCH;
+
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        public Instant instant() {
+            return now;
+        }
+    }
+}
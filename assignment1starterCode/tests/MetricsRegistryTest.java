@@ -0,0 +1,110 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link MetricsRegistry}
+ */
+public class MetricsRegistryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void exportsCountersAndSummaries() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("txs_total{handler=\"a\"}").add(3);
+        registry.counter("txs_total{handler=\"b\"}").increment();
+        MetricsRegistry.Histogram latency = registry.histogram("latency_nanos");
+        for (int i = 1; i <= 100; i++) {
+            latency.record(1000 * i);
+        }
+
+        String text = registry.export();
+        assertTrue(text.startsWith("# TYPE txs_total counter\n"
+                + "txs_total{handler=\"a\"} 3\n"
+                + "txs_total{handler=\"b\"} 1\n"
+                + "# TYPE latency_nanos summary\n"
+                + "latency_nanos{quantile=\"0.5\"} "));
+        assertTrue(text.contains("latency_nanos_count 100\n"));
+        assertTrue(text.contains("latency_nanos_sum 5050000\n"));
+        assertTrue(text.endsWith("# TYPE latency_nanos_max gauge\nlatency_nanos_max 100000\n"));
+        assertFalse(text.substring(0, text.indexOf("# TYPE latency_nanos_max")).contains("_max"));
+        assertEquals(100, latency.snapshot().getCount());
+    }
+
+    @Test
+    public void exportsToFileAndSocket() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("epochs_total").add(7);
+
+        Path file = folder.getRoot().toPath().resolve("metrics.prom");
+        registry.exportTo(file);
+        assertEquals(registry.export(),
+                new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+
+        try (MetricsRegistry.Server server = registry.serve(0);
+             Socket client = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+             InputStream in = client.getInputStream()) {
+            client.getOutputStream().write(("GET /metrics HTTP/1.1\r\nHost: localhost\r\n"
+                    + "Accept: text/plain\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            ByteArrayOutputStream read = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                read.write(buffer, 0, n);
+            }
+            String response = new String(read.toByteArray(), StandardCharsets.UTF_8);
+            String body = registry.export();
+            assertEquals("HTTP/1.0 200 OK\r\n"
+                    + "Content-Type: text/plain; version=0.0.4\r\n"
+                    + "Content-Length: " + body.length() + "\r\n"
+                    + "\r\n" + body, response);
+        }
+    }
+
+    @Test
+    public void handlersReportToDefaultRegistry() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Transaction coinbase = TestTransactions.coinbase(alice, 10);
+        UTXOPool pool = TestTransactions.poolOf(coinbase);
+        Transaction pay = TestTransactions.spend(coinbase, 0, 9, alice);
+
+        MetricsRegistry registry = MetricsRegistry.getDefault();
+        MetricsRegistry.Counter epochs =
+                registry.counter("ledger_epochs_total{handler=\"TxHandler\"}");
+        MetricsRegistry.Counter accepted =
+                registry.counter("ledger_accepted_total{handler=\"TxHandler\"}");
+        MetricsRegistry.Counter lookups = registry.counter("utxo_pool_lookups_total");
+        long epochsBefore = epochs.get();
+        long acceptedBefore = accepted.get();
+        long lookupsBefore = lookups.get();
+        long verifiesBefore = registry.histogram("crypto_verify_nanos").snapshot().getCount();
+        MetricsRegistry.Histogram validation =
+                registry.histogram("ledger_tx_validation_nanos{handler=\"TxHandler\"}");
+        long validationsBefore = validation.snapshot().getCount();
+
+        assertEquals(1, new TxHandler(pool).handleTxs(new Transaction[]{pay}).length);
+
+        assertEquals(1, epochs.get() - epochsBefore);
+        assertEquals(1, accepted.get() - acceptedBefore);
+        assertEquals(1, validation.snapshot().getCount() - validationsBefore);
+        assertTrue(lookups.get() > lookupsBefore);
+        assertTrue(registry.histogram("crypto_verify_nanos").snapshot().getCount()
+                > verifiesBefore);
+        assertTrue(registry.export().contains("ledger_epoch_nanos_count{handler=\"TxHandler\"} "));
+    }
+}
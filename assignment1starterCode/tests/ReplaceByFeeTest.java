@@ -0,0 +1,75 @@
+import org.junit.Test;
+
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link MaxFeeTxHandler#replace}
+ */
+public class ReplaceByFeeTest {
+
+    @Test
+    public void higherFeeReplacesConflictAndDescendants()
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+
+        Transaction coinbase = TestTransactions.coinbase(alice, 10);
+        UTXOPool pool = TestTransactions.poolOf(coinbase);
+
+        Transaction parent = TestTransactions.spend(coinbase, 0, 9, alice);
+        Transaction child = TestTransactions.spend(parent, 0, 8, alice);
+        Transaction cheap = TestTransactions.spend(coinbase, 0, 8.5, alice);
+        Transaction rich = TestTransactions.spend(coinbase, 0, 7, alice);
+
+        MaxFeeTxHandler handler = new MaxFeeTxHandler(pool);
+        assertArrayEquals(new Transaction[]{parent}, handler.handleTxs(new Transaction[]{parent}));
+        assertEquals(Replacement.Status.ACCEPTED, handler.replace(child).getStatus());
+
+        Replacement refused = handler.replace(cheap);
+        assertEquals(Replacement.Status.INSUFFICIENT_FEE, refused.getStatus());
+        assertArrayEquals(new Transaction[]{parent, child}, refused.getReplaced());
+        assertEquals(2d, refused.getReplacedFee(), 1e-9);
+        assertArrayEquals(new Transaction[]{parent, child}, handler.getAcceptedTxs());
+
+        Replacement replaced = handler.replace(rich);
+        assertEquals(Replacement.Status.REPLACED, replaced.getStatus());
+        assertArrayEquals(new Transaction[]{parent, child}, replaced.getReplaced());
+        assertEquals(3d, replaced.getFee(), 1e-9);
+        assertArrayEquals(new Transaction[]{rich}, handler.getAcceptedTxs());
+
+        UTXOPool after = handler.getUTXOPool();
+        assertEquals(1, after.size());
+        assertNotNull(after.getTxOutput(new UTXO(rich.getHash(), 0)));
+        assertNull(after.getTxOutput(new UTXO(parent.getHash(), 0)));
+        assertNull(after.getTxOutput(new UTXO(child.getHash(), 0)));
+    }
+
+    @Test
+    public void newEpochMakesAcceptedTransactionsFinal()
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+
+        Transaction coinbase = TestTransactions.coinbase(alice, 10);
+        UTXOPool pool = TestTransactions.poolOf(coinbase);
+
+        Transaction first = TestTransactions.spend(coinbase, 0, 9, alice);
+        Transaction rich = TestTransactions.spend(coinbase, 0, 1, alice);
+
+        MaxFeeTxHandler handler = new MaxFeeTxHandler(pool);
+        handler.handleTxs(new Transaction[]{first});
+        handler.handleTxs(new Transaction[0]);
+
+        Replacement refused = handler.replace(rich);
+        assertFalse(refused.isAccepted());
+        assertEquals(ValidationRule.UNKNOWN_INPUT, refused.getResult().getReason());
+    }
+}
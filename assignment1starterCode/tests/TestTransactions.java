@@ -0,0 +1,74 @@
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.SignatureException;
+
+/**
+ * Builds the small hand-written transactions of the unit tests: coinbases, pools holding their
+ * outputs, and signed spends of one output
+ */
+final class TestTransactions {
+
+    private TestTransactions() {
+    }
+
+    /** @return a finalized transaction without inputs paying {@code values} to {@code owner} */
+    static Transaction coinbase(KeyPair owner, double... values) {
+        Transaction coinbase = new Transaction();
+        for (double value : values) {
+            coinbase.addOutput(value, owner.getPublic());
+        }
+        coinbase.finalize();
+        return coinbase;
+    }
+
+    /** @return a pool holding every output of {@code coinbase} */
+    static UTXOPool poolOf(Transaction coinbase) {
+        UTXOPool pool = new UTXOPool();
+        for (int i = 0; i < coinbase.numOutputs(); i++) {
+            pool.addUTXO(new UTXO(coinbase.getHash(), i), coinbase.getOutput(i));
+        }
+        return pool;
+    }
+
+    /** @return a transaction spending output {@code index} of {@code from} to its owner, signed */
+    static Transaction spend(Transaction from, int index, double value, KeyPair owner)
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        return spend(from, index, value, owner, owner.getPrivate());
+    }
+
+    /**
+     * @return a transaction spending output {@code index} of {@code from}, paying {@code value} to
+     *         {@code to} and signed with {@code key}
+     */
+    static Transaction spend(Transaction from, int index, double value, KeyPair to,
+                             PrivateKey key)
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        return spend(from.getHash(), index, value, to, key);
+    }
+
+    /** Same as {@link #spend(Transaction, int, double, KeyPair, PrivateKey)} by hash */
+    static Transaction spend(byte[] prevTxHash, int index, double value, KeyPair to,
+                             PrivateKey key)
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        Transaction tx = new Transaction();
+        tx.addInput(prevTxHash, index);
+        tx.addOutput(value, to.getPublic());
+        sign(tx, key);
+        return tx;
+    }
+
+    /** Signs every input of {@code tx} with {@code key}, then finalizes it */
+    static void sign(Transaction tx, PrivateKey key)
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        for (int i = 0; i < tx.numInputs(); i++) {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(key);
+            signature.update(tx.getRawDataToSign(i));
+            tx.addSignature(signature.sign(), i);
+        }
+        tx.finalize();
+    }
+}
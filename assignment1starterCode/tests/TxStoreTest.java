@@ -0,0 +1,129 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link TxStore}
+ */
+public class TxStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void looksUpTransactionsAcrossSegmentsAndReopening() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Path dir = folder.newFolder("store").toPath();
+        List<Transaction> stored = new ArrayList<>();
+        try (TxStore store = new TxStore(dir, 4096, 16)) {
+            byte[] prev = new byte[32];
+            for (int epoch = 0; epoch < 100; epoch++) {
+                Transaction[] txs = new Transaction[50];
+                for (int i = 0; i < txs.length; i++) {
+                    txs[i] = tx(prev, i, epoch + i, alice);
+                    prev = txs[i].getHash();
+                }
+                store.append(txs);
+                stored.addAll(Arrays.asList(txs));
+            }
+            store.append(new Transaction[]{stored.get(0)});
+
+            assertEquals(5000, store.size());
+            assertTrue(store.getSegmentCount() > 1);
+            assertEquals(16, store.getCachedCount());
+            assertDecodedEquals(stored.get(0), store.get(stored.get(0).getHash()));
+            assertNull(store.get(new byte[32]));
+        }
+
+        try (TxStore store = new TxStore(dir, 4096, 16)) {
+            assertEquals(5000, store.size());
+            for (Transaction tx : stored) {
+                assertDecodedEquals(tx, store.get(tx.getHash()));
+            }
+            assertFalse(store.contains(new byte[32]));
+        }
+    }
+
+    @Test
+    public void reindexesAndCutsTornRecordOnOpen() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Path dir = folder.newFolder("store").toPath();
+        Transaction a = tx(new byte[32], 0, 1, alice);
+        Transaction b = tx(a.getHash(), 0, 2, alice);
+        try (TxStore store = new TxStore(dir)) {
+            store.append(new Transaction[]{a, b});
+        }
+        Files.delete(dir.resolve("index.dat"));
+        Path segment = dir.resolve("segment-00000000.dat");
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (TxStore store = new TxStore(dir)) {
+            assertEquals(1, store.size());
+            assertDecodedEquals(a, store.get(a.getHash()));
+            assertFalse(store.contains(b.getHash()));
+            store.append(new Transaction[]{b});
+        }
+        try (TxStore store = new TxStore(dir)) {
+            assertEquals(2, store.size());
+            assertNotNull(store.get(b.getHash()));
+        }
+    }
+
+    /** Checks that {@code actual} was decoded to the same transaction as {@code expected} */
+    @Test
+    public void cacheKeepsItsOwnCopyOfLookedUpHashes() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Path dir = folder.newFolder("store").toPath();
+        Transaction a = tx(new byte[32], 0, 1, alice);
+        try (TxStore store = new TxStore(dir)) {
+            store.append(new Transaction[]{a});
+        }
+
+        try (TxStore store = new TxStore(dir)) {
+            byte[] hash = a.getHash().clone();
+            assertDecodedEquals(a, store.get(hash));
+            hash[0] ^= 1;
+
+            assertNull(store.get(hash));
+            assertDecodedEquals(a, store.get(a.getHash()));
+            assertEquals(1, store.getCachedCount());
+        }
+    }
+
+    private static void assertDecodedEquals(Transaction expected, Transaction actual) {
+        assertArrayEquals(expected.getHash(), actual.getHash());
+        assertArrayEquals(expected.getRawTx(), actual.getRawTx());
+        assertEquals(expected.numInputs(), actual.numInputs());
+        for (int i = 0; i < expected.numInputs(); i++) {
+            assertArrayEquals(expected.getInput(i).signature, actual.getInput(i).signature);
+        }
+    }
+
+    private static Transaction tx(byte[] prevTxHash, int index, double value, KeyPair owner) {
+        Transaction tx = new Transaction();
+        tx.addInput(prevTxHash, index);
+        tx.addSignature(new byte[]{(byte) index, 1, 2}, 0);
+        tx.addOutput(value, owner.getPublic());
+        tx.finalize();
+        return tx;
+    }
+}
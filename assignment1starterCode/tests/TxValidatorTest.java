@@ -0,0 +1,56 @@
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link TxValidator}: rules run cheapest first and rejections are counted per rule
+ */
+public class TxValidatorTest {
+
+    @Test
+    public void cheapRulesRejectBeforeSignatures() throws NoSuchAlgorithmException {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Transaction coinbase = TestTransactions.coinbase(alice, 10);
+        UTXOPool pool = TestTransactions.poolOf(coinbase);
+
+        // unsigned, so only the signature rule could reject it if it ran first
+        Transaction negative = new Transaction();
+        negative.addInput(coinbase.getHash(), 0);
+        negative.addOutput(-1, alice.getPublic());
+
+        Transaction duplicate = new Transaction();
+        duplicate.addInput(coinbase.getHash(), 0);
+        duplicate.addInput(coinbase.getHash(), 0);
+        duplicate.addOutput(1, alice.getPublic());
+
+        Transaction overspend = new Transaction();
+        overspend.addInput(coinbase.getHash(), 0);
+        overspend.addOutput(11, alice.getPublic());
+
+        Transaction unsigned = new Transaction();
+        unsigned.addInput(coinbase.getHash(), 0);
+        unsigned.addOutput(5, alice.getPublic());
+
+        TxValidator validator = new TxValidator();
+        ValidationResult result = validator.validate(negative, pool);
+        assertEquals(ValidationRule.NEGATIVE_OUTPUT, result.getReason());
+        assertEquals(0, result.getIndex());
+        assertEquals(ValidationRule.DUPLICATE_INPUT, validator.validate(duplicate, pool).getReason());
+        assertEquals(ValidationRule.INSUFFICIENT_VALUE, validator.validate(overspend, pool).getReason());
+        assertEquals(ValidationRule.SIGNATURE, validator.validate(unsigned, pool).getReason());
+        assertTrue(validator.validate(unsigned, pool, EnumSet.of(
+                ValidationRule.UNKNOWN_INPUT, ValidationRule.INSUFFICIENT_VALUE)).isValid());
+
+        assertEquals(1, validator.getRejectCount(ValidationRule.NEGATIVE_OUTPUT));
+        assertEquals(1, validator.getRejectCount(ValidationRule.DUPLICATE_INPUT));
+        assertEquals(1, validator.getRejectCount(ValidationRule.INSUFFICIENT_VALUE));
+        assertEquals(1, validator.getRejectCount(ValidationRule.SIGNATURE));
+        assertEquals(0, validator.getRejectCount(ValidationRule.UNKNOWN_INPUT));
+    }
+}
@@ -0,0 +1,61 @@
+import org.junit.Test;
+
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link UTXOPool#getStats()}
+ */
+public class UTXOPoolStatsTest {
+
+    @Test
+    public void statsTrackOccupancyAndCounters() throws NoSuchAlgorithmException {
+        PublicKey address = KeyPairGenerator.getInstance("RSA").generateKeyPair().getPublic();
+        Transaction tx = new Transaction();
+        for (int i = 0; i < 100; i++) {
+            tx.addOutput(i, address);
+        }
+        tx.finalize();
+
+        UTXOPool pool = new UTXOPool();
+        assertEquals(0, pool.getStats().getCapacity());
+
+        for (int i = 0; i < 100; i++) {
+            pool.addUTXO(new UTXO(tx.getHash(), i), tx.getOutput(i));
+        }
+        pool.addUTXO(new UTXO(tx.getHash(), 0), tx.getOutput(0));
+        pool.removeUTXO(new UTXO(tx.getHash(), 99));
+        pool.removeUTXO(new UTXO(tx.getHash(), 99));
+        pool.getTxOutput(new UTXO(tx.getHash(), 1));
+        pool.contains(new UTXO(tx.getHash(), 99));
+
+        UTXOPoolStats stats = pool.getStats();
+        assertEquals(99, stats.getSize());
+        assertEquals(256, stats.getCapacity());
+        assertEquals(100, stats.getAdds());
+        assertEquals(1, stats.getRemoves());
+        assertEquals(2, stats.getLookups());
+        assertEquals(1, stats.getMisses());
+        assertTrue(stats.getLoadFactor() <= 0.75);
+        assertTrue(stats.getEstimatedBytesPerEntry() > 0);
+
+        long buckets = 0, entries = 0;
+        for (long count : stats.getBucketHistogram()) {
+            buckets += count;
+        }
+        for (long count : stats.getProbeHistogram()) {
+            entries += count;
+        }
+        assertEquals(stats.getCapacity(), buckets);
+        assertEquals(stats.getSize(), entries);
+        assertTrue(stats.getLargestBucket() >= 1);
+
+        UTXOPoolStats copy = new UTXOPool(pool).getStats();
+        assertEquals(99, copy.getSize());
+        assertEquals(0, copy.getAdds());
+    }
+}
@@ -1,22 +1,37 @@
 // Copyright (C) 2016-2017 Enrique Albertos
 // Distributed under the GNU GPL v2 software license
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
+import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.SecureRandom;
 import java.security.Signature;
 import java.security.SignatureException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
 
 /**
  * UtxoTestSet represent a random created data test set for testing isValid and txHandler methods.
@@ -39,6 +54,11 @@ import java.util.concurrent.ThreadLocalRandom;
  * 	.build();
  * </pre>
  *
+ * A set is reproducible: the same settings and {@link UtxoTestSetBuilder#setSeed(long) seed}
+ * give the same pool and transactions, byte for byte. Key pairs are derived from their index
+ * alone and cached on disk, since generating them is slow, and transactions are signed in
+ * parallel once all of them are drawn.
+ *
  * @author ealbertos
  *
  */
@@ -68,6 +88,14 @@ public class UtxoTestSet {
         return new UTXOPool(utxoPool);
     }
 
+    /**
+     * Seed the set was drawn from; building again with it gives the same set
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
 
     /**
      * Builder for UtxoTestSet
@@ -89,6 +117,9 @@ public class UtxoTestSet {
         private boolean isForceCorruptedSignature = false;
         private boolean isClaimingUtxoSeveralTimes = false;
         private boolean isForceNegativeOutputs = false;
+        private long seed = new Random().nextLong();
+        private int keyBits = DEFAULT_KEY_BITS;
+        private Path keyCache = DEFAULT_KEY_CACHE;
 
         /**
          * Number of different people address in the test set
@@ -234,8 +265,42 @@ public class UtxoTestSet {
             return this;
         }
 
+        /**
+         * Seed of the random choices, random by default
+         * @param seed the seed
+         * @return  this builder
+         */
+        public UtxoTestSetBuilder setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Size of the RSA keys; smaller keys sign faster, for large sets
+         * @param keyBits modulus size in bits, 2048 by default
+         * @return  this builder
+         */
+        public UtxoTestSetBuilder setKeyBits(int keyBits) {
+            this.keyBits = keyBits;
+            return this;
+        }
+
+        /**
+         * Directory the key pairs are cached in, {@code utxotestset-keys} in the temporary
+         * directory by default
+         * @param keyCache the directory, or null to generate the keys on every build
+         * @return  this builder
+         */
+        public UtxoTestSetBuilder setKeyCache(Path keyCache) {
+            this.keyCache = keyCache;
+            return this;
+        }
+
         public UtxoTestSet build() throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
-            return new UtxoTestSet(peopleSize,
+            return new UtxoTestSet(seed,
+                    keyBits,
+                    keyCache,
+                    peopleSize,
                     utxoTxNumber,
                     maxUtxoTxOutput,
                     maxValue,
@@ -254,6 +319,11 @@ public class UtxoTestSet {
 
     }
 
+    private static final int DEFAULT_KEY_BITS = 2048;
+    static final Path DEFAULT_KEY_CACHE =
+            Paths.get(System.getProperty("java.io.tmpdir"), "utxotestset-keys");
+
+    private final long seed;
     private final UTXOPool utxoPool;
     private final List<KeyPair> people;
     private final Map<UTXO, KeyPair> utxoToKeyPair;
@@ -272,12 +342,15 @@ public class UtxoTestSet {
     private final boolean isClaimingUtxoSeveralTimes;
     private final double maxValue;
     private final ValidationLists<Transaction> validationLists;
-    private final ThreadLocalRandom random;
+    private final Random random;
     private final boolean isForceNegativeOutputs;
 
 
     /**
      * Private construct, force the creation of set with the builder
+     * @param seed
+     * @param keyBits
+     * @param keyCache
      * @param peopleSize
      * @param utxoTxNumber
      * @param maxUtxoTxOutput
@@ -296,7 +369,7 @@ public class UtxoTestSet {
      * @throws InvalidKeyException
      * @throws SignatureException
      */
-    private UtxoTestSet(int peopleSize, int utxoTxNumber, int maxUtxoTxOutput, double maxValue, int txNumberPerTest,
+    private UtxoTestSet(long seed, int keyBits, Path keyCache, int peopleSize, int utxoTxNumber, int maxUtxoTxOutput, double maxValue, int txNumberPerTest,
                         int maxInputs, int maxOutputs, double corruptedPercentage, boolean isForceInvalidPrivateKeys,
                         boolean isForceInvalidTotals, boolean isClaimingOutputsNotInPool, boolean isForceCorruptedSignature,
                         boolean isClaimingUtxoSeveralTimes, boolean isForceNegativeOutputs)
@@ -312,13 +385,15 @@ public class UtxoTestSet {
         this.isClaimingUtxoSeveralTimes = isClaimingUtxoSeveralTimes;
         this.isForceNegativeOutputs = isForceNegativeOutputs;
         this.maxValue = maxValue;
-        this.random = ThreadLocalRandom.current();
+        this.seed = seed;
+        this.random = new Random(seed);
 
-        people = createPeopleAddresses(peopleSize);
+        List<KeyPair> keys = loadKeyPairs(keyCache, keyBits, 2 * peopleSize);
+        people = Collections.unmodifiableList(keys.subList(0, peopleSize));
         utxoToKeyPair = new HashMap<>();
         utxoPool = createUtxoPool(people, utxoTxNumber, maxUtxoTxOutput, maxValue, utxoToKeyPair);
 
-        peopleExtra = createPeopleAddresses(peopleSize);
+        peopleExtra = Collections.unmodifiableList(keys.subList(peopleSize, 2 * peopleSize));
         utxoExtraPool = createUtxoPool(peopleExtra, utxoTxNumber, maxUtxoTxOutput, maxValue, utxoToKeyPair);
 
         validationLists = generateTrxWithCorruptedSignaturePercentage();
@@ -345,7 +420,7 @@ public class UtxoTestSet {
             // pick a random public address
             int rIndex = random.nextInt(people.size());
             PublicKey addr = people.get(rIndex).getPublic();
-            double value = random.nextDouble(maxValue);
+            double value = random.nextDouble() * maxValue;
             tx.addOutput(value, addr);
             keyPairAtIndex.put(j, people.get(rIndex));
         }
@@ -363,11 +438,79 @@ public class UtxoTestSet {
         }
     }
 
-    private List<KeyPair> createPeopleAddresses(int peopleSize) throws NoSuchAlgorithmException {
-        final List<KeyPair> people = new ArrayList<>();
-        for (int i = 0; i < peopleSize; i++)
-            people.add(KeyPairGenerator.getInstance("RSA").generateKeyPair());
-        return Collections.unmodifiableList(people);
+    /**
+     * Returns the first {@code count} key pairs of {@code keyBits} bits, reading them from the
+     * cache and generating, in parallel, those missing from it
+     */
+    static synchronized List<KeyPair> loadKeyPairs(Path keyCache, int keyBits, int count) {
+        final List<KeyPair> keys = new ArrayList<>();
+        final Path file = keyCache == null ? null : keyCache.resolve("keys-" + keyBits + ".bin");
+        if (file != null && Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+                KeyFactory factory = KeyFactory.getInstance("RSA");
+                int cached = in.readInt();
+                for (int i = 0; i < cached && i < count; i++) {
+                    PrivateKey privateKey = factory.generatePrivate(new PKCS8EncodedKeySpec(readBytes(in)));
+                    PublicKey publicKey = factory.generatePublic(new X509EncodedKeySpec(readBytes(in)));
+                    keys.add(new KeyPair(publicKey, privateKey));
+                }
+            } catch (IOException | GeneralSecurityException e) {
+                keys.clear();
+            }
+        }
+        if (keys.size() >= count) {
+            return keys;
+        }
+
+        final int from = keys.size();
+        final KeyPair[] generated = new KeyPair[count - from];
+        IntStream.range(0, generated.length).parallel()
+                .forEach(i -> generated[i] = generateKeyPair(keyBits, from + i));
+        Collections.addAll(keys, generated);
+        if (file != null) {
+            try {
+                Files.createDirectories(keyCache);
+                Path temp = Files.createTempFile(keyCache, "keys", ".tmp");
+                try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+                    out.writeInt(keys.size());
+                    for (KeyPair key : keys) {
+                        writeBytes(out, key.getPrivate().getEncoded());
+                        writeBytes(out, key.getPublic().getEncoded());
+                    }
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // the keys are still usable, only the next build will generate them again
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Generates key pair {@code index}, derived from the index alone so that it is the same on
+     * every run
+     */
+    private static KeyPair generateKeyPair(int keyBits, int index) {
+        try {
+            SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
+            random.setSeed(("utxotestset-key-" + index).getBytes(StandardCharsets.UTF_8));
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(keyBits, random);
+            return generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
     }
 
     private PublicKey getAddress(int rIndex) {
@@ -387,13 +530,43 @@ public class UtxoTestSet {
     }
 
 
-    private byte[] sign(PrivateKey privateKey, byte[] rawDataToSign) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+    private static byte[] sign(PrivateKey privateKey, byte[] rawDataToSign) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
         Signature sig = Signature.getInstance("SHA256withRSA");
         sig.initSign(privateKey);
         sig.update(rawDataToSign);
         return sig.sign();
     }
 
+    /**
+     * Signature of one input, made after every transaction is drawn so that they can be made in
+     * parallel
+     */
+    private static final class SigningJob {
+        private final Transaction tx;
+        private final int index;
+        private final PrivateKey privateKey;
+        private final boolean corruptData;
+
+        SigningJob(Transaction tx, int index, PrivateKey privateKey, boolean corruptData) {
+            this.tx = tx;
+            this.index = index;
+            this.privateKey = privateKey;
+            this.corruptData = corruptData;
+        }
+
+        void sign() {
+            byte[] rawData = tx.getRawDataToSign(index);
+            if (corruptData) {
+                rawData[0]++;
+            }
+            try {
+                tx.addSignature(UtxoTestSet.sign(privateKey, rawData), index);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
 
 
     private ValidationLists<Transaction> generateTrxWithCorruptedSignaturePercentage()
@@ -403,7 +576,9 @@ public class UtxoTestSet {
         //final UTXOPool utxoPool = new UTXOPool();
         final Map<Integer, UTXO> utxoAtIndex = new HashMap<>();
         final Set<UTXO> utxosSeen = new HashSet<>();
-        final Set<UTXO> utxosToRepeat = new HashSet<>();
+        final Set<UTXO> utxosToRepeat = new LinkedHashSet<>();
+        final List<SigningJob> signingJobs = new ArrayList<>();
+        final List<Transaction> all = new ArrayList<>();
 
         // create validationLists
         final List<Transaction> valid = new ArrayList<>();
@@ -412,6 +587,7 @@ public class UtxoTestSet {
         for (int i = 0; i < txNumberPerTest; i++) {
             boolean corrupted = false;
             Transaction tx = new Transaction();
+            utxosToRepeat.clear();
 
             final int nInputs = random.nextInt(maxInputs) + 1;
             final int nOutputs = random.nextInt(maxOutputs) + 1;
@@ -454,9 +630,9 @@ public class UtxoTestSet {
                 double value;
                 if ((isForceInvalidTotals && isRandomSelection())
                         || outputValue > inputValue) {
-                    value = random.nextDouble(maxValue);
+                    value = random.nextDouble() * maxValue;
                 } else {
-                    value = random.nextDouble(inputValue - outputValue);
+                    value = random.nextDouble() * (inputValue - outputValue);
                     if (isForceNegativeOutputs && isRandomSelection()) {
                         value = -value;
                         corrupted = true;
@@ -468,10 +644,10 @@ public class UtxoTestSet {
             }
             corrupted |= (outputValue > inputValue);
 
-            // sign transaction
+            // choose how to sign transaction, signatures are made once all transactions are drawn
             for (int j = 0; j < nInputs + utxosToRepeat.size(); j++) {
-                byte[] rawData = tx.getRawDataToSign(j);
                 PrivateKey privateKey = getPrivate(utxoAtIndex.get(j));
+                boolean corruptData = false;
                 if (isRandomSelection()) {
                     if (isForceInvalidPrivateKeys && isRandomSelection()) {
                         // corrupt private key, change for other people
@@ -480,14 +656,14 @@ public class UtxoTestSet {
                         corrupted = true;
                     } else if (isForceCorruptedSignature && isRandomSelection()) {
                         // corrupt data
-                        rawData[0]++;
+                        corruptData = true;
                         corrupted = true;
                     }
 
                 }
-                tx.addSignature(sign(privateKey, rawData), j);
+                signingJobs.add(new SigningJob(tx, j, privateKey, corruptData));
             }
-            tx.finalize();
+            all.add(tx);
 
             if (corrupted){
                 invalid.add(tx);
@@ -497,6 +673,9 @@ public class UtxoTestSet {
 
         }
 
+        signingJobs.parallelStream().forEach(SigningJob::sign);
+        all.parallelStream().forEach(Transaction::finalize);
+
         return ValidationLists.builder(Transaction.class)
                 .setValid(valid)
                 .setInvalid(invalid)
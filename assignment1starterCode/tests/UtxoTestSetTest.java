@@ -0,0 +1,77 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link UtxoTestSet} itself
+ */
+public class UtxoTestSetTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sameSeedBuildsSameSet() throws Exception {
+        Path keys = folder.newFolder("keys").toPath();
+        UtxoTestSet first = build(7L, keys);
+        assertTrue(Files.exists(keys.resolve("keys-512.bin")));
+        UtxoTestSet second = build(7L, keys);
+        UtxoTestSet uncached = build(7L, null);
+        UtxoTestSet other = build(8L, keys);
+
+        List<Transaction> expected = first.getValidationLists().allElements();
+        assertEquals(200, expected.size());
+        for (UtxoTestSet set : new UtxoTestSet[]{second, uncached}) {
+            List<Transaction> actual = set.getValidationLists().allElements();
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(expected.get(i).getRawTx(), actual.get(i).getRawTx());
+                assertEquals(first.getValidationLists().isValid(expected.get(i)),
+                        set.getValidationLists().isValid(actual.get(i)));
+            }
+        }
+        assertFalse(Arrays.equals(expected.get(0).getHash(),
+                other.getValidationLists().allElements().get(0).getHash()));
+        assertEquals(7L, first.getSeed());
+    }
+
+    @Test
+    public void oracleMatchesHandler() throws Exception {
+        UtxoTestSet set = build(3L, folder.newFolder("keys").toPath());
+        TxHandler handler = new TxHandler(set.getUtxoPool());
+        ValidationLists<Transaction> lists = set.getValidationLists();
+        for (Transaction tx : lists.allElements()) {
+            assertEquals(lists.isValid(tx), handler.isValidTx(tx));
+        }
+    }
+
+    private static UtxoTestSet build(long seed, Path keys) throws Exception {
+        return UtxoTestSet.builder()
+                .setSeed(seed)
+                .setKeyBits(512)
+                .setKeyCache(keys)
+                .setPeopleSize(4)
+                .setUtxoTxNumber(50)
+                .setMaxUtxoTxOutput(20)
+                .setMaxValue(200)
+                .setTxPerTest(200)
+                .setMaxInput(3)
+                .setMaxOutput(3)
+                .setCorruptedPercentage(0.3)
+                .setInvalidPrivateKeys(true)
+                .setForceCorruptedSignature(true)
+                .setClaimingOutputsNotInPool(true)
+                .setClaimingUtxoSeveralTimes(true)
+                .build();
+    }
+}
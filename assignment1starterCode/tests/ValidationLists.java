@@ -3,11 +3,14 @@
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Validation Lists is a container for several lists of elements calssified in:
  * Valid, Invalid or Conflicted
+ * Membership checks go through hash sets, so that checking every element of a large list stays linear
  * @author ealbertos
  *
  * @param <E> Type of the elements
@@ -16,20 +19,28 @@ public class ValidationLists<E> {
     private final List<E> valid;
     private final List<E> invalid;
     private final List<E> conflicted;
+    private final Set<E> validSet;
+    private final Set<E> invalidSet;
 
     private ValidationLists(final List<E> valid, final List<E> invalid, final List<E> conflicted) {
         super();
         this.valid = Collections.unmodifiableList( new ArrayList<>(valid));
         this.invalid = Collections.unmodifiableList(new ArrayList<>(invalid));
         this.conflicted = Collections.unmodifiableList(new ArrayList<>(conflicted));
+        this.validSet = new HashSet<>(valid);
+        this.invalidSet = new HashSet<>(invalid);
     }
 
     public ValidationLists(ValidationLists<E> original) {
-        this(original.valid, original.invalid, original.conflicted);
+        this.valid = original.valid;
+        this.invalid = original.invalid;
+        this.conflicted = original.conflicted;
+        this.validSet = original.validSet;
+        this.invalidSet = original.invalidSet;
     }
 
     public boolean isValid(final E e) {
-        return valid.contains(e) && !invalid.contains(e);
+        return validSet.contains(e) && !invalidSet.contains(e);
     }
 
     public List<E> allElements() {
@@ -0,0 +1,59 @@
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link ValidationService}: outcomes follow submission order per outpoint
+ */
+public class ValidationServiceTest {
+
+    @Test
+    public void conflictingSubmissionsResolveInSubmissionOrder() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        double[] values = new double[20];
+        Arrays.fill(values, 10);
+        Transaction coinbase = TestTransactions.coinbase(alice, values);
+        UTXOPool pool = TestTransactions.poolOf(coinbase);
+
+        List<Transaction> firsts = new ArrayList<>();
+        List<Transaction> seconds = new ArrayList<>();
+        List<Transaction> children = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Transaction first = TestTransactions.spend(coinbase, i, 9, alice);
+            firsts.add(first);
+            seconds.add(TestTransactions.spend(coinbase, i, 8, alice));
+            children.add(TestTransactions.spend(first, 0, 7, alice));
+        }
+
+        try (ValidationService service = new ValidationService(pool)) {
+            List<CompletableFuture<ValidationOutcome>> outcomes = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                outcomes.add(service.submit(firsts.get(i)));
+                outcomes.add(service.submit(seconds.get(i)));
+                outcomes.add(service.submit(children.get(i)));
+            }
+            for (int i = 0; i < 20; i++) {
+                assertTrue(outcomes.get(3 * i).get().isAccepted());
+                ValidationOutcome second = outcomes.get(3 * i + 1).get();
+                assertFalse(second.isAccepted());
+                assertEquals(ValidationRule.UNKNOWN_INPUT, second.getResult().getReason());
+                assertEquals(3 * i + 1, second.getSequence());
+                assertTrue(outcomes.get(3 * i + 2).get().isAccepted());
+            }
+            UTXOPool after = service.getUTXOPool();
+            for (int i = 0; i < 20; i++) {
+                assertFalse(after.contains(new UTXO(coinbase.getHash(), i)));
+                assertTrue(after.contains(new UTXO(children.get(i).getHash(), 0)));
+            }
+        }
+    }
+}
@@ -0,0 +1,551 @@
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+/**
+ * Generates a ledger of chained traffic in the format of {@link LedgerWriter}, to stress the
+ * ordering logic of {@code handleTxs} and the I/O paths of {@link LedgerReader} at scale, where
+ * {@link UtxoTestSet} only makes flat transactions spending its initial pool.
+ *
+ * Each epoch draws its transactions by depth: those of depth 0 spend outputs of earlier epochs,
+ * and a transaction of depth d spends an output made in the same epoch by one of depth d - 1, so
+ * a {@link Builder#setChainShare chained share} of the epoch forms chains up to the
+ * {@link Builder#setMaxChainDepth maximum depth}. Input and output counts follow truncated
+ * geometric distributions, so most transactions are small payments while a few are large
+ * consolidations or payouts. A {@link Builder#setConflictRate share} of transactions is
+ * contested by a second, validly signed transaction spending its first input; neither
+ * member of a contested pair is spent from later, so every other transaction stays valid
+ * whichever member a handler keeps. The epoch is then written in the chosen {@link Order}.
+ *
+ * Only the outputs still unspent are held in memory; epochs are signed in parallel, one depth at
+ * a time, and written as soon as they are complete. The same settings and seed give the same
+ * file, byte for byte.
+ *
+ * Usage: {@code java -cp benchmarks/target/benchmarks.jar WorkloadGenerator <file> [--option
+ * value]...}, the options being the setters of {@link Builder} without their prefix, e.g.
+ * {@code --txs-per-epoch 100000 --order REVERSED}.
+ */
+public class WorkloadGenerator {
+
+    /** Order the transactions of an epoch are written in */
+    public enum Order {
+        /** every transaction after those it spends from */
+        TOPOLOGICAL,
+        /** every transaction before those it spends from */
+        REVERSED,
+        /** uniformly shuffled */
+        SHUFFLED
+    }
+
+    /** Number of outputs of each genesis transaction */
+    private static final int GENESIS_TX_OUTPUTS = 100;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Settings of a workload; the defaults give ten epochs of 10000 transactions, about a third
+     * of them chained
+     */
+    public static class Builder {
+        private long seed = 1L;
+        private int keyBits = 2048;
+        private Path keyCache = UtxoTestSet.DEFAULT_KEY_CACHE;
+        private int people = 100;
+        private int genesisOutputs = 100000;
+        private double maxValue = 200;
+        private int epochs = 10;
+        private int txsPerEpoch = 10000;
+        private double chainShare = 0.3;
+        private int maxChainDepth = 10;
+        private double meanFanIn = 1.5;
+        private int maxFanIn = 20;
+        private double meanFanOut = 2;
+        private int maxFanOut = 20;
+        private double conflictRate = 0.01;
+        private double maxFeeShare = 0.01;
+        private Order order = Order.SHUFFLED;
+
+        public Builder setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /** Size of the RSA keys of the addresses */
+        public Builder setKeyBits(int keyBits) {
+            this.keyBits = keyBits;
+            return this;
+        }
+
+        /** Directory the key pairs are cached in, shared with {@link UtxoTestSet}; null for none */
+        public Builder setKeyCache(Path keyCache) {
+            this.keyCache = keyCache;
+            return this;
+        }
+
+        /** Number of addresses */
+        public Builder setPeople(int people) {
+            this.people = people;
+            return this;
+        }
+
+        /** Number of outputs in the genesis pool */
+        public Builder setGenesisOutputs(int genesisOutputs) {
+            this.genesisOutputs = genesisOutputs;
+            return this;
+        }
+
+        /** Largest value of a genesis output */
+        public Builder setMaxValue(double maxValue) {
+            this.maxValue = maxValue;
+            return this;
+        }
+
+        public Builder setEpochs(int epochs) {
+            this.epochs = epochs;
+            return this;
+        }
+
+        /** Number of transactions per epoch, contested ones included */
+        public Builder setTxsPerEpoch(int txsPerEpoch) {
+            this.txsPerEpoch = txsPerEpoch;
+            return this;
+        }
+
+        /** Share of the transactions, 0 to 1, spending an output made in the same epoch */
+        public Builder setChainShare(double chainShare) {
+            this.chainShare = share(chainShare);
+            return this;
+        }
+
+        /** Depth of the longest in-epoch chain; chained transactions are spread evenly over depths */
+        public Builder setMaxChainDepth(int maxChainDepth) {
+            this.maxChainDepth = maxChainDepth;
+            return this;
+        }
+
+        /** Mean number of inputs per transaction, at least 1 */
+        public Builder setMeanFanIn(double meanFanIn) {
+            this.meanFanIn = meanFanIn;
+            return this;
+        }
+
+        public Builder setMaxFanIn(int maxFanIn) {
+            this.maxFanIn = maxFanIn;
+            return this;
+        }
+
+        /** Mean number of outputs per transaction, at least 1 */
+        public Builder setMeanFanOut(double meanFanOut) {
+            this.meanFanOut = meanFanOut;
+            return this;
+        }
+
+        public Builder setMaxFanOut(int maxFanOut) {
+            this.maxFanOut = maxFanOut;
+            return this;
+        }
+
+        /** Share of the transactions, 0 to 1, followed by a double spend of their first input */
+        public Builder setConflictRate(double conflictRate) {
+            this.conflictRate = share(conflictRate);
+            return this;
+        }
+
+        /** Largest share, 0 to 1, of the input value a transaction pays as fee */
+        public Builder setMaxFeeShare(double maxFeeShare) {
+            this.maxFeeShare = share(maxFeeShare);
+            return this;
+        }
+
+        public Builder setOrder(Order order) {
+            this.order = order;
+            return this;
+        }
+
+        public WorkloadGenerator build() {
+            if (people < 1 || genesisOutputs < 1 || epochs < 0 || txsPerEpoch < 0
+                    || maxChainDepth < 0 || meanFanIn < 1 || maxFanIn < 1 || meanFanOut < 1
+                    || maxFanOut < 1) {
+                throw new IllegalArgumentException("invalid workload settings");
+            }
+            return new WorkloadGenerator(this);
+        }
+
+        private static double share(double value) {
+            if (value < 0 || value > 1) {
+                throw new IllegalArgumentException("share must be in the range (0-1)");
+            }
+            return value;
+        }
+    }
+
+    /** Counts of a generated workload */
+    public static class Summary {
+        private long transactions;
+        private long inputs;
+        private long chained;
+        private long contestedPairs;
+        private int deepestChain;
+
+        /** @return the number of transactions written, genesis excluded */
+        public long getTransactions() {
+            return transactions;
+        }
+
+        /** @return the number of inputs of the transactions written */
+        public long getInputs() {
+            return inputs;
+        }
+
+        /** @return the number of transactions spending an output made in the same epoch */
+        public long getChained() {
+            return chained;
+        }
+
+        /** @return the number of pairs of transactions spending the same output */
+        public long getContestedPairs() {
+            return contestedPairs;
+        }
+
+        /** @return the depth of the longest in-epoch chain */
+        public int getDeepestChain() {
+            return deepestChain;
+        }
+
+        /** @return the number of transactions a correct handler accepts */
+        public long getExpectedAccepted() {
+            return transactions - contestedPairs;
+        }
+
+        @Override
+        public String toString() {
+            return transactions + " transactions, " + inputs + " inputs, " + chained
+                    + " chained up to depth " + deepestChain + ", " + contestedPairs
+                    + " contested pairs";
+        }
+    }
+
+    private final Builder settings;
+    private final Random random;
+    private final List<KeyPair> people;
+    /** Outputs left to spend, from the genesis pool and earlier epochs */
+    private final List<Coin> pool = new ArrayList<>();
+
+    private WorkloadGenerator(Builder settings) {
+        this.settings = settings;
+        this.random = new Random(settings.seed);
+        this.people = UtxoTestSet.loadKeyPairs(settings.keyCache, settings.keyBits,
+                settings.people);
+    }
+
+    /** Writes the genesis pool and every epoch to {@code file} */
+    public Summary generate(Path file) throws IOException {
+        try (LedgerWriter writer = new LedgerWriter(file)) {
+            return generate(writer);
+        }
+    }
+
+    /** Writes the genesis pool and every epoch to {@code writer}, which is left open */
+    public Summary generate(LedgerWriter writer) throws IOException {
+        for (int made = 0; made < settings.genesisOutputs; made += GENESIS_TX_OUTPUTS) {
+            Transaction coinbase = new Transaction();
+            int[] owners = new int[Math.min(GENESIS_TX_OUTPUTS, settings.genesisOutputs - made)];
+            for (int i = 0; i < owners.length; i++) {
+                owners[i] = random.nextInt(people.size());
+                double value = (1 - random.nextDouble()) * settings.maxValue;
+                coinbase.addOutput(value, people.get(owners[i]).getPublic());
+            }
+            coinbase.finalize();
+            for (int i = 0; i < owners.length; i++) {
+                UTXO utxo = new UTXO(coinbase.getHash(), i);
+                writer.writeGenesisOutput(utxo, coinbase.getOutput(i));
+                pool.add(new Coin(utxo, coinbase.getOutput(i).value, owners[i]));
+            }
+        }
+
+        Summary summary = new Summary();
+        for (int epoch = 0; epoch < settings.epochs; epoch++) {
+            List<Transaction> txs = nextEpoch(summary);
+            if (settings.order == Order.REVERSED) {
+                Collections.reverse(txs);
+            } else if (settings.order == Order.SHUFFLED) {
+                Collections.shuffle(txs, random);
+            }
+            for (Transaction tx : txs) {
+                summary.inputs += tx.numInputs();
+                writer.writeTransaction(tx);
+            }
+            writer.endEpoch();
+            summary.transactions += txs.size();
+        }
+        return summary;
+    }
+
+    /** @return the transactions of one epoch, in topological order */
+    private List<Transaction> nextEpoch(Summary summary) {
+        int[] perDepth = new int[settings.maxChainDepth + 1];
+        int chained = (int) Math.round(settings.txsPerEpoch * settings.chainShare);
+        perDepth[0] = settings.txsPerEpoch - (settings.maxChainDepth == 0 ? 0 : chained);
+        for (int d = 1; d <= settings.maxChainDepth; d++) {
+            perDepth[d] = chained / settings.maxChainDepth
+                    + (d <= chained % settings.maxChainDepth ? 1 : 0);
+        }
+
+        List<Transaction> epoch = new ArrayList<>(settings.txsPerEpoch);
+        // outputs made in this epoch, by depth of their transaction; spent from after the epoch
+        List<List<Coin>> created = new ArrayList<>();
+        int left = 0;
+        for (int d = 0; d <= settings.maxChainDepth; d++) {
+            List<Coin> parents = d == 0 ? null : created.get(d - 1);
+            Batch batch = new Batch();
+            for (int remaining = perDepth[d]; remaining > 0; ) {
+                if (parents != null && parents.isEmpty()) {
+                    // the depth above made fewer outputs than this one spends
+                    left += remaining;
+                    break;
+                }
+                remaining -= draw(batch, parents, remaining);
+            }
+            created.add(batch.sign());
+            epoch.addAll(batch.txs);
+            summary.contestedPairs += batch.contestedPairs;
+            if (d > 0 && !batch.txs.isEmpty()) {
+                summary.chained += batch.txs.size();
+                summary.deepestChain = Math.max(summary.deepestChain, d);
+            }
+        }
+        if (left > 0) {
+            Batch batch = new Batch();
+            while (left > 0) {
+                left -= draw(batch, null, left);
+            }
+            created.add(batch.sign());
+            epoch.addAll(batch.txs);
+            summary.contestedPairs += batch.contestedPairs;
+        }
+        for (List<Coin> coins : created) {
+            pool.addAll(coins);
+        }
+        return epoch;
+    }
+
+    /**
+     * Draws a transaction into {@code batch}, its first input from {@code parents} if not null and
+     * the others from the pool, followed by a contested double spend of its first input if there
+     * is room for it
+     *
+     * @return the number of transactions drawn
+     */
+    private int draw(Batch batch, List<Coin> parents, int room) {
+        int fanIn = geometric(settings.meanFanIn, settings.maxFanIn);
+        List<Coin> inputs = new ArrayList<>(fanIn);
+        if (parents != null) {
+            inputs.add(take(parents));
+        }
+        while (inputs.size() < fanIn && !pool.isEmpty()) {
+            inputs.add(take(pool));
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalStateException("the workload ran out of outputs to spend");
+        }
+        boolean contested = room > 1 && random.nextDouble() < settings.conflictRate;
+        batch.add(inputs, geometric(settings.meanFanOut, settings.maxFanOut), contested);
+        if (!contested) {
+            return 1;
+        }
+        batch.add(Collections.singletonList(inputs.get(0)), 1, true);
+        batch.contestedPairs++;
+        return 2;
+    }
+
+    /** @return a value of 1 to {@code max}, geometrically distributed with mean {@code mean} */
+    private int geometric(double mean, int max) {
+        if (mean <= 1) {
+            return 1;
+        }
+        double draw = Math.log(1 - random.nextDouble()) / Math.log(1 - 1 / mean);
+        return (int) Math.min(max, 1 + (long) draw);
+    }
+
+    /** @return a random coin of {@code coins}, removed from it */
+    private Coin take(List<Coin> coins) {
+        int index = random.nextInt(coins.size());
+        Coin coin = coins.get(index);
+        coins.set(index, coins.get(coins.size() - 1));
+        coins.remove(coins.size() - 1);
+        return coin;
+    }
+
+    /** Transactions of one depth, drawn in sequence and then signed in parallel */
+    private final class Batch {
+        final List<Transaction> txs = new ArrayList<>();
+        final List<List<Coin>> spent = new ArrayList<>();
+        final List<int[]> owners = new ArrayList<>();
+        final List<Boolean> contested = new ArrayList<>();
+        int contestedPairs;
+
+        void add(List<Coin> inputs, int fanOut, boolean isContested) {
+            Transaction tx = new Transaction();
+            double total = 0;
+            for (Coin coin : inputs) {
+                tx.addInput(coin.utxo.getTxHash(), coin.utxo.getIndex());
+                total += coin.value;
+            }
+            double available = total * (1 - random.nextDouble() * settings.maxFeeShare);
+            double[] weights = new double[fanOut];
+            double weightSum = 0;
+            for (int i = 0; i < fanOut; i++) {
+                weights[i] = 1 - random.nextDouble();
+                weightSum += weights[i];
+            }
+            int[] outputOwners = new int[fanOut];
+            double[] values = new double[fanOut];
+            for (int i = 0; i < fanOut; i++) {
+                outputOwners[i] = random.nextInt(people.size());
+                values[i] = available * weights[i] / weightSum;
+            }
+            // handlers add up the values in order; keep rounding from exceeding the inputs
+            while (sum(values) > total) {
+                for (int i = 0; i < fanOut; i++) {
+                    values[i] *= 1 - 1e-9;
+                }
+            }
+            for (int i = 0; i < fanOut; i++) {
+                tx.addOutput(values[i], people.get(outputOwners[i]).getPublic());
+            }
+            txs.add(tx);
+            spent.add(inputs);
+            owners.add(outputOwners);
+            contested.add(isContested);
+        }
+
+        /**
+         * Signs and hashes every transaction
+         *
+         * @return the outputs of the uncontested transactions
+         */
+        List<Coin> sign() {
+            IntStream.range(0, txs.size()).parallel().forEach(t -> {
+                Transaction tx = txs.get(t);
+                List<Coin> inputs = spent.get(t);
+                for (int i = 0; i < inputs.size(); i++) {
+                    tx.addSignature(signature(people.get(inputs.get(i).owner).getPrivate(),
+                            tx.getRawDataToSign(i)), i);
+                }
+                tx.finalize();
+            });
+            List<Coin> outputs = new ArrayList<>();
+            for (int t = 0; t < txs.size(); t++) {
+                if (contested.get(t)) {
+                    continue;
+                }
+                Transaction tx = txs.get(t);
+                for (int i = 0; i < tx.numOutputs(); i++) {
+                    outputs.add(new Coin(new UTXO(tx.getHash(), i), tx.getOutput(i).value,
+                            owners.get(t)[i]));
+                }
+            }
+            return outputs;
+        }
+    }
+
+    private static double sum(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    private static byte[] signature(PrivateKey key, byte[] message) {
+        try {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(key);
+            signature.update(message);
+            return signature.sign();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** An output left to spend and the index of its owner */
+    private static final class Coin {
+        final UTXO utxo;
+        final double value;
+        final int owner;
+
+        Coin(UTXO utxo, double value, int owner) {
+            this.utxo = utxo;
+            this.value = value;
+            this.owner = owner;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length % 2 != 1) {
+            System.err.println("usage: java WorkloadGenerator <file> [--option value]...");
+            System.exit(2);
+        }
+        Builder builder = builder();
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 1; i < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        Map<String, Method> setters = new HashMap<>();
+        for (Method method : Builder.class.getMethods()) {
+            if (method.getName().startsWith("set") && method.getParameterCount() == 1) {
+                String name = method.getName().substring(3)
+                        .replaceAll("([a-z])([A-Z])", "$1-$2").toLowerCase(Locale.ROOT);
+                setters.put("--" + name, method);
+            }
+        }
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            Method setter = setters.get(option.getKey());
+            if (setter == null) {
+                System.err.println("unknown option " + option.getKey() + ", options "
+                        + new TreeSet<>(setters.keySet()));
+                System.exit(2);
+            }
+            setter.invoke(builder, parse(setter.getParameterTypes()[0], option.getValue()));
+        }
+
+        Path file = Paths.get(args[0]);
+        long start = System.nanoTime();
+        Summary summary = builder.build().generate(file);
+        System.out.printf(Locale.ROOT, "%s: %s, %d bytes in %.1f s%n", file, summary,
+                Files.size(file), (System.nanoTime() - start) / 1e9);
+    }
+
+    private static Object parse(Class<?> type, String value) {
+        if (type == long.class) {
+            return Long.parseLong(value);
+        } else if (type == int.class) {
+            return Integer.parseInt(value);
+        } else if (type == double.class) {
+            return Double.parseDouble(value);
+        } else if (type == Order.class) {
+            return Order.valueOf(value.toUpperCase(Locale.ROOT));
+        } else if (type == Path.class) {
+            return value.isEmpty() ? null : Paths.get(value);
+        }
+        throw new IllegalArgumentException("unsupported option type " + type);
+    }
+}
@@ -0,0 +1,108 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link WorkloadGenerator}
+ */
+public class WorkloadGeneratorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void handlerAcceptsAllButOneOfEachContestedPair() throws Exception {
+        Path keys = folder.newFolder("keys").toPath();
+        Path ledger = folder.newFile("reversed.bin").toPath();
+        WorkloadGenerator.Summary summary = generator(keys, WorkloadGenerator.Order.REVERSED)
+                .generate(ledger);
+        assertEquals(3 * 80, summary.getTransactions());
+        assertEquals(4, summary.getDeepestChain());
+        assertTrue(summary.getChained() >= 3 * 30);
+        assertTrue(summary.getContestedPairs() > 0);
+
+        int chainedInFile = 0;
+        try (LedgerReader reader = new LedgerReader(ledger)) {
+            reader.readGenesis();
+            Transaction[] epoch;
+            while ((epoch = reader.nextEpoch()) != null) {
+                Set<ByteBuffer> hashes = new HashSet<>();
+                for (Transaction tx : epoch) {
+                    hashes.add(ByteBuffer.wrap(tx.getHash()));
+                }
+                for (Transaction tx : epoch) {
+                    for (Transaction.Input in : tx.getInputs()) {
+                        if (hashes.contains(ByteBuffer.wrap(in.prevTxHash))) {
+                            chainedInFile++;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        assertEquals(summary.getChained(), chainedInFile);
+
+        ReplayReport report = new LedgerReplay().replay(ledger);
+        assertEquals(summary.getExpectedAccepted(), report.getAccepted());
+        report = new LedgerReplay(MaxFeeTxHandler::new, LedgerReader.DEFAULT_WINDOW_BYTES)
+                .replay(ledger);
+        assertEquals(summary.getExpectedAccepted(), report.getAccepted());
+
+        Path again = folder.newFile("again.bin").toPath();
+        generator(keys, WorkloadGenerator.Order.REVERSED).generate(again);
+        assertArrayEquals(Files.readAllBytes(ledger), Files.readAllBytes(again));
+    }
+
+    @Test
+    public void drawsFromPoolWhenChainsRunOutOfParents() throws Exception {
+        Path ledger = folder.newFile("narrow.bin").toPath();
+        WorkloadGenerator.Summary summary = WorkloadGenerator.builder()
+                .setSeed(5L)
+                .setKeyBits(512)
+                .setKeyCache(folder.newFolder("keys").toPath())
+                .setPeople(8)
+                .setGenesisOutputs(600)
+                .setEpochs(2)
+                .setTxsPerEpoch(300)
+                .setChainShare(0.5)
+                .setMaxChainDepth(3)
+                .setMeanFanOut(1)
+                .setConflictRate(0.1)
+                .build()
+                .generate(ledger);
+
+        assertEquals(2 * 300, summary.getTransactions());
+        assertTrue(summary.getChained() < 2 * 150);
+        assertEquals(summary.getExpectedAccepted(),
+                new LedgerReplay().replay(ledger).getAccepted());
+    }
+
+    private static WorkloadGenerator generator(Path keys, WorkloadGenerator.Order order) {
+        return WorkloadGenerator.builder()
+                .setSeed(5L)
+                .setKeyBits(512)
+                .setKeyCache(keys)
+                .setPeople(8)
+                .setGenesisOutputs(150)
+                .setEpochs(3)
+                .setTxsPerEpoch(80)
+                .setChainShare(0.5)
+                .setMaxChainDepth(4)
+                .setMeanFanIn(2)
+                .setMaxFanIn(6)
+                .setMeanFanOut(3)
+                .setConflictRate(0.1)
+                .setOrder(order)
+                .build();
+    }
+}
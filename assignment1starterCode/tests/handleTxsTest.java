@@ -1,11 +1,20 @@
 import org.junit.Test;
 
 import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class handleTxsTest {
 
@@ -82,6 +91,290 @@ public class handleTxsTest {
         assertTestSetIsValid(utxoTestSet);
     }
 
+    @Test
+    public void handleTxsAcceptsInEpochChainsInAnyOrder()
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        KeyPair bob = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+
+        Transaction coinbase = TestTransactions.coinbase(alice, 10);
+        UTXOPool pool = TestTransactions.poolOf(coinbase);
+
+        Transaction parent = new Transaction();
+        parent.addInput(coinbase.getHash(), 0);
+        parent.addOutput(6, bob.getPublic());
+        parent.addOutput(4, alice.getPublic());
+        TestTransactions.sign(parent, alice.getPrivate());
+
+        Transaction child = new Transaction();
+        child.addInput(parent.getHash(), 0);
+        child.addOutput(6, alice.getPublic());
+        TestTransactions.sign(child, bob.getPrivate());
+
+        Transaction grandChild = new Transaction();
+        grandChild.addInput(child.getHash(), 0);
+        grandChild.addInput(parent.getHash(), 1);
+        grandChild.addOutput(10, bob.getPublic());
+        TestTransactions.sign(grandChild, alice.getPrivate());
+
+        Transaction conflict = new Transaction();
+        conflict.addInput(parent.getHash(), 0);
+        conflict.addOutput(1, bob.getPublic());
+        TestTransactions.sign(conflict, bob.getPrivate());
+
+        TxHandler txHandler = new TxHandler(pool);
+        Transaction[] result = txHandler.handleTxs(
+                new Transaction[]{grandChild, child, parent, conflict});
+
+        assertArrayEquals(new Transaction[]{parent, child, grandChild}, result);
+    }
+
+    @Test
+    public void unbalancedCandidateIsRejectedBeforeItsSignatures()
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        KeyPair bob = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        Transaction coinbase = TestTransactions.coinbase(alice, 10);
+        UTXOPool pool = TestTransactions.poolOf(coinbase);
+        // signed by the wrong key as well, so checking signatures first would say SIGNATURE
+        Transaction overspend = TestTransactions.spend(coinbase, 0, 20, bob, bob.getPrivate());
+
+        final List<ValidationRule> rejected = new ArrayList<>();
+        TxHandler txHandler = new TxHandler(pool);
+        txHandler.setEpochListener(new EpochListener() {
+            public void onAccepted(Transaction tx) {
+            }
+
+            public void onRejected(Transaction tx, ValidationResult result) {
+                rejected.add(result.getReason());
+            }
+        });
+        MetricsRegistry.Histogram verifies =
+                MetricsRegistry.getDefault().histogram("crypto_verify_nanos");
+        long verifiesBefore = verifies.snapshot().getCount();
+
+        assertEquals(0, txHandler.handleTxs(new Transaction[]{overspend}).length);
+        assertEquals(verifiesBefore, verifies.snapshot().getCount());
+        assertEquals(Arrays.asList(ValidationRule.INSUFFICIENT_VALUE), rejected);
+        assertEquals(ValidationRule.INSUFFICIENT_VALUE,
+                txHandler.validateTx(overspend).getReason());
+    }
+
+    @Test
+    public void streamedEpochMatchesHandleTxs()
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+
+        Transaction coinbase = TestTransactions.coinbase(alice, 10);
+        UTXOPool pool = TestTransactions.poolOf(coinbase);
+
+        Transaction parent = TestTransactions.spend(coinbase, 0, 9, alice);
+        Transaction child = TestTransactions.spend(parent, 0, 8, alice);
+        Transaction overspend = TestTransactions.spend(parent, 0, 20, alice);
+        Transaction orphan = TestTransactions.spend(overspend, 0, 1, alice);
+
+        Transaction[] epoch = {child, overspend, orphan, parent};
+        Transaction[] expected = new TxHandler(pool).handleTxs(epoch);
+
+        final List<Transaction> accepted = new ArrayList<>();
+        final List<ValidationRule> rejected = new ArrayList<>();
+        TxHandler txHandler = new TxHandler(pool);
+        txHandler.setEpochListener(new EpochListener() {
+            public void onAccepted(Transaction tx) {
+                accepted.add(tx);
+            }
+
+            public void onRejected(Transaction tx, ValidationResult result) {
+                rejected.add(result.getReason());
+            }
+        });
+        for (Transaction tx : epoch) {
+            txHandler.submit(tx);
+        }
+        assertEquals(Arrays.asList(parent, child), accepted);
+        assertEquals(Arrays.asList(ValidationRule.UNKNOWN_INPUT), rejected);
+        Transaction[] sealed = txHandler.sealEpoch();
+
+        assertArrayEquals(new Transaction[]{parent, child}, expected);
+        assertArrayEquals(expected, sealed);
+        assertEquals(Arrays.asList(ValidationRule.UNKNOWN_INPUT, ValidationRule.UNKNOWN_INPUT),
+                rejected);
+    }
+
+    @Test
+    public void handleTxsAcceptsChildListedAfterParent()
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+
+        Transaction coinbase = TestTransactions.coinbase(alice, 10);
+        UTXOPool pool = TestTransactions.poolOf(coinbase);
+
+        Transaction parent = TestTransactions.spend(coinbase, 0, 10, alice);
+        Transaction child = TestTransactions.spend(parent, 0, 1, alice);
+
+        Transaction[] result = new TxHandler(pool).handleTxs(new Transaction[]{parent, child});
+
+        assertArrayEquals(new Transaction[]{parent, child}, result);
+    }
+
+    @Test
+    public void deadlineModeLeavesUnreachedCandidatesUnprocessed()
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+
+        Transaction coinbase = TestTransactions.coinbase(alice, 10);
+        UTXOPool pool = TestTransactions.poolOf(coinbase);
+
+        Transaction parent = TestTransactions.spend(coinbase, 0, 9, alice);
+        Transaction child = TestTransactions.spend(parent, 0, 8, alice);
+        Transaction overspend = TestTransactions.spend(coinbase, 0, 20, alice);
+
+        Transaction[] epoch = {child, overspend, parent};
+        TxHandler txHandler = new TxHandler(pool);
+        EpochResult expired = txHandler.handleTxs(epoch, Duration.ZERO);
+        assertEquals(0, expired.getAccepted().length);
+        assertArrayEquals(epoch, expired.getUnprocessed());
+        assertEquals(1, txHandler.getUTXOPool().size());
+
+        EpochResult complete = txHandler.handleTxs(epoch, Duration.ofMinutes(1));
+        assertTrue(complete.isComplete());
+        assertArrayEquals(new TxHandler(pool).handleTxs(epoch), complete.getAccepted());
+        assertTrue(txHandler.getUTXOPool().contains(new UTXO(child.getHash(), 0)));
+        assertEquals(1, txHandler.getUTXOPool().size());
+
+        EpochResult unlimited =
+                new TxHandler(pool).handleTxs(epoch, Duration.ofSeconds(Long.MAX_VALUE));
+        assertArrayEquals(complete.getAccepted(), unlimited.getAccepted());
+    }
+
+    @Test
+    public void deadlineModeRejectsCandidatesWaitingOnRejectedParents() throws Exception {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+
+        Transaction coinbase = TestTransactions.coinbase(alice, 10);
+        UTXOPool pool = TestTransactions.poolOf(coinbase);
+
+        Transaction late = TestTransactions.spend(coinbase, 0, 9, alice);
+        Transaction child = TestTransactions.spend(late, 0, 8, alice);
+        Transaction grandchild = TestTransactions.spend(child, 0, 7, alice);
+        Transaction overspend = TestTransactions.spend(coinbase, 0, 20, alice);
+        Transaction orphan = TestTransactions.spend(overspend, 0, 1, alice);
+
+        // one verifier thread verifies four candidates per slice; holding it up past the budget
+        // stops the epoch after the first slice, before it reaches late
+        ForkJoinPool verifier = new ForkJoinPool(1);
+        try {
+            final List<ValidationRule> rejected = new ArrayList<>();
+            TxHandler txHandler = new TxHandler(pool, verifier);
+            txHandler.setEpochListener(new EpochListener() {
+                public void onRejected(Transaction tx, ValidationResult result) {
+                    rejected.add(result.getReason());
+                }
+            });
+            verifier.execute(() -> {
+                try {
+                    Thread.sleep(400);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            EpochResult result = txHandler.handleTxs(
+                    new Transaction[]{child, grandchild, overspend, orphan, late},
+                    Duration.ofMillis(200));
+
+            assertEquals(0, result.getAccepted().length);
+            assertArrayEquals(new Transaction[]{child, grandchild, late}, result.getUnprocessed());
+            assertEquals(Arrays.asList(ValidationRule.INSUFFICIENT_VALUE,
+                    ValidationRule.UNKNOWN_INPUT), rejected);
+
+            EpochResult rest = txHandler.handleTxs(result.getUnprocessed(), Duration.ofMinutes(1));
+            assertArrayEquals(new Transaction[]{late, child, grandchild}, rest.getAccepted());
+        } finally {
+            verifier.shutdown();
+        }
+    }
+
+    @Test
+    public void sealedRejectionsFollowCandidateOrder()
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        int chains = TxHandler.PARALLEL_APPLY_THRESHOLD / 2;
+
+        double[] values = new double[chains];
+        Arrays.fill(values, 10);
+        Transaction coinbase = TestTransactions.coinbase(alice, values);
+        UTXOPool pool = TestTransactions.poolOf(coinbase);
+
+        List<Transaction> overspends = new ArrayList<>();
+        List<Transaction> orphans = new ArrayList<>();
+        List<Transaction> epoch = new ArrayList<>();
+        for (int i = 0; i < chains; i++) {
+            Transaction overspend = TestTransactions.spend(coinbase, i, 20, alice);
+            Transaction orphan = TestTransactions.spend(overspend, 0, 1, alice);
+
+            overspends.add(overspend);
+            orphans.add(orphan);
+            epoch.add(overspend);
+            epoch.add(orphan);
+        }
+        List<Transaction> expected = new ArrayList<>(overspends);
+        expected.addAll(orphans);
+
+        final List<Transaction> rejected = new ArrayList<>();
+        TxHandler txHandler = new TxHandler(pool);
+        txHandler.setEpochListener(new EpochListener() {
+            public void onRejected(Transaction tx, ValidationResult result) {
+                rejected.add(tx);
+            }
+        });
+        txHandler.handleTxs(epoch.toArray(new Transaction[epoch.size()]));
+
+        assertEquals(expected, rejected);
+    }
+
+    @Test
+    public void parallelApplyMatchesSequentialApply()
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        KeyPair alice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        int chains = 2 * TxHandler.PARALLEL_APPLY_THRESHOLD;
+
+        double[] values = new double[chains];
+        Arrays.fill(values, 10);
+        Transaction coinbase = TestTransactions.coinbase(alice, values);
+        UTXOPool pool = TestTransactions.poolOf(coinbase);
+
+        List<Transaction> epoch = new ArrayList<>();
+        for (int i = 0; i < chains; i++) {
+            Transaction parent = TestTransactions.spend(coinbase, i, 9, alice);
+            Transaction child = TestTransactions.spend(parent, 0, 8, alice);
+
+            epoch.add(i % 2 == 0 ? child : parent);
+            epoch.add(i % 2 == 0 ? parent : child);
+            if (i % 10 == 0) {
+                Transaction conflict = TestTransactions.spend(coinbase, i, 7, alice);
+                epoch.add(i % 20 == 0 ? 0 : epoch.size(), conflict);
+            }
+        }
+        Transaction[] possibleTxs = epoch.toArray(new Transaction[epoch.size()]);
+
+        TxHandler streamed = new TxHandler(pool);
+        for (Transaction tx : possibleTxs) {
+            streamed.submit(tx);
+        }
+        Transaction[] expected = streamed.sealEpoch();
+
+        TxHandler txHandler = new TxHandler(pool);
+        Transaction[] result = txHandler.handleTxs(possibleTxs);
+
+        assertEquals(2 * chains - (chains + 19) / 20, expected.length);
+        assertArrayEquals(expected, result);
+        List<UTXO> expectedPool = streamed.getUTXOPool().getAllUTXO();
+        List<UTXO> actualPool = txHandler.getUTXOPool().getAllUTXO();
+        Collections.sort(expectedPool);
+        Collections.sort(actualPool);
+        assertEquals(expectedPool, actualPool);
+    }
+
     private static void assertTestSetIsValid(final UtxoTestSet utxoTestSet) {
         final ValidationLists<Transaction> trxsValidation = utxoTestSet.getValidationLists();
 